@@ -0,0 +1,86 @@
+package familytree.bench;
+
+import familytree.model.Gender;
+import familytree.model.Person;
+import familytree.service.FamilyTree;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Adding people and relationships to generated trees. The tree is regenerated for
+ * every iteration so growth during one iteration does not leak into the next.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MutationBenchmark {
+    @Param({"CHAIN", "WIDE", "PEDIGREE_COLLAPSE"})
+    public TreeGenerator.Shape shape;
+
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    private FamilyTree tree;
+    private String root;
+    private String leaf;
+    private String[] sample;
+    private int next;
+
+    @Setup(Level.Iteration)
+    public void generate() {
+        TreeGenerator.GeneratedTree generated = TreeGenerator.generate(shape, size);
+        tree = generated.tree;
+        root = generated.root;
+        leaf = generated.leaf;
+        sample = generated.sample;
+    }
+
+    @Benchmark
+    public Person addPerson() {
+        return tree.addPerson("Benchmark Person", Gender.FEMALE, 2000, null);
+    }
+
+    /**
+     * A new child under an existing person: the cycle check passes on the order test.
+     */
+    @Benchmark
+    public Person addParentChildRelationship() {
+        Person child = tree.addPerson("Benchmark Child", Gender.MALE, 2000, null);
+        tree.addParentChildRelationship(nextSample(), child.getId());
+        return child;
+    }
+
+    /**
+     * Making the last-generation person a parent of the founder: the cycle check has to
+     * confirm the path before rejecting the link.
+     */
+    @Benchmark
+    public boolean rejectCycle() {
+        try {
+            tree.addParentChildRelationship(leaf, root);
+            return false;
+        } catch (IllegalArgumentException e) {
+            return true;
+        }
+    }
+
+    private String nextSample() {
+        String id = sample[next];
+        next = (next + 1) % sample.length;
+        return id;
+    }
+}
\ No newline at end of file
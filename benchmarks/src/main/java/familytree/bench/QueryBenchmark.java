@@ -0,0 +1,91 @@
+package familytree.bench;
+
+import familytree.model.Person;
+import familytree.pattern.BFSTraversal;
+import familytree.pattern.DFSTraversal;
+import familytree.service.FamilyTree;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Read queries over generated trees. Run with {@code -p size=10000000} (and a heap to
+ * match) for the largest trees.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QueryBenchmark {
+    @Param({"CHAIN", "WIDE", "PEDIGREE_COLLAPSE"})
+    public TreeGenerator.Shape shape;
+
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    @Param({"DFS", "BFS"})
+    public String strategy;
+
+    @Param({"8"})
+    public int generations;
+
+    private FamilyTree tree;
+    private String root;
+    private String leaf;
+    private String[] sample;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        TreeGenerator.GeneratedTree generated = TreeGenerator.generate(shape, size);
+        tree = generated.tree;
+        root = generated.root;
+        leaf = generated.leaf;
+        sample = generated.sample;
+        tree.setTraversalStrategy("BFS".equals(strategy) ? new BFSTraversal() : new DFSTraversal());
+    }
+
+    @Benchmark
+    public List<Person> getAncestors() {
+        return tree.getAncestors(leaf, generations);
+    }
+
+    @Benchmark
+    public List<Person> getAncestorsUnique() {
+        return tree.getAncestors(leaf, Integer.MAX_VALUE, true);
+    }
+
+    @Benchmark
+    public List<Person> getDescendants() {
+        return tree.getDescendants(root, generations);
+    }
+
+    @Benchmark
+    public List<Person> getSiblings() {
+        return tree.getSiblings(nextSample());
+    }
+
+    @Benchmark
+    public boolean isAncestor() {
+        return tree.isAncestor(root, nextSample());
+    }
+
+    private String nextSample() {
+        String id = sample[next];
+        next = (next + 1) % sample.length;
+        return id;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,103 @@
+package familytree.bench;
+
+import familytree.model.Gender;
+import familytree.model.PersonStore;
+import familytree.service.BulkImport;
+import familytree.service.FamilyTree;
+import java.util.SplittableRandom;
+
+/**
+ * Deterministic synthetic family graphs: the same shape, size and seed always build
+ * the same tree, so results stay comparable across runs and releases.
+ */
+public final class TreeGenerator {
+    public static final long DEFAULT_SEED = 0x5EED_F00DL;
+
+    // Children per person in WIDE trees
+    static final int FAN_OUT = 1024;
+
+    public enum Shape {
+        /** One line of descent: every person is the only child of the previous one. */
+        CHAIN,
+        /** A complete tree in which everyone has {@value #FAN_OUT} children. */
+        WIDE,
+        /**
+         * Generations of equal width whose members both have two random parents in the
+         * previous generation, so ancestors are reached along many paths.
+         */
+        PEDIGREE_COLLAPSE
+    }
+
+    /**
+     * A generated tree plus a few people worth querying. People are indexed by
+     * generation, so {@code root} is a founder and {@code leaf} sits in the last one.
+     */
+    public static final class GeneratedTree {
+        public final FamilyTree tree;
+        public final String root;
+        public final String leaf;
+        public final String[] sample;
+
+        GeneratedTree(FamilyTree tree, String root, String leaf, String[] sample) {
+            this.tree = tree;
+            this.root = root;
+            this.leaf = leaf;
+            this.sample = sample;
+        }
+    }
+
+    private TreeGenerator() {
+    }
+
+    public static GeneratedTree generate(Shape shape, int size) {
+        return generate(shape, size, DEFAULT_SEED);
+    }
+
+    public static GeneratedTree generate(Shape shape, int size, long seed) {
+        if (size < 2) {
+            throw new IllegalArgumentException("Size must be at least 2");
+        }
+        SplittableRandom random = new SplittableRandom(seed);
+        FamilyTree tree = new FamilyTree(new PersonStore(size));
+        BulkImport batch = tree.beginBulkImport();
+        batch.reserveIds(size);
+        String[] ids = new String[size];
+        for (int i = 0; i < size; i++) {
+            Gender gender = random.nextBoolean() ? Gender.MALE : Gender.FEMALE;
+            ids[i] = batch.addPerson("Person " + i, gender, 1000 + random.nextInt(1000), null);
+        }
+
+        switch (shape) {
+            case CHAIN:
+                for (int i = 1; i < size; i++) {
+                    batch.addParentChildRelationship(ids[i - 1], ids[i]);
+                }
+                break;
+            case WIDE:
+                for (int i = 1; i < size; i++) {
+                    batch.addParentChildRelationship(ids[(i - 1) / FAN_OUT], ids[i]);
+                }
+                break;
+            case PEDIGREE_COLLAPSE:
+                int width = Math.max(4, (int) Math.sqrt(size));
+                for (int i = width; i < size; i++) {
+                    int previous = (i / width - 1) * width;
+                    int first = previous + random.nextInt(width);
+                    int second = previous + random.nextInt(width - 1);
+                    if (second >= first) second++;
+                    batch.addParentChildRelationship(ids[first], ids[i]);
+                    batch.addParentChildRelationship(ids[second], ids[i]);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown shape: " + shape);
+        }
+        batch.commit();
+
+        String[] sample = new String[Math.min(size, 1024)];
+        for (int i = 0; i < sample.length; i++) {
+            sample[i] = ids[random.nextInt(size)];
+        }
+        return new GeneratedTree(tree, ids[0], ids[size - 1], sample);
+    }
+}
\ No newline at end of file
@@ -1,10 +1,71 @@
 package familytree;
 
 import familytree.cli.CLI;
+import familytree.server.FamilyTreeServer;
+import familytree.service.FamilyTree;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 
 public class Main {
-    public static void main(String[] args) {
-        CLI cli = new CLI();
-        cli.start();
+    /**
+     * With no arguments, starts the interactive CLI. {@code --batch [Script]} runs the
+     * commands of Script (or stdin) without prompts; {@code --format TEXT|TSV} picks the
+     * output format. {@code --serve Port} serves an empty tree to network clients, in TSV
+     * unless another format is given, on the loopback interface or the one named by
+     * {@code --bind Address}. Sessions have no authentication, so only bind to an
+     * address that untrusted clients cannot reach.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        boolean batch = false;
+        String script = null;
+        CLI.Format format = null;
+        int port = -1;
+        String bind = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--batch")) {
+                batch = true;
+                if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                    script = args[++i];
+                }
+            } else if (args[i].equals("--format") && i + 1 < args.length) {
+                format = CLI.Format.valueOf(args[++i].toUpperCase());
+            } else if (args[i].equals("--serve") && i + 1 < args.length) {
+                port = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--bind") && i + 1 < args.length) {
+                bind = args[++i];
+            } else {
+                System.err.println("Usage: Main [--batch [Script] | --serve Port [--bind Address]] [--format TEXT|TSV]");
+                System.exit(2);
+            }
+        }
+
+        if (port >= 0) {
+            InetSocketAddress address = bind != null ? new InetSocketAddress(bind, port)
+                    : new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+            FamilyTreeServer server = new FamilyTreeServer(new FamilyTree(), address,
+                    format != null ? format : CLI.Format.TSV);
+            server.start();
+            System.err.println("Serving on port " + server.getPort()
+                    + (server.usesVirtualThreads() ? " (virtual threads)" : " (platform threads)"));
+            server.awaitTermination();
+            return;
+        }
+        if (!batch) {
+            new CLI().start();
+            return;
+        }
+        try (Reader in = script != null
+                ? Files.newBufferedReader(Paths.get(script), StandardCharsets.UTF_8)
+                : new InputStreamReader(System.in, StandardCharsets.UTF_8)) {
+            new CLI(in, new OutputStreamWriter(System.out, StandardCharsets.UTF_8),
+                    format != null ? format : CLI.Format.TEXT).start();
+        }
     }
 }
\ No newline at end of file
@@ -1,58 +1,310 @@
 package familytree.cli;
 
+import familytree.io.CsvImporter;
+import familytree.io.GedcomImporter;
+import familytree.io.MutationJournal;
+import familytree.io.TreeExporter;
+import familytree.metrics.LatencyHistogram;
+import familytree.metrics.Metrics;
+import familytree.service.BulkImport;
+import familytree.service.BulkImportException;
 import familytree.service.FamilyTree;
+import familytree.service.IntegrityScanner;
+import familytree.service.IntegrityViolation;
+import familytree.service.KinshipService;
+import familytree.service.PageCursor;
+import familytree.service.PersonQuery;
+import familytree.service.QueryCache;
+import familytree.service.SubtreeAggregates;
+import familytree.model.Marriage;
 import familytree.model.Person;
 import familytree.model.Gender;
 import familytree.pattern.BFSTraversal;
 import familytree.pattern.DFSTraversal;
+import familytree.pattern.ParallelDFSTraversal;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Scanner;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.stream.Stream;
 
 public class CLI {
-    private final FamilyTree familyTree;
-    private final Scanner scanner;
+    /**
+     * How results are written. TEXT is meant for people; in TSV every line starts with
+     * a record type: {@code OK} for a message, {@code PERSON} for one person,
+     * {@code VIOLATION} for one integrity problem, {@code END} closing a list of people
+     * or violations ({@code MORE} when NEXT returns further pages), and {@code ERR} for
+     * a failed command.
+     */
+    public enum Format { TEXT, TSV }
+
+    private FamilyTree familyTree;
+    private MutationJournal journal;
+    private final BufferedReader in;
+    private PrintWriter out; // where replies are written
+    private final PrintWriter sink; // the session's output
+    private CharArrayWriter pendingReply; // shared sessions: the reply of the running command
+    private final Format format;
+    private final boolean interactive;
+    private final ReadWriteLock sharedLock;
+    private final Set<String> indexedCommands = new HashSet<>(); // shared sessions: lazy indexes built for these
+    private int pageSize; // 0 lists results whole
+    private PageCursor cursor;
+    private String cursorTitle;
+    private final StringBuilder line = new StringBuilder(128); // reused by printPerson
+    private char[] lineChars = new char[128];
 
     public CLI() {
-        this.familyTree = new FamilyTree();
-        this.scanner = new Scanner(System.in);
+        this(new InputStreamReader(System.in, StandardCharsets.UTF_8),
+                new OutputStreamWriter(System.out, StandardCharsets.UTF_8), Format.TEXT, true);
     }
 
-    public void start() {
-        System.out.println("=== Family Tree Management System ===");
-        System.out.println("Available commands:");
-        System.out.println("ADD_PERSON \"Name\" GENDER BirthYear [DeathYear]");
-        System.out.println("ADD_PARENT_CHILD ParentID ChildID");
-        System.out.println("MARRY Person1ID Person2ID Year");
-        System.out.println("ANCESTORS PersonID Generations");
-        System.out.println("DESCENDANTS PersonID Generations");
-        System.out.println("SIBLINGS PersonID");
-        System.out.println("CHILDREN PersonID");
-        System.out.println("SPOUSE PersonID");
-        System.out.println("SHOW PersonID");
-        System.out.println("SET_TRAVERSAL DFS|BFS");
-        System.out.println("EXIT");
-        System.out.println();
+    /**
+     * Non-interactive CLI for scripts: no banner or prompt, and output is flushed only
+     * when the buffer fills or the input ends. After OPEN, the journal is synced whenever
+     * the input has no further command buffered, so pipelined changes share one group
+     * commit; replies that overflow the buffer before then can go out ahead of the sync.
+     */
+    public CLI(Reader in, Writer out, Format format) {
+        this(new FamilyTree(), null, in, out, format, false);
+    }
+
+    /**
+     * Session on a tree shared with other sessions, such as one connection of a server.
+     * Commands that only read run under the read lock of sharedLock and all others under
+     * its write lock. Each reply is rendered in memory and only written out once the
+     * lock is released, so a client that stops reading cannot stall other sessions.
+     * Output is flushed whenever the input has no further command buffered, so
+     * pipelined commands get their replies in one batch. LOAD and OPEN, which would
+     * replace the tree, are refused, as are IMPORT, SAVE and EXPORT, which would let a
+     * remote client read or write files on the server, and SET_TRAVERSAL, CACHE and
+     * STATS, which change settings every session shares.
+     */
+    public CLI(FamilyTree tree, ReadWriteLock sharedLock, Reader in, Writer out, Format format) {
+        this(tree, sharedLock, in, out, format, false);
+    }
 
-        while (true) {
-            System.out.print("> ");
-            String input = scanner.nextLine().trim();
+    private CLI(Reader in, Writer out, Format format, boolean interactive) {
+        this(new FamilyTree(), null, in, out, format, interactive);
+    }
 
-            if (input.equalsIgnoreCase("EXIT")) {
-                break;
+    private CLI(FamilyTree tree, ReadWriteLock sharedLock, Reader in, Writer out, Format format, boolean interactive) {
+        this.familyTree = tree;
+        this.sharedLock = sharedLock;
+        this.in = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in, 1 << 16);
+        this.sink = new PrintWriter(new BufferedWriter(out, 1 << 16), false);
+        if (sharedLock != null) {
+            this.pendingReply = new CharArrayWriter(1024);
+            this.out = new PrintWriter(pendingReply, false);
+        } else {
+            this.out = sink;
+        }
+        this.format = format;
+        this.interactive = interactive;
+    }
+
+    public void start() {
+        if (interactive) {
+            printBanner();
+        }
+        try {
+            String line;
+            while (true) {
+                if (interactive) {
+                    out.print("> ");
+                    flush();
+                }
+                if ((line = in.readLine()) == null) break;
+                String input = line.trim();
+                if (input.isEmpty() || (!interactive && input.charAt(0) == '#')) continue;
+                if (input.equalsIgnoreCase("EXIT")) break;
+                execute(input);
+                if (interactive || !in.ready()) {
+                    // Replies to journaled changes only go out once the changes are on disk
+                    syncJournal();
+                    if (interactive || sharedLock != null) {
+                        flush();
+                    }
+                }
             }
+        } catch (IOException e) {
+            fail("Cannot read input: " + e.getMessage());
+        } finally {
+            closeJournal();
+            flush();
+        }
+    }
 
-            try {
-                processCommand(input);
-            } catch (Exception e) {
-                System.out.println("Error: " + e.getMessage());
+    private void flush() {
+        sendReply();
+        sink.flush();
+    }
+
+    /**
+     * Passes the reply rendered by a shared session on to its output.
+     */
+    private void sendReply() {
+        if (pendingReply == null) return;
+        try {
+            pendingReply.writeTo(sink);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // PrintWriter records errors instead of throwing
+        }
+        if (pendingReply.size() > 1 << 16) {
+            // Let a large reply's buffer go
+            pendingReply = new CharArrayWriter(1024);
+            out = new PrintWriter(pendingReply, false);
+        } else {
+            pendingReply.reset();
+        }
+    }
+
+    private void printBanner() {
+        out.println("=== Family Tree Management System ===");
+        out.println("Available commands:");
+        out.println("ADD_PERSON \"Name\" GENDER BirthYear [DeathYear]");
+        out.println("ADD_PARENT_CHILD ParentID ChildID");
+        out.println("MARRY Person1ID Person2ID Year");
+        out.println("DIVORCE PersonID [Year]");
+        out.println("ANCESTORS PersonID Generations [UNIQUE] [AS_OF Year]");
+        out.println("DESCENDANTS PersonID Generations [Limit|AS_OF Year]");
+        out.println("PAGE_SIZE Count|OFF");
+        out.println("NEXT");
+        out.println("SIBLINGS PersonID [FULL|HALF]");
+        out.println("CHILDREN PersonID");
+        out.println("SPOUSE PersonID");
+        out.println("MARRIAGES PersonID");
+        out.println("CO_PARENTS PersonID");
+        out.println("SHOW PersonID");
+        out.println("FIND [NAME Prefix] [SURNAME Prefix] [BORN From[-To]] [DIED From[-To]] [LIVING|DECEASED] [LIMIT Count]");
+        out.println("SUBTREE PersonID|VERIFY");
+        out.println("ALIVE Year[-Year]");
+        out.println("MARRIED_IN Year");
+        out.println("KINSHIP PersonID PersonID [PersonID ...]");
+        out.println("INBREEDING [PersonID]");
+        out.println("VALIDATE [CHANGED]");
+        out.println("SET_TRAVERSAL DFS|BFS [UNIQUE]");
+        out.println("SET_TRAVERSAL PARALLEL [Cutoff] [ORDERED|UNORDERED]");
+        out.println("CACHE ON [Capacity]|OFF|STATS");
+        out.println("STATS [ON|OFF|RESET]");
+        out.println("IMPORT CSV|GEDCOM Path");
+        out.println("EXPORT DOT|JSONL|GEDCOM Path [DESCENDANTS|ANCESTORS PersonID Generations]");
+        out.println("SAVE Path");
+        out.println("LOAD Path");
+        out.println("OPEN Directory");
+        out.println("COMPACT");
+        out.println("EXIT");
+        out.println();
+    }
+
+    private void execute(String input) {
+        int space = indexOfWhitespace(input, 0);
+        String command = (space < 0 ? input : input.substring(0, space)).toUpperCase();
+        String arguments = space < 0 ? "" : input.substring(space + 1).trim();
+
+        long start = Metrics.start();
+        Lock lock = null;
+        if (sharedLock != null) {
+            boolean readOnly = isReadOnly(command);
+            if (readOnly && indexedCommands.add(command)) buildIndex(command);
+            lock = readOnly ? sharedLock.readLock() : sharedLock.writeLock();
+        }
+        if (lock != null) lock.lock();
+        boolean known = true; // also for a known command that throws
+        try {
+            known = processCommand(command, arguments);
+        } catch (Exception e) {
+            fail(e.getMessage());
+        } finally {
+            if (lock != null) lock.unlock();
+            if (start != 0L) {
+                // Unknown input shares one histogram rather than adding one per typo
+                Metrics.record(known ? "command." + command : "command.unknown", start);
             }
         }
+        sendReply();
     }
 
-    private void processCommand(String input) {
-        String[] parts = input.split("\\s+", 2);
-        String command = parts[0].toUpperCase();
-        String arguments = parts.length > 1 ? parts[1] : "";
+    /**
+     * Commands that do not change the tree, so sessions sharing it can run them at the
+     * same time. The lazy index a command queries is built beforehand by
+     * {@link #buildIndex}; the query cache ANCESTORS and DESCENDANTS may fill is
+     * synchronized on its own.
+     */
+    private static boolean isReadOnly(String command) {
+        switch (command) {
+            case "ANCESTORS":
+            case "DESCENDANTS":
+            case "SIBLINGS":
+            case "CHILDREN":
+            case "SPOUSE":
+            case "MARRIAGES":
+            case "CO_PARENTS":
+            case "SHOW":
+            case "PAGE_SIZE":
+            case "NEXT":
+            case "FIND":
+            case "ALIVE":
+            case "MARRIED_IN":
+            case "KINSHIP":
+            case "INBREEDING":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Builds the lazy index a read-locked command queries under the write lock, the first
+     * time this session runs the command. The tree maintains the index from then on, so
+     * the query itself only needs the read lock.
+     */
+    private void buildIndex(String command) {
+        Runnable build;
+        switch (command) {
+            case "FIND":
+                build = familyTree::getPersonIndex;
+                break;
+            case "ALIVE":
+            case "MARRIED_IN":
+                build = familyTree::getTemporalIndex;
+                break;
+            case "KINSHIP":
+            case "INBREEDING":
+                build = familyTree::getKinshipService;
+                break;
+            default:
+                return;
+        }
+        Lock lock = sharedLock.writeLock();
+        lock.lock();
+        try {
+            build.run();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return false if command is not one this CLI knows
+     */
+    private boolean processCommand(String command, String arguments) {
 
         switch (command) {
             case "ADD_PERSON":
@@ -64,12 +316,21 @@ public class CLI {
             case "MARRY":
                 handleMarry(arguments);
                 break;
+            case "DIVORCE":
+                handleDivorce(arguments);
+                break;
             case "ANCESTORS":
                 handleAncestors(arguments);
                 break;
             case "DESCENDANTS":
                 handleDescendants(arguments);
                 break;
+            case "PAGE_SIZE":
+                handlePageSize(arguments);
+                break;
+            case "NEXT":
+                handleNext();
+                break;
             case "SIBLINGS":
                 handleSiblings(arguments);
                 break;
@@ -79,26 +340,80 @@ public class CLI {
             case "SPOUSE":
                 handleSpouse(arguments);
                 break;
+            case "MARRIAGES":
+                handleMarriages(arguments);
+                break;
+            case "CO_PARENTS":
+                handleCoParents(arguments);
+                break;
             case "SHOW":
                 handleShow(arguments);
                 break;
+            case "FIND":
+                handleFind(arguments);
+                break;
+            case "SUBTREE":
+                handleSubtree(arguments);
+                break;
+            case "ALIVE":
+                handleAlive(arguments);
+                break;
+            case "MARRIED_IN":
+                handleMarriedIn(arguments);
+                break;
+            case "KINSHIP":
+                handleKinship(arguments);
+                break;
+            case "INBREEDING":
+                handleInbreeding(arguments);
+                break;
+            case "VALIDATE":
+                handleValidate(arguments);
+                break;
             case "SET_TRAVERSAL":
                 handleSetTraversal(arguments);
                 break;
+            case "CACHE":
+                handleCache(arguments);
+                break;
+            case "STATS":
+                handleStats(arguments);
+                break;
+            case "IMPORT":
+                handleImport(arguments);
+                break;
+            case "EXPORT":
+                handleExport(arguments);
+                break;
+            case "SAVE":
+                handleSave(arguments);
+                break;
+            case "LOAD":
+                handleLoad(arguments);
+                break;
+            case "OPEN":
+                handleOpen(arguments);
+                break;
+            case "COMPACT":
+                handleCompact();
+                break;
             default:
-                System.out.println("Unknown command: " + command);
+                fail("Unknown command: " + command);
+                return false;
         }
+        return true;
     }
 
     private void handleAddPerson(String args) {
         // Parse quoted name and other parameters
-        String[] parts = args.split("\"");
-        if (parts.length < 3) {
+        int open = args.indexOf('"');
+        int close = open < 0 ? -1 : args.indexOf('"', open + 1);
+        if (close < 0) {
             throw new IllegalArgumentException("Invalid format. Use: ADD_PERSON \"Name\" GENDER BirthYear [DeathYear]");
         }
 
-        String name = parts[1].trim();
-        String[] rest = parts[2].trim().split("\\s+");
+        String name = args.substring(open + 1, close).trim();
+        String[] rest = words(args.substring(close + 1));
 
         if (rest.length < 2) {
             throw new IllegalArgumentException("Missing gender or birth year");
@@ -109,48 +424,171 @@ public class CLI {
         Integer deathYear = rest.length > 2 ? Integer.parseInt(rest[2]) : null;
 
         Person person = familyTree.addPerson(name, gender, birthYear, deathYear);
-        System.out.println("-> " + person.getId());
+        reply(format == Format.TSV ? person.getId() : "-> " + person.getId());
     }
 
     private void handleAddParentChild(String args) {
-        String[] parts = args.split("\\s+");
+        String[] parts = words(args);
         if (parts.length != 2) {
             throw new IllegalArgumentException("Need exactly 2 IDs");
         }
         familyTree.addParentChildRelationship(parts[0], parts[1]);
-        System.out.println("OK");
+        reply("OK");
     }
 
     private void handleMarry(String args) {
-        String[] parts = args.split("\\s+");
+        String[] parts = words(args);
         if (parts.length != 3) {
             throw new IllegalArgumentException("Need 2 IDs and marriage year");
         }
         familyTree.marry(parts[0], parts[1], Integer.parseInt(parts[2]));
-        System.out.println("OK");
+        reply("OK");
+    }
+
+    private void handleDivorce(String args) {
+        String[] parts = words(args);
+        if (parts.length != 1 && parts.length != 2) {
+            throw new IllegalArgumentException("Need person ID and optional divorce year");
+        }
+        familyTree.divorce(parts[0], parts.length == 2 ? Integer.valueOf(parts[1]) : null);
+        reply("OK");
     }
 
     private void handleAncestors(String args) {
-        String[] parts = args.split("\\s+");
-        if (parts.length != 2) {
-            throw new IllegalArgumentException("Need person ID and generations");
+        String[] parts = words(args);
+        Integer asOf = asOf(parts);
+        if (asOf != null && (parts.length == 4 || parts.length == 5)) {
+            printPersonList(familyTree.getAncestorsAsOf(parts[0], Integer.parseInt(parts[1]), asOf), "Ancestors");
+            return;
         }
-        List<Person> ancestors = familyTree.getAncestors(parts[0], Integer.parseInt(parts[1]));
+        if (parts.length != 2 && parts.length != 3) {
+            throw new IllegalArgumentException("Need person ID, generations and optional UNIQUE");
+        }
+        boolean unique = parts.length == 3 && parseUnique(parts[2]);
+        if (pageSize > 0) {
+            openCursor(familyTree.openAncestors(parts[0], Integer.parseInt(parts[1]), unique, pageSize), "Ancestors");
+            return;
+        }
+        List<Person> ancestors = familyTree.getAncestors(parts[0], Integer.parseInt(parts[1]), unique);
         printPersonList(ancestors, "Ancestors");
     }
 
     private void handleDescendants(String args) {
-        String[] parts = args.split("\\s+");
-        if (parts.length != 2) {
-            throw new IllegalArgumentException("Need person ID and generations");
+        String[] parts = words(args);
+        Integer asOf = asOf(parts);
+        if (asOf != null && parts.length == 4) {
+            printPersonList(familyTree.getDescendantsAsOf(parts[0], Integer.parseInt(parts[1]), asOf), "Descendants");
+            return;
+        }
+        if (parts.length != 2 && parts.length != 3) {
+            throw new IllegalArgumentException("Need person ID, generations and optional limit");
+        }
+        if (pageSize > 0 && parts.length == 2) {
+            openCursor(familyTree.openDescendants(parts[0], Integer.parseInt(parts[1]), pageSize), "Descendants");
+            return;
+        }
+        Stream<Person> descendants = familyTree.streamDescendants(parts[0], Integer.parseInt(parts[1]));
+        if (parts.length == 3) {
+            descendants = descendants.limit(Integer.parseInt(parts[2]));
+        }
+        printPersonStream(descendants.iterator(), "Descendants");
+    }
+
+    /**
+     * Year of a trailing {@code AS_OF Year} option, or null without one.
+     */
+    private static Integer asOf(String[] parts) {
+        int count = parts.length;
+        return count >= 2 && parts[count - 2].equalsIgnoreCase("AS_OF") ? Integer.valueOf(parts[count - 1]) : null;
+    }
+
+    private void handleAlive(String args) {
+        String range = args.trim();
+        printPersonList(familyTree.getAliveBetween(rangeStart(range), rangeEnd(range)), "Alive");
+    }
+
+    private void handleMarriedIn(String args) {
+        printPersonList(familyTree.getMarriedIn(Integer.parseInt(args.trim())), "Married");
+    }
+
+    private void handlePageSize(String args) {
+        String value = args.trim();
+        if (value.equalsIgnoreCase("OFF")) {
+            pageSize = 0;
+        } else {
+            int size = Integer.parseInt(value);
+            if (size < 1) {
+                throw new IllegalArgumentException("Page size must be at least 1");
+            }
+            pageSize = size;
+        }
+        reply("OK");
+    }
+
+    private void handleNext() {
+        if (cursor == null) {
+            throw new IllegalArgumentException("No paged result to continue");
+        }
+        printPage();
+    }
+
+    private void openCursor(PageCursor opened, String title) {
+        cursor = opened;
+        cursorTitle = title;
+        printPage();
+    }
+
+    /**
+     * Prints the next page of the open cursor, closed by MORE instead of END while
+     * further pages remain.
+     */
+    private void printPage() {
+        String title = cursorTitle;
+        List<Person> page;
+        boolean more;
+        try {
+            page = cursor.nextPage();
+            more = cursor.hasNext();
+        } catch (IllegalStateException e) {
+            cursor = null;
+            throw e;
+        }
+        if (!more) {
+            cursor = null;
+        }
+        if (page.isEmpty()) {
+            printNone(title);
+            return;
+        }
+        if (format == Format.TEXT) {
+            out.println(title + ":");
+        }
+        for (Person person : page) {
+            printPerson(person);
+        }
+        if (!more) {
+            printEnd(title, page.size());
+        } else if (format == Format.TSV) {
+            out.print("MORE\t");
+            out.print(title);
+            out.print('\t');
+            out.println(page.size());
+        } else {
+            out.println("(" + cursor.getReturned() + " so far, NEXT for more)");
         }
-        List<Person> descendants = familyTree.getDescendants(parts[0], Integer.parseInt(parts[1]));
-        printPersonList(descendants, "Descendants");
     }
 
     private void handleSiblings(String args) {
-        List<Person> siblings = familyTree.getSiblings(args.trim());
-        printPersonList(siblings, "Siblings");
+        String[] parts = words(args);
+        if (parts.length == 1) {
+            printPersonList(familyTree.getSiblings(parts[0]), "Siblings");
+        } else if (parts.length == 2 && parts[1].equalsIgnoreCase("FULL")) {
+            printPersonList(familyTree.getFullSiblings(parts[0]), "Full siblings");
+        } else if (parts.length == 2 && parts[1].equalsIgnoreCase("HALF")) {
+            printPersonList(familyTree.getHalfSiblings(parts[0]), "Half siblings");
+        } else {
+            throw new IllegalArgumentException("Need person ID and optional FULL or HALF");
+        }
     }
 
     private void handleChildren(String args) {
@@ -161,42 +599,578 @@ public class CLI {
     private void handleSpouse(String args) {
         Person spouse = familyTree.getSpouse(args.trim());
         if (spouse != null) {
-            System.out.println("Spouse: " + spouse);
+            reply("Spouse: " + spouse);
         } else {
-            System.out.println("No spouse");
+            reply("No spouse");
+        }
+    }
+
+    private void handleMarriages(String args) {
+        String personId = args.trim();
+        List<Marriage> marriages = familyTree.getMarriageHistory(personId);
+        if (marriages.isEmpty()) {
+            reply("No marriages");
+            return;
+        }
+        StringBuilder message = new StringBuilder("Marriages: ");
+        for (int i = 0; i < marriages.size(); i++) {
+            if (i > 0) message.append("; ");
+            message.append(marriages.get(i));
         }
+        reply(message.toString());
+    }
+
+    private void handleCoParents(String args) {
+        printPersonList(familyTree.getCoParents(args.trim()), "Co-parents");
     }
 
     private void handleShow(String args) {
         Person person = familyTree.getPerson(args.trim());
-        System.out.println(person + " | spouse=" +
+        reply(person + " | spouse=" +
                 (person.getSpouse() != null ? person.getSpouse().getId() : "none") +
                 " | children=" + person.getChildren().size());
     }
 
+    private void handleFind(String args) {
+        String[] parts = words(args);
+        PersonQuery query = PersonQuery.all();
+        int i = 0;
+        while (i < parts.length && !parts[i].isEmpty()) {
+            String option = parts[i++].toUpperCase();
+            if (option.equals("LIVING")) {
+                query = query.living();
+                continue;
+            }
+            if (option.equals("DECEASED")) {
+                query = query.deceased();
+                continue;
+            }
+            if (i == parts.length) {
+                throw new IllegalArgumentException("Missing value for " + option);
+            }
+            String value = parts[i++];
+            switch (option) {
+                case "NAME":
+                    query = query.nameStartsWith(value);
+                    break;
+                case "SURNAME":
+                    query = query.surnameStartsWith(value);
+                    break;
+                case "BORN":
+                    query = query.bornBetween(rangeStart(value), rangeEnd(value));
+                    break;
+                case "DIED":
+                    query = query.diedBetween(rangeStart(value), rangeEnd(value));
+                    break;
+                case "LIMIT":
+                    query = query.limit(Integer.parseInt(value));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown FIND option: " + option);
+            }
+        }
+        printPersonList(familyTree.find(query), "Found");
+    }
+
+    private static int rangeStart(String range) {
+        int dash = range.indexOf('-', 1);
+        return Integer.parseInt(dash < 0 ? range : range.substring(0, dash));
+    }
+
+    private static int rangeEnd(String range) {
+        int dash = range.indexOf('-', 1);
+        return Integer.parseInt(dash < 0 ? range : range.substring(dash + 1));
+    }
+
+    private void handleSubtree(String args) {
+        String target = args.trim();
+        SubtreeAggregates aggregates = familyTree.getSubtreeAggregates();
+        if (target.equalsIgnoreCase("VERIFY")) {
+            List<String> mismatches = aggregates.verify();
+            reply(mismatches.isEmpty()
+                    ? "Subtree aggregates match a full recount for " + familyTree.size() + " people"
+                    : "Subtree aggregates differ from a full recount for " + mismatches.size() + " people: " + mismatches);
+            return;
+        }
+        int person = familyTree.getPerson(target).getIndex();
+        int[] generations = aggregates.generationCounts(person);
+        StringBuilder message = new StringBuilder();
+        message.append(target).append(": ").append(aggregates.descendantCount(person)).append(" descendants, ")
+                .append(aggregates.livingDescendantCount(person)).append(" living, ")
+                .append(generations.length).append(" generations");
+        for (int g = 0; g < generations.length; g++) {
+            message.append(g == 0 ? " (" : ", ").append(generations[g]);
+        }
+        reply(generations.length == 0 ? message.toString() : message.append(')').toString());
+    }
+
+    private void handleKinship(String args) {
+        String[] ids = words(args);
+        if (ids.length < 2) {
+            throw new IllegalArgumentException("Need at least 2 IDs");
+        }
+        int[] people = new int[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            people[i] = familyTree.getPerson(ids[i]).getIndex();
+        }
+        KinshipService kinship = familyTree.getKinshipService();
+        if (ids.length == 2) {
+            reply(String.format("Kinship: %.6f | Relationship: %.6f",
+                    kinship.kinship(people[0], people[1]), kinship.relationship(people[0], people[1])));
+            return;
+        }
+
+        double[][] matrix = kinship.kinshipMatrix(people);
+        StringBuilder header = new StringBuilder(String.format("%-10s", ""));
+        for (String id : ids) {
+            header.append(String.format(" %10s", id));
+        }
+        reply(header.toString());
+        for (int i = 0; i < ids.length; i++) {
+            StringBuilder row = new StringBuilder(String.format("%-10s", ids[i]));
+            for (double value : matrix[i]) {
+                row.append(String.format(" %10.6f", value));
+            }
+            reply(row.toString());
+        }
+    }
+
+    private void handleInbreeding(String args) {
+        KinshipService kinship = familyTree.getKinshipService();
+        if (!args.isBlank()) {
+            Person person = familyTree.getPerson(args.trim());
+            reply(String.format("Inbreeding: %.6f", kinship.inbreeding(person.getIndex())));
+            return;
+        }
+
+        double[] coefficients = kinship.inbreedingAll();
+        int inbred = 0;
+        double total = 0.0;
+        for (int i = 0; i < coefficients.length; i++) {
+            if (coefficients[i] > 0) {
+                reply(String.format("%s | %.6f", familyTree.getStore().id(i), coefficients[i]));
+                inbred++;
+            }
+            total += coefficients[i];
+        }
+        reply(String.format("%d of %d people inbred, mean F = %.6f",
+                inbred, coefficients.length, coefficients.length > 0 ? total / coefficients.length : 0.0));
+    }
+
+    private void handleValidate(String args) {
+        String option = args.trim();
+        if (!option.isEmpty() && !option.equalsIgnoreCase("CHANGED")) {
+            throw new IllegalArgumentException("Unknown option: " + option + ". Use CHANGED");
+        }
+        IntegrityScanner scanner = familyTree.getIntegrityScanner();
+        if (format == Format.TEXT) {
+            out.println("Violations:");
+        }
+        int count = option.isEmpty() ? scanner.scan(this::printViolation) : scanner.scanChanged(this::printViolation);
+        if (format == Format.TSV) {
+            printEnd("Violations", count);
+        } else {
+            if (count == 0) out.println("<none>");
+            reply("Checked " + scanner.getCheckedCount() + " people: " + count + " violation(s)");
+        }
+    }
+
+    private void printViolation(IntegrityViolation violation) {
+        StringBuilder line = this.line;
+        line.setLength(0);
+        if (format == Format.TEXT) {
+            printLine(line.append("- ").append(violation));
+            return;
+        }
+        line.append("VIOLATION\t").append(field(violation.getPersonId())).append('\t')
+                .append(violation.getRule()).append('\t').append(field(violation.getMessage()));
+        printLine(line);
+    }
+
     private void handleSetTraversal(String args) {
-        switch (args.trim().toUpperCase()) {
+        checkOwnTree("SET_TRAVERSAL");
+        String[] parts = words(args);
+        switch (parts[0].toUpperCase()) {
             case "DFS":
-                familyTree.setTraversalStrategy(new DFSTraversal());
-                System.out.println("Traversal strategy set to DFS");
+                boolean uniqueDfs = parts.length > 1 && parseUnique(parts[1]);
+                familyTree.setTraversalStrategy(new DFSTraversal(uniqueDfs));
+                reply("Traversal strategy set to DFS" + (uniqueDfs ? " (unique)" : ""));
                 break;
             case "BFS":
-                familyTree.setTraversalStrategy(new BFSTraversal());
-                System.out.println("Traversal strategy set to BFS");
+                boolean uniqueBfs = parts.length > 1 && parseUnique(parts[1]);
+                familyTree.setTraversalStrategy(new BFSTraversal(uniqueBfs));
+                reply("Traversal strategy set to BFS" + (uniqueBfs ? " (unique)" : ""));
+                break;
+            case "PARALLEL":
+                handleSetParallelTraversal(parts);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown traversal strategy. Use DFS, BFS or PARALLEL");
+        }
+    }
+
+    private void handleSetParallelTraversal(String[] parts) {
+        int cutoff = ParallelDFSTraversal.DEFAULT_SEQUENTIAL_CUTOFF;
+        boolean ordered = true;
+        for (int i = 1; i < parts.length; i++) {
+            String option = parts[i].toUpperCase();
+            if (option.equals("ORDERED")) {
+                ordered = true;
+            } else if (option.equals("UNORDERED")) {
+                ordered = false;
+            } else {
+                cutoff = Integer.parseInt(option);
+            }
+        }
+        familyTree.setTraversalStrategy(new ParallelDFSTraversal(cutoff, ordered));
+        reply("Traversal strategy set to PARALLEL (cutoff=" + cutoff
+                + (ordered ? ", ordered)" : ", unordered)"));
+    }
+
+    private void handleCache(String args) {
+        checkOwnTree("CACHE");
+        String[] parts = words(args);
+        switch (parts[0].toUpperCase()) {
+            case "ON":
+                int capacity = parts.length > 1 ? Integer.parseInt(parts[1]) : QueryCache.DEFAULT_CAPACITY;
+                familyTree.enableQueryCache(capacity);
+                reply("Query cache enabled (capacity=" + capacity + " people)");
+                break;
+            case "OFF":
+                familyTree.disableQueryCache();
+                reply("Query cache disabled");
+                break;
+            case "STATS":
+                QueryCache cache = familyTree.getQueryCache();
+                reply(cache != null ? "Query cache: " + cache : "Query cache is off");
+                break;
+            default:
+                throw new IllegalArgumentException("Use CACHE ON [Capacity], CACHE OFF or CACHE STATS");
+        }
+    }
+
+    private void handleStats(String args) {
+        checkOwnTree("STATS");
+        switch (args.trim().toUpperCase()) {
+            case "ON":
+                Metrics.setEnabled(true);
+                reply("Latency histograms enabled");
+                return;
+            case "OFF":
+                Metrics.setEnabled(false);
+                reply("Latency histograms disabled");
+                return;
+            case "RESET":
+                Metrics.reset();
+                reply("Latency histograms cleared");
+                return;
+            case "":
                 break;
             default:
-                throw new IllegalArgumentException("Unknown traversal strategy. Use DFS or BFS");
+                throw new IllegalArgumentException("Use STATS, STATS ON, STATS OFF or STATS RESET");
+        }
+
+        Map<String, LatencyHistogram> histograms = Metrics.snapshot();
+        if (histograms.isEmpty()) {
+            reply(Metrics.isEnabled() ? "No operations recorded yet" : "Latency histograms are off. Use STATS ON");
+            return;
+        }
+        reply(String.format("%-36s %8s %10s %10s %10s %10s %10s", "Operation (us)", "Count", "Mean", "p50", "p90", "p99", "Max"));
+        for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            reply(String.format("%-36s %8d %10.1f %10.1f %10.1f %10.1f %10.1f", entry.getKey(), histogram.getCount(),
+                    histogram.getMean() / 1000.0,
+                    histogram.getValueAtPercentile(50) / 1000.0,
+                    histogram.getValueAtPercentile(90) / 1000.0,
+                    histogram.getValueAtPercentile(99) / 1000.0,
+                    histogram.getMax() / 1000.0));
+        }
+    }
+
+    private void handleImport(String args) {
+        checkOwnTree("IMPORT");
+        String trimmed = args.trim();
+        int space = indexOfWhitespace(trimmed, 0);
+        if (space < 0) {
+            throw new IllegalArgumentException("Need format (CSV or GEDCOM) and file path");
+        }
+        String[] parts = {trimmed.substring(0, space), trimmed.substring(space + 1).trim()};
+        Path path = Paths.get(parts[1]);
+        try {
+            BulkImport result;
+            switch (parts[0].toUpperCase()) {
+                case "CSV":
+                    result = CsvImporter.importFrom(familyTree, path);
+                    break;
+                case "GEDCOM":
+                    result = GedcomImporter.importFrom(familyTree, path);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown import format. Use CSV or GEDCOM");
+            }
+            reply("Imported " + result.getPeopleAdded() + " people, "
+                    + result.getRelationshipsAdded() + " relationships, "
+                    + result.getMarriagesAdded() + " marriages, "
+                    + result.getDivorcesAdded() + " divorces");
+        } catch (BulkImportException e) {
+            reply("Import rejected with " + e.getViolations().size() + " violation(s); nothing was imported:");
+            for (String violation : e.getViolations()) {
+                reply("- " + violation);
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot read " + path + ": " + e.getMessage());
+        }
+    }
+
+    private void handleExport(String args) {
+        checkOwnTree("EXPORT");
+        String[] parts = words(args);
+        if (parts.length != 2 && parts.length != 5) {
+            throw new IllegalArgumentException(
+                    "Need format (DOT, JSONL or GEDCOM), file path and optional DESCENDANTS|ANCESTORS PersonID Generations");
+        }
+        TreeExporter.Format exportFormat;
+        try {
+            exportFormat = TreeExporter.Format.valueOf(parts[0].toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown export format. Use DOT, JSONL or GEDCOM");
+        }
+        TreeExporter exporter = new TreeExporter(familyTree, exportFormat);
+        if (parts.length == 5) {
+            switch (parts[2].toUpperCase()) {
+                case "DESCENDANTS":
+                    exporter.limitToDescendants(parts[3], Integer.parseInt(parts[4]));
+                    break;
+                case "ANCESTORS":
+                    exporter.limitToAncestors(parts[3], Integer.parseInt(parts[4]));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Export can be limited to DESCENDANTS or ANCESTORS");
+            }
+        }
+        Path path = Paths.get(parts[1]);
+        long bytes;
+        try {
+            bytes = exporter.writeTo(path);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot write " + path + ": " + e.getMessage());
+        }
+        reply("Exported " + exporter.getPeopleWritten() + " people (" + bytes + " bytes) to " + path);
+    }
+
+    private void handleSave(String args) {
+        checkOwnTree("SAVE");
+        Path path = Paths.get(args.trim());
+        try {
+            familyTree.save(path);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot write " + path + ": " + e.getMessage());
         }
+        reply("Saved " + familyTree.size() + " people to " + path);
+    }
+
+    private void handleLoad(String args) {
+        checkOwnTree("LOAD");
+        Path path = Paths.get(args.trim());
+        closeJournal();
+        try {
+            familyTree = FamilyTree.load(path);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot load " + path + ": " + e.getMessage());
+        }
+        reply("Loaded " + familyTree.size() + " people from " + path);
+    }
+
+    private void handleOpen(String args) {
+        checkOwnTree("OPEN");
+        Path directory = Paths.get(args.trim());
+        closeJournal();
+        try {
+            journal = MutationJournal.open(directory);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot open " + directory + ": " + e.getMessage());
+        }
+        familyTree = journal.getFamilyTree();
+        reply("Opened " + directory + " with " + familyTree.size() + " people; journaling changes");
+    }
+
+    private void handleCompact() {
+        if (journal == null) {
+            throw new IllegalArgumentException("No data directory open. Use OPEN Directory");
+        }
+        try {
+            journal.compact();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Compaction failed: " + e.getMessage());
+        }
+        reply("Compacted journal into a snapshot of " + familyTree.size() + " people");
+    }
+
+    private void checkOwnTree(String command) {
+        if (sharedLock != null) {
+            throw new IllegalArgumentException(command + " is not available on a shared tree");
+        }
+    }
+
+    private void syncJournal() {
+        if (journal != null) {
+            try {
+                journal.sync();
+            } catch (IOException e) {
+                fail("journal sync failed, recent changes are not on disk: " + e.getMessage());
+            }
+        }
+    }
+
+    private void closeJournal() {
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                fail("journal close failed: " + e.getMessage());
+            }
+            journal = null;
+        }
+    }
+
+    private boolean parseUnique(String option) {
+        if (!option.equalsIgnoreCase("UNIQUE")) {
+            throw new IllegalArgumentException("Unknown option: " + option + ". Use UNIQUE");
+        }
+        return true;
+    }
+
+    private void printPersonStream(Iterator<Person> people, String title) {
+        if (!people.hasNext()) {
+            printNone(title);
+            return;
+        }
+        if (format == Format.TEXT) {
+            out.println(title + ":");
+        }
+        int count = 0;
+        while (people.hasNext()) {
+            printPerson(people.next());
+            count++;
+        }
+        printEnd(title, count);
     }
 
     private void printPersonList(List<Person> people, String title) {
         if (people.isEmpty()) {
-            System.out.println("<none>");
+            printNone(title);
+            return;
+        }
+        if (format == Format.TEXT) {
+            out.println(title + ":");
+        }
+        for (Person person : people) {
+            printPerson(person);
+        }
+        printEnd(title, people.size());
+    }
+
+    private void printPerson(Person person) {
+        StringBuilder line = this.line;
+        line.setLength(0);
+        if (format == Format.TEXT) {
+            line.append("- ");
+            person.appendTo(line);
+            printLine(line);
+            return;
+        }
+        line.append("PERSON\t").append(field(person.getId())).append('\t');
+        int nameStart = line.length();
+        person.getStore().appendFullName(person.getIndex(), line);
+        for (int i = nameStart; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\t' || c == '\n') line.setCharAt(i, ' ');
+        }
+        line.append('\t').append(person.getGender()).append('\t').append(person.getBirthYear()).append('\t');
+        Integer deathYear = person.getDeathYear();
+        if (deathYear != null) line.append(deathYear.intValue());
+        printLine(line);
+    }
+
+    /**
+     * Writes line through a reused char buffer rather than as a new string.
+     */
+    private void printLine(StringBuilder line) {
+        int length = line.length();
+        if (lineChars.length < length) {
+            lineChars = new char[Math.max(length, lineChars.length * 2)];
+        }
+        line.getChars(0, length, lineChars, 0);
+        out.write(lineChars, 0, length);
+        out.println();
+    }
+
+    private void printNone(String title) {
+        if (format == Format.TEXT) {
+            out.println("<none>");
         } else {
-            System.out.println(title + ":");
-            for (Person person : people) {
-                System.out.println("- " + person);
+            printEnd(title, 0);
+        }
+    }
+
+    private void printEnd(String title, int count) {
+        if (format == Format.TSV) {
+            out.print("END\t");
+            out.print(title);
+            out.print('\t');
+            out.println(count);
+        }
+    }
+
+    private void reply(String message) {
+        if (format == Format.TSV) {
+            out.println(message.equals("OK") ? message : "OK\t" + field(message));
+        } else {
+            out.println(message);
+        }
+    }
+
+    private void fail(String message) {
+        out.print(format == Format.TSV ? "ERR\t" : "Error: ");
+        out.println(format == Format.TSV ? field(message) : message);
+    }
+
+    private static String field(String value) {
+        if (value == null) return "";
+        return value.indexOf('\t') < 0 && value.indexOf('\n') < 0
+                ? value : value.replace('\t', ' ').replace('\n', ' ');
+    }
+
+    /**
+     * Splits on runs of whitespace like {@code trim().split("\\s+")}, without a regex.
+     */
+    static String[] words(String text) {
+        int count = 0;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            if (!Character.isWhitespace(text.charAt(i)) && (i == 0 || Character.isWhitespace(text.charAt(i - 1)))) {
+                count++;
             }
         }
+        if (count == 0) return new String[] {""};
+
+        String[] words = new String[count];
+        int word = 0;
+        int i = 0;
+        while (word < count) {
+            while (Character.isWhitespace(text.charAt(i))) i++;
+            int end = indexOfWhitespace(text, i);
+            if (end < 0) end = length;
+            words[word++] = text.substring(i, end);
+            i = end;
+        }
+        return words;
+    }
+
+    private static int indexOfWhitespace(String text, int from) {
+        for (int i = from; i < text.length(); i++) {
+            if (Character.isWhitespace(text.charAt(i))) return i;
+        }
+        return -1;
     }
 }
\ No newline at end of file
@@ -0,0 +1,125 @@
+package familytree.io;
+
+import familytree.model.Gender;
+import familytree.service.BulkImport;
+import familytree.service.FamilyTree;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming CSV loader. One record per line; blank lines and lines starting with '#'
+ * are skipped and fields may be double-quoted:
+ * <pre>
+ * PERSON,key,"Full Name",GENDER,birthYear[,deathYear]
+ * PARENT_CHILD,parentKey,childKey
+ * MARRIAGE,key1,key2,year
+ * </pre>
+ * Keys are local to the file; people get regular tree IDs.
+ */
+public class CsvImporter {
+    private CsvImporter() {}
+
+    public static BulkImport importFrom(FamilyTree familyTree, Path path) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            return importFrom(familyTree, reader);
+        }
+    }
+
+    public static BulkImport importFrom(FamilyTree familyTree, Reader input) throws IOException {
+        BufferedReader reader = input instanceof BufferedReader
+                ? (BufferedReader) input : new BufferedReader(input);
+        KeyedImport session = new KeyedImport(familyTree);
+        List<String> fields = new ArrayList<>();
+        String line;
+        int lineNumber = 0;
+
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank() || line.startsWith("#")) continue;
+            try {
+                splitFields(line, fields);
+                processRecord(session, lineNumber, fields);
+            } catch (IllegalArgumentException e) {
+                session.reject(lineNumber, e.getMessage());
+            }
+        }
+        return session.finish();
+    }
+
+    private static void processRecord(KeyedImport session, int line, List<String> fields) {
+        String type = fields.get(0).toUpperCase();
+        switch (type) {
+            case "PERSON":
+                requireFields(fields, 5, 6, type);
+                Integer deathYear = fields.size() == 6 && !fields.get(5).isEmpty()
+                        ? Integer.parseInt(fields.get(5)) : null;
+                session.person(line, fields.get(1), fields.get(2), parseGender(fields.get(3)),
+                        Integer.parseInt(fields.get(4)), deathYear);
+                break;
+            case "PARENT_CHILD":
+                requireFields(fields, 3, 3, type);
+                session.parentChild(line, fields.get(1), fields.get(2));
+                break;
+            case "MARRIAGE":
+                requireFields(fields, 4, 4, type);
+                session.marriage(line, fields.get(1), fields.get(2), Integer.parseInt(fields.get(3)));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown record type: " + type);
+        }
+    }
+
+    private static Gender parseGender(String value) {
+        try {
+            return Gender.valueOf(value.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown gender: " + value);
+        }
+    }
+
+    private static void requireFields(List<String> fields, int min, int max, String type) {
+        if (fields.size() < min || fields.size() > max) {
+            throw new IllegalArgumentException(type + " expects " + (min == max ? min : min + "-" + max)
+                    + " fields, got " + fields.size());
+        }
+    }
+
+    /**
+     * Splits one line on commas, honouring double quotes ("" escapes a quote).
+     */
+    static void splitFields(String line, List<String> fields) {
+        fields.clear();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString().trim());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quote");
+        }
+        fields.add(field.toString().trim());
+    }
+}
\ No newline at end of file
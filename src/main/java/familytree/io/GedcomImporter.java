@@ -0,0 +1,230 @@
+package familytree.io;
+
+import familytree.model.Gender;
+import familytree.service.BulkImport;
+import familytree.service.FamilyTree;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming GEDCOM 5.5 loader for the subset this model holds: INDI records (NAME, SEX,
+ * BIRT/DATE, DEAT/DATE) and FAM records (HUSB, WIFE, CHIL, MARR/DATE, DIV/DATE). Each
+ * record is handed to the bulk import as soon as the next level-0 line closes it. Only
+ * the year of a DATE is kept; other tags are ignored. Every MARR and DIV is kept, so a
+ * couple that divorced comes back divorced and its partners may marry again, as
+ * {@link TreeExporter} writes them.
+ */
+public class GedcomImporter {
+    private final KeyedImport session;
+
+    // Record being read
+    private String recordType;
+    private String recordKey;
+    private int recordLine;
+    private String event;
+    private String name;
+    private Gender gender;
+    private Integer birthYear;
+    private Integer deathYear;
+    private String husband;
+    private String wife;
+    private final List<String> children = new ArrayList<>();
+    private final List<String> events = new ArrayList<>(); // MARR and DIV in order
+    private final List<Integer> eventYears = new ArrayList<>();
+
+    private GedcomImporter(FamilyTree familyTree) {
+        this.session = new KeyedImport(familyTree);
+    }
+
+    public static BulkImport importFrom(FamilyTree familyTree, Path path) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            return importFrom(familyTree, reader);
+        }
+    }
+
+    public static BulkImport importFrom(FamilyTree familyTree, Reader input) throws IOException {
+        BufferedReader reader = input instanceof BufferedReader
+                ? (BufferedReader) input : new BufferedReader(input);
+        return new GedcomImporter(familyTree).read(reader);
+    }
+
+    private BulkImport read(BufferedReader reader) throws IOException {
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty()) continue;
+            processLine(lineNumber, line);
+        }
+        flushRecord();
+        return session.finish();
+    }
+
+    private void processLine(int lineNumber, String line) {
+        // level [@xref@] TAG [value]
+        int firstSpace = line.indexOf(' ');
+        if (firstSpace < 0) {
+            session.reject(lineNumber, "Malformed GEDCOM line");
+            return;
+        }
+        int level;
+        try {
+            level = Integer.parseInt(line.substring(0, firstSpace));
+        } catch (NumberFormatException e) {
+            session.reject(lineNumber, "Malformed GEDCOM level");
+            return;
+        }
+        String rest = line.substring(firstSpace + 1);
+        String xref = null;
+        if (rest.startsWith("@")) {
+            int space = rest.indexOf(' ');
+            xref = space < 0 ? rest : rest.substring(0, space);
+            rest = space < 0 ? "" : rest.substring(space + 1);
+        }
+        int space = rest.indexOf(' ');
+        String tag = (space < 0 ? rest : rest.substring(0, space)).toUpperCase();
+        String value = space < 0 ? "" : rest.substring(space + 1).trim();
+
+        if (level == 0) {
+            flushRecord();
+            startRecord(lineNumber, tag, xref);
+        } else if (level == 1) {
+            event = null;
+            processField(tag, value);
+        } else if (level == 2 && tag.equals("DATE") && event != null) {
+            processDate(value);
+        }
+    }
+
+    private void startRecord(int lineNumber, String tag, String xref) {
+        recordType = tag.equals("INDI") || tag.equals("FAM") ? tag : null;
+        recordKey = xref;
+        recordLine = lineNumber;
+        event = null;
+        name = null;
+        gender = Gender.OTHER;
+        birthYear = null;
+        deathYear = null;
+        husband = null;
+        wife = null;
+        children.clear();
+        events.clear();
+        eventYears.clear();
+    }
+
+    private void processField(String tag, String value) {
+        switch (tag) {
+            case "NAME":
+                name = value.replace("/", " ").replaceAll("\\s+", " ").trim();
+                break;
+            case "SEX":
+                gender = value.startsWith("M") ? Gender.MALE : value.startsWith("F") ? Gender.FEMALE : Gender.OTHER;
+                break;
+            case "BIRT":
+            case "DEAT":
+                event = tag;
+                break;
+            case "MARR":
+            case "DIV":
+                event = tag;
+                if (recordType != null && recordType.equals("FAM")) {
+                    events.add(tag);
+                    eventYears.add(null);
+                }
+                break;
+            case "HUSB":
+                husband = value;
+                break;
+            case "WIFE":
+                wife = value;
+                break;
+            case "CHIL":
+                children.add(value);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void processDate(String value) {
+        Integer year = parseYear(value);
+        switch (event) {
+            case "BIRT":
+                birthYear = year;
+                break;
+            case "DEAT":
+                deathYear = year;
+                break;
+            case "MARR":
+            case "DIV":
+                if (!eventYears.isEmpty()) eventYears.set(eventYears.size() - 1, year);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void flushRecord() {
+        if (recordType == null) return;
+        if (recordKey == null) {
+            session.reject(recordLine, recordType + " record without xref");
+        } else if (recordType.equals("INDI")) {
+            if (name == null || name.isEmpty()) {
+                session.reject(recordLine, "Missing name for " + recordKey);
+            } else {
+                session.person(recordLine, recordKey, name, gender, birthYear, deathYear);
+            }
+        } else {
+            for (String child : children) {
+                if (husband != null) session.parentChild(recordLine, husband, child);
+                if (wife != null) session.parentChild(recordLine, wife, child);
+            }
+            if (husband != null && wife != null) {
+                // A marriage without a year is skipped, and with it the divorce that ends it
+                boolean married = false;
+                for (int k = 0; k < events.size(); k++) {
+                    Integer year = eventYears.get(k);
+                    if (events.get(k).equals("MARR")) {
+                        married = year != null;
+                        if (married) session.marriage(recordLine, husband, wife, year);
+                    } else if (married) {
+                        session.divorce(recordLine, husband, wife, year);
+                        married = false;
+                    }
+                }
+            }
+        }
+        recordType = null;
+    }
+
+    /**
+     * First three- or four-digit token of a GEDCOM date ("12 JAN 1850", "ABT 1850").
+     */
+    static Integer parseYear(String date) {
+        int i = 0;
+        int length = date.length();
+        while (i < length) {
+            while (i < length && date.charAt(i) == ' ') i++;
+            int start = i;
+            while (i < length && date.charAt(i) != ' ') i++;
+            int tokenLength = i - start;
+            if (tokenLength == 3 || tokenLength == 4) {
+                int year = 0;
+                int j = start;
+                while (j < i && Character.isDigit(date.charAt(j))) {
+                    year = year * 10 + (date.charAt(j) - '0');
+                    j++;
+                }
+                if (j == i) return year;
+            }
+        }
+        return null;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,146 @@
+package familytree.io;
+
+import familytree.model.Gender;
+import familytree.service.BulkImport;
+import familytree.service.FamilyTree;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps the record keys of an input file onto a {@link BulkImport}. Relationships that
+ * mention a key before its person record has been read are kept aside and resolved at
+ * the end, so records may appear in any order.
+ * <p>
+ * Marriages and divorces are always kept aside and staged by year at the end, since a
+ * file lists them per family rather than per person: someone's remarriage may come
+ * before the record of the divorce that allows it. Within a year divorces go first,
+ * except that a divorce without a later year stays right after its own marriage.
+ */
+class KeyedImport {
+    private final BulkImport bulk;
+    private final Map<String, String> byKey = new HashMap<>();
+    private final List<Deferred> deferred = new ArrayList<>();
+    private final List<Deferred> familyEvents = new ArrayList<>();
+
+    KeyedImport(FamilyTree familyTree) {
+        this.bulk = familyTree.beginBulkImport();
+    }
+
+    void person(int line, String key, String fullName, Gender gender, Integer birthYear, Integer deathYear) {
+        if (byKey.containsKey(key)) {
+            reject(line, "Duplicate record key " + key);
+            return;
+        }
+        if (birthYear == null) {
+            reject(line, "Missing birth year for " + key);
+            return;
+        }
+        try {
+            byKey.put(key, bulk.addPerson(fullName, gender, birthYear, deathYear));
+        } catch (IllegalArgumentException e) {
+            reject(line, e.getMessage());
+        }
+    }
+
+    void parentChild(int line, String parentKey, String childKey) {
+        String parent = byKey.get(parentKey);
+        String child = byKey.get(childKey);
+        if (parent != null && child != null) {
+            bulk.addParentChildRelationship(parent, child);
+        } else {
+            deferred.add(new Deferred(line, Deferred.LINK, parentKey, childKey, null));
+        }
+    }
+
+    void marriage(int line, String key1, String key2, int year) {
+        Deferred marriage = new Deferred(line, Deferred.MARRIAGE, key1, key2, year);
+        marriage.sortYear = year;
+        marriage.sortRank = 1;
+        familyEvents.add(marriage);
+    }
+
+    /**
+     * @param year the year of the divorce, or null if unknown
+     */
+    void divorce(int line, String key1, String key2, Integer year) {
+        Deferred divorce = new Deferred(line, Deferred.DIVORCE, key1, key2, year);
+        Integer married = marriageYear(key1, key2);
+        if (year != null && (married == null || year > married)) {
+            divorce.sortYear = year;
+            divorce.sortRank = 0;
+        } else {
+            // Staged after the marriage it ends, which has the same sort key and came first
+            divorce.sortYear = married != null ? married : Integer.MIN_VALUE;
+            divorce.sortRank = married != null ? 1 : 0;
+        }
+        familyEvents.add(divorce);
+    }
+
+    private Integer marriageYear(String key1, String key2) {
+        for (int i = familyEvents.size() - 1; i >= 0; i--) {
+            Deferred event = familyEvents.get(i);
+            if (event.kind == Deferred.MARRIAGE
+                    && (event.firstKey.equals(key1) && event.secondKey.equals(key2)
+                    || event.firstKey.equals(key2) && event.secondKey.equals(key1))) {
+                return event.year;
+            }
+        }
+        return null;
+    }
+
+    void reject(int line, String message) {
+        bulk.reject("line " + line + ": " + message);
+    }
+
+    /**
+     * Resolves deferred relationships and commits the batch.
+     *
+     * @throws familytree.service.BulkImportException listing every violation
+     */
+    BulkImport finish() {
+        familyEvents.sort(Comparator.comparingInt((Deferred event) -> event.sortYear)
+                .thenComparingInt(event -> event.sortRank));
+        deferred.addAll(familyEvents);
+        for (Deferred relation : deferred) {
+            String first = byKey.get(relation.firstKey);
+            String second = byKey.get(relation.secondKey);
+            if (first == null || second == null) {
+                String missing = first == null ? relation.firstKey : relation.secondKey;
+                reject(relation.line, "Unknown record key " + missing);
+            } else if (relation.kind == Deferred.MARRIAGE) {
+                bulk.marry(first, second, relation.year);
+            } else if (relation.kind == Deferred.DIVORCE) {
+                bulk.divorce(first, second, relation.year);
+            } else {
+                bulk.addParentChildRelationship(first, second);
+            }
+        }
+        bulk.commit();
+        return bulk;
+    }
+
+    private static class Deferred {
+        static final int LINK = 0;
+        static final int MARRIAGE = 1;
+        static final int DIVORCE = 2;
+
+        final int line;
+        final int kind;
+        final String firstKey;
+        final String secondKey;
+        final Integer year;
+        int sortYear; // marriages and divorces only
+        int sortRank;
+
+        Deferred(int line, int kind, String firstKey, String secondKey, Integer year) {
+            this.line = line;
+            this.kind = kind;
+            this.firstKey = firstKey;
+            this.secondKey = secondKey;
+            this.year = year;
+        }
+    }
+}
\ No newline at end of file
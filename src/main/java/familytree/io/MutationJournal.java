@@ -0,0 +1,586 @@
+package familytree.io;
+
+import familytree.model.Gender;
+import familytree.model.Minor;
+import familytree.model.MutationListener;
+import familytree.model.NameDictionary;
+import familytree.model.Person;
+import familytree.model.PersonStore;
+import familytree.service.FamilyTree;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead journal of every mutation of a {@link FamilyTree}.
+ * <p>
+ * A data directory holds {@code snapshot-NNNNNN.ftsn} files, each covering every journal
+ * segment up to and including N, and {@code journal-NNNNNN.wal} segments. Opening a
+ * directory loads the newest snapshot, replays the newer segments on top of it, and
+ * starts a fresh segment for new mutations.
+ * <p>
+ * Records are {@code varint length, payload, CRC32}, with people referenced by store
+ * index (stable, as the store only appends). Appends go to an in-memory batch that a
+ * background thread writes and fsyncs as one group commit, either when the commit
+ * interval elapses, the batch is full, or {@link #sync()} asks for it; all waiters are
+ * released by the same fsync. A torn record at the tail of the last segment, left by a
+ * crash mid-write, is truncated on replay.
+ * <p>
+ * A mutation is applied in memory before its record is appended, so it is only durable
+ * once a later {@link #sync()} returns; until then a crash loses it. Once a write fails,
+ * or the journal is closed, the store refuses every further mutation (see
+ * {@link #beforeChange()}), so memory runs ahead of the journal by at most the
+ * mutations that were not yet synced, and sync reports the failure.
+ * <p>
+ * Mutations and {@link #compact()} must come from one thread at a time.
+ */
+public class MutationJournal implements MutationListener, Closeable {
+    public static final long DEFAULT_COMMIT_INTERVAL_MILLIS = 5;
+    public static final int DEFAULT_GROUP_COMMIT_BYTES = 1 << 20;
+
+    private static final int SEGMENT_MAGIC = 0x4C575446; // "FTWL" little-endian
+    private static final int SEGMENT_VERSION = 1;
+    private static final int SEGMENT_HEADER_SIZE = 16;
+
+    private static final byte OP_PERSON_ADDED = 1;
+    private static final byte OP_DEATH_YEAR = 2;
+    private static final byte OP_LINKED = 3;
+    private static final byte OP_MARRIED = 4;
+    private static final byte OP_DIVORCED = 5;
+    private static final byte OP_DIVORCED_IN_YEAR = 6;
+
+    private final Path directory;
+    private final FamilyTree familyTree;
+    private final PersonStore store;
+    private final long commitIntervalMillis;
+    private final int groupCommitBytes;
+    private final Thread committer;
+
+    private final Object lock = new Object();
+    private ByteBuffer pending = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+    private ByteBuffer writing = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+    private ByteBuffer record = ByteBuffer.allocate(1 << 8);
+    private long appended;
+    private long durable;
+    private boolean flushRequested;
+    private boolean closed;
+    private IOException failure;
+
+    // Guarded by ioLock: the committer writes outside `lock` so appends never wait on disk
+    private final Object ioLock = new Object();
+    private FileChannel segment;
+    private int segmentNumber;
+
+    private MutationJournal(Path directory, FamilyTree familyTree, int lastSegment,
+                            long commitIntervalMillis, int groupCommitBytes) throws IOException {
+        this.directory = directory;
+        this.familyTree = familyTree;
+        this.store = familyTree.getStore();
+        this.commitIntervalMillis = commitIntervalMillis;
+        this.groupCommitBytes = groupCommitBytes;
+        openSegment(lastSegment + 1);
+
+        this.committer = new Thread(this::runCommitter, "family-tree-journal");
+        committer.setDaemon(true);
+        committer.start();
+        store.addMutationListener(this);
+    }
+
+    public static MutationJournal open(Path directory) throws IOException {
+        return open(directory, DEFAULT_COMMIT_INTERVAL_MILLIS, DEFAULT_GROUP_COMMIT_BYTES);
+    }
+
+    /**
+     * Recovers the tree stored in directory (creating it if needed) and journals every
+     * later mutation of it.
+     */
+    public static MutationJournal open(Path directory, long commitIntervalMillis, int groupCommitBytes)
+            throws IOException {
+        Files.createDirectories(directory);
+        int snapshotNumber = latest(directory, "snapshot-", ".ftsn");
+        FamilyTree familyTree = snapshotNumber >= 0
+                ? FamilyTree.load(directory.resolve(snapshotName(snapshotNumber)))
+                : new FamilyTree();
+
+        List<Integer> segments = list(directory, "journal-", ".wal");
+        int lastSegment = Math.max(snapshotNumber, 0);
+        for (int i = 0; i < segments.size(); i++) {
+            int number = segments.get(i);
+            lastSegment = Math.max(lastSegment, number);
+            if (number > snapshotNumber) {
+                replay(directory.resolve(segmentName(number)), familyTree, i == segments.size() - 1);
+            }
+        }
+        return new MutationJournal(directory, familyTree, lastSegment, commitIntervalMillis, groupCommitBytes);
+    }
+
+    public FamilyTree getFamilyTree() {
+        return familyTree;
+    }
+
+    /**
+     * Blocks until every mutation journaled so far is on disk.
+     */
+    public void sync() throws IOException {
+        synchronized (lock) {
+            long target = appended;
+            flushRequested = true;
+            lock.notifyAll();
+            while (durable < target) {
+                if (failure != null) throw failure;
+                if (closed) throw new IOException("Journal is closed");
+                waitOn(lock, 0);
+            }
+            if (failure != null) throw failure;
+        }
+    }
+
+    /**
+     * Folds everything journaled so far into a new snapshot and deletes the segments and
+     * snapshots it supersedes. New mutations go to a fresh segment.
+     */
+    public void compact() throws IOException {
+        sync();
+        int covered;
+        synchronized (ioLock) {
+            covered = segmentNumber;
+            segment.close();
+            openSegment(covered + 1);
+        }
+        familyTree.save(directory.resolve(snapshotName(covered)));
+        // The snapshot's rename and the new segment must be durable before what they replace is gone
+        try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+            dir.force(true);
+        }
+
+        for (int number : list(directory, "journal-", ".wal")) {
+            if (number <= covered) Files.deleteIfExists(directory.resolve(segmentName(number)));
+        }
+        for (int number : list(directory, "snapshot-", ".ftsn")) {
+            if (number < covered) Files.deleteIfExists(directory.resolve(snapshotName(number)));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        store.removeMutationListener(this);
+        try {
+            sync();
+        } finally {
+            synchronized (lock) {
+                closed = true;
+                lock.notifyAll();
+            }
+            try {
+                committer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (ioLock) {
+                segment.close();
+            }
+        }
+    }
+
+    // MutationListener: encode and batch
+
+    /**
+     * Refuses changes that could no longer be journaled.
+     *
+     * @throws IllegalStateException if a write has failed or the journal is closed
+     */
+    @Override
+    public void beforeChange() {
+        synchronized (lock) {
+            if (failure != null) {
+                throw new IllegalStateException("Journal failed: " + failure.getMessage(), failure);
+            }
+            if (closed) {
+                throw new IllegalStateException("Journal is closed");
+            }
+        }
+    }
+
+    @Override
+    public void personAdded(int index) {
+        synchronized (lock) {
+            record.clear();
+            record.put(OP_PERSON_ADDED);
+            putVarInt(index);
+            record.put(store.person(index) instanceof Minor ? (byte) 1 : (byte) 0);
+            Gender gender = store.gender(index);
+            record.put((byte) (gender != null ? gender.ordinal() + 1 : 0));
+            putVarInt(zigZag(store.birthYear(index)));
+            putString(store.id(index));
+            putName(index);
+            appendRecord();
+        }
+    }
+
+    @Override
+    public void deathYearChanged(int index, int year) {
+        appendOp(OP_DEATH_YEAR, index, zigZag(year), 0, 2);
+    }
+
+    @Override
+    public void linked(int parent, int child) {
+        appendOp(OP_LINKED, parent, child, 0, 2);
+    }
+
+    @Override
+    public void married(int person1, int person2, int year) {
+        appendOp(OP_MARRIED, person1, person2, zigZag(year), 3);
+    }
+
+    @Override
+    public void divorced(int person1, int person2, int year) {
+        if (year == PersonStore.NO_YEAR) {
+            appendOp(OP_DIVORCED, person1, person2, 0, 2);
+        } else {
+            appendOp(OP_DIVORCED_IN_YEAR, person1, person2, zigZag(year), 3);
+        }
+    }
+
+    private void appendOp(byte op, int first, int second, int third, int fieldCount) {
+        synchronized (lock) {
+            record.clear();
+            record.put(op);
+            putVarInt(first);
+            putVarInt(second);
+            if (fieldCount == 3) putVarInt(third);
+            appendRecord();
+        }
+    }
+
+    private void appendRecord() {
+        // The change is already applied, so never throw here. A write that failed after
+        // beforeChange let this change through is reported by the next sync
+        if (failure != null || closed) {
+            return;
+        }
+        int length = record.position();
+        ensurePending(length + 9);
+        putVarInt(pending, length);
+        pending.put(record.array(), 0, length);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 0, length);
+        pending.putInt((int) crc.getValue());
+        appended++;
+        if (pending.position() >= groupCommitBytes) {
+            lock.notifyAll();
+        }
+    }
+
+    private void ensurePending(int bytes) {
+        if (pending.remaining() < bytes) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + bytes));
+            larger.order(ByteOrder.LITTLE_ENDIAN);
+            pending.flip();
+            larger.put(pending);
+            pending = larger;
+        }
+    }
+
+    private void putString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (record.remaining() < bytes.length + 5) {
+            ByteBuffer larger = ByteBuffer.allocate(record.capacity() + bytes.length + 5);
+            record.flip();
+            larger.put(record);
+            record = larger;
+        }
+        putVarInt(bytes.length);
+        record.put(bytes);
+    }
+
+    /**
+     * Like putString for the person's full name, copied straight from its tokens.
+     */
+    private void putName(int index) {
+        int length = store.fullNameUtf8Length(index);
+        if (record.remaining() < length + 5) {
+            ByteBuffer larger = ByteBuffer.allocate(record.capacity() + length + 5);
+            record.flip();
+            larger.put(record);
+            record = larger;
+        }
+        putVarInt(length);
+        NameDictionary dictionary = store.nameDictionary();
+        int tokens = store.nameTokenCount(index);
+        for (int t = 0; t < tokens; t++) {
+            if (t > 0) record.put((byte) ' ');
+            int token = store.nameToken(index, t);
+            dictionary.copyUtf8(token, 0, record);
+        }
+    }
+
+    private void putVarInt(int value) {
+        putVarInt(record, value);
+    }
+
+    private static void putVarInt(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    // Group commit
+
+    private void runCommitter() {
+        while (true) {
+            long target;
+            synchronized (lock) {
+                while (pending.position() == 0 && !closed) {
+                    waitOn(lock, 0);
+                }
+                if (pending.position() == 0 && closed) {
+                    return;
+                }
+                // Give concurrent appenders a moment to join this commit
+                long deadline = System.currentTimeMillis() + commitIntervalMillis;
+                while (!flushRequested && !closed && pending.position() < groupCommitBytes) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) break;
+                    waitOn(lock, remaining);
+                }
+                ByteBuffer batch = pending;
+                pending = writing;
+                writing = batch;
+                pending.clear();
+                flushRequested = false;
+                target = appended;
+            }
+
+            IOException error = null;
+            try {
+                synchronized (ioLock) {
+                    writing.flip();
+                    while (writing.hasRemaining()) {
+                        segment.write(writing);
+                    }
+                    segment.force(false);
+                }
+            } catch (IOException e) {
+                error = e;
+            }
+            writing.clear();
+
+            synchronized (lock) {
+                if (error != null) {
+                    failure = error;
+                } else {
+                    durable = target;
+                }
+                lock.notifyAll();
+                if (error != null) return;
+            }
+        }
+    }
+
+    private static void waitOn(Object monitor, long millis) {
+        try {
+            monitor.wait(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Segments and replay
+
+    private void openSegment(int number) throws IOException {
+        Path path = directory.resolve(segmentName(number));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(SEGMENT_MAGIC).putInt(SEGMENT_VERSION).putInt(number).putInt(store.size());
+        header.flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        channel.force(true);
+        segment = channel;
+        segmentNumber = number;
+    }
+
+    private static void replay(Path path, FamilyTree familyTree, boolean lastSegment) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+        if (data.remaining() < SEGMENT_HEADER_SIZE || data.getInt() != SEGMENT_MAGIC) {
+            if (lastSegment && data.limit() < SEGMENT_HEADER_SIZE) { // crashed while creating
+                Files.delete(path);
+                return;
+            }
+            throw new IOException("Not a journal segment: " + path);
+        }
+        int version = data.getInt();
+        if (version != SEGMENT_VERSION) {
+            throw new IOException("Unsupported journal version " + version + " in " + path);
+        }
+        data.getInt(); // segment number
+        int basePeople = data.getInt();
+        PersonStore store = familyTree.getStore();
+        if (basePeople != store.size()) {
+            throw new IOException("Journal " + path + " expects " + basePeople
+                    + " people before replay, found " + store.size());
+        }
+
+        CRC32 crc = new CRC32();
+        while (data.hasRemaining()) {
+            int start = data.position();
+            int length = readVarInt(data);
+            if (length < 0 || data.remaining() < length + 4) {
+                if (lastSegment) {
+                    truncate(path, start); // torn tail
+                    return;
+                }
+                throw new IOException("Truncated record at offset " + start + " in " + path);
+            }
+            int payload = data.position();
+            crc.reset();
+            crc.update(data.array(), payload, length);
+            if ((int) crc.getValue() != data.getInt(payload + length)) {
+                if (lastSegment) {
+                    truncate(path, start);
+                    return;
+                }
+                throw new IOException("Checksum mismatch at offset " + start + " in " + path);
+            }
+            ByteBuffer record = data.slice(payload, length);
+            try {
+                apply(record, store);
+            } catch (RuntimeException e) {
+                throw new IOException("Cannot replay record at offset " + start + " in " + path
+                        + ": " + e.getMessage(), e);
+            }
+            data.position(payload + length + 4);
+        }
+    }
+
+    /**
+     * Cuts a torn tail off so the segment stays valid once newer segments follow it.
+     */
+    private static void truncate(Path path, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(size);
+            channel.force(true);
+        }
+    }
+
+    private static void apply(ByteBuffer record, PersonStore store) {
+        byte op = record.get();
+        switch (op) {
+            case OP_PERSON_ADDED: {
+                int index = readVarInt(record);
+                boolean minor = record.get() == 1;
+                int genderCode = record.get();
+                int birthYear = unZigZag(readVarInt(record));
+                String id = readString(record);
+                String name = readString(record);
+                Gender gender = genderCode == 0 ? null : Gender.values()[genderCode - 1];
+                Person person = store.add(id, name, gender, birthYear, minor);
+                if (person.getIndex() != index) {
+                    throw new IllegalStateException("Person " + id + " replayed at index "
+                            + person.getIndex() + ", expected " + index);
+                }
+                break;
+            }
+            case OP_DEATH_YEAR: {
+                Person person = store.person(readVarInt(record));
+                int year = unZigZag(readVarInt(record));
+                person.setDeathYear(year != PersonStore.NO_YEAR ? year : null);
+                break;
+            }
+            case OP_LINKED:
+                store.person(readVarInt(record)).addChild(store.person(readVarInt(record)));
+                break;
+            case OP_MARRIED: {
+                Person person1 = store.person(readVarInt(record));
+                Person person2 = store.person(readVarInt(record));
+                if (!person1.marry(person2, unZigZag(readVarInt(record)))) {
+                    throw new IllegalStateException("Marriage of " + person1.getId() + " failed");
+                }
+                break;
+            }
+            case OP_DIVORCED:
+                store.person(readVarInt(record)).divorce();
+                break;
+            case OP_DIVORCED_IN_YEAR: {
+                Person person = store.person(readVarInt(record));
+                readVarInt(record);
+                if (!person.divorce(unZigZag(readVarInt(record)))) {
+                    throw new IllegalStateException("Divorce of " + person.getId() + " failed");
+                }
+                break;
+            }
+            default:
+                throw new IllegalStateException("Unknown journal operation " + op);
+        }
+    }
+
+    private static int readVarInt(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (!buffer.hasRemaining()) return -1;
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        return -1;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = readVarInt(buffer);
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+                StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    private static String segmentName(int number) {
+        return String.format("journal-%06d.wal", number);
+    }
+
+    private static String snapshotName(int number) {
+        return String.format("snapshot-%06d.ftsn", number);
+    }
+
+    private static int latest(Path directory, String prefix, String suffix) throws IOException {
+        List<Integer> numbers = list(directory, prefix, suffix);
+        return numbers.isEmpty() ? -1 : numbers.get(numbers.size() - 1);
+    }
+
+    private static List<Integer> list(Path directory, String prefix, String suffix) throws IOException {
+        List<Integer> numbers = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, prefix + "*" + suffix)) {
+            for (Path entry : entries) {
+                String name = entry.getFileName().toString();
+                try {
+                    numbers.add(Integer.parseInt(name.substring(prefix.length(), name.length() - suffix.length())));
+                } catch (NumberFormatException e) {
+                    // Not one of ours
+                }
+            }
+        }
+        Collections.sort(numbers);
+        return numbers;
+    }
+}
\ No newline at end of file
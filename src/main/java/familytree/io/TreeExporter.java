@@ -0,0 +1,488 @@
+package familytree.io;
+
+import familytree.metrics.Metrics;
+import familytree.model.FamilyUnits;
+import familytree.model.Gender;
+import familytree.model.NameDictionary;
+import familytree.model.PersonStore;
+import familytree.pattern.IntQueue;
+import familytree.service.FamilyTree;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+
+/**
+ * Streams a family tree, or part of it, to a channel as GraphViz DOT, JSON Lines or
+ * GEDCOM 5.5. Records are encoded straight from the store's columns into one reusable
+ * direct buffer, names byte by byte from the {@link NameDictionary} and numbers digit
+ * by digit, so an export allocates nothing per person and runs at the channel's speed.
+ * <p>
+ * Everyone is exported unless {@link #limitToDescendants} or {@link #limitToAncestors}
+ * narrows the export to the people within some generations of one person.
+ * Relationships are written only where both ends are exported. The tree must not
+ * change while an export runs.
+ */
+public class TreeExporter {
+    public enum Format { DOT, JSONL, GEDCOM }
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+    // How text is escaped
+    private static final int GEDCOM = 0;
+    private static final int JSON = 1;
+    private static final int DOT = 2;
+
+    private final FamilyTree familyTree;
+    private final PersonStore store;
+    private final Format format;
+    private BitSet selection; // null exports everyone
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final byte[] digits = new byte[11];
+    private WritableByteChannel channel;
+    private long bytesWritten;
+    private int peopleWritten;
+
+    public TreeExporter(FamilyTree familyTree, Format format) {
+        this.familyTree = familyTree;
+        this.store = familyTree.getStore();
+        this.format = format;
+    }
+
+    /**
+     * Exports only the person and their descendants up to generations down, replacing
+     * any earlier limit.
+     */
+    public TreeExporter limitToDescendants(String personId, int generations) {
+        return limitTo(familyTree.getPerson(personId).getIndex(), generations, true);
+    }
+
+    /**
+     * Exports only the person and their ancestors up to generations up, replacing any
+     * earlier limit.
+     */
+    public TreeExporter limitToAncestors(String personId, int generations) {
+        return limitTo(familyTree.getPerson(personId).getIndex(), generations, false);
+    }
+
+    private TreeExporter limitTo(int start, int generations, boolean downward) {
+        if (generations < 0) {
+            throw new IllegalArgumentException("Generations cannot be negative");
+        }
+        BitSet selected = new BitSet(store.size());
+        IntQueue queue = new IntQueue();
+        selected.set(start);
+        queue.offer(start, 0);
+        while (!queue.isEmpty()) {
+            int current = queue.peekNode();
+            int depth = queue.peekDepth();
+            queue.poll();
+            if (depth == generations) continue;
+
+            int count = downward ? store.childCount(current) : store.parentCount(current);
+            for (int k = 0; k < count; k++) {
+                int next = downward ? store.child(current, k) : store.parent(current, k);
+                if (!selected.get(next)) {
+                    selected.set(next);
+                    queue.offer(next, depth + 1);
+                }
+            }
+        }
+        selection = selected;
+        return this;
+    }
+
+    /**
+     * Writes the export to a new or truncated file.
+     *
+     * @return the number of bytes written
+     */
+    public long writeTo(Path path) throws IOException {
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            return writeTo(file);
+        }
+    }
+
+    /**
+     * Writes the export to channel, which is left open.
+     *
+     * @return the number of bytes written
+     */
+    public long writeTo(WritableByteChannel target) throws IOException {
+        long start = Metrics.start();
+        channel = target;
+        buffer.clear();
+        bytesWritten = 0;
+        peopleWritten = 0;
+        try {
+            switch (format) {
+                case DOT:
+                    writeDot();
+                    break;
+                case JSONL:
+                    writeJsonLines();
+                    break;
+                case GEDCOM:
+                    writeGedcom();
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown format: " + format);
+            }
+            flush();
+        } finally {
+            channel = null;
+        }
+        Metrics.record("export", start);
+        return bytesWritten;
+    }
+
+    /**
+     * Number of people in the last export.
+     */
+    public int getPeopleWritten() {
+        return peopleWritten;
+    }
+
+    private void writeDot() throws IOException {
+        putAscii("digraph family {\n");
+        for (int i = first(); i >= 0; i = next(i)) {
+            putAscii("  \"");
+            putText(store.id(i), DOT);
+            putAscii("\" [label=\"");
+            putName(i, DOT);
+            putAscii("\\n");
+            putInt(store.birthYear(i));
+            putByte((byte) '-');
+            if (!store.isAlive(i)) putInt(store.deathYear(i));
+            Gender gender = store.gender(i);
+            putAscii(gender == Gender.MALE ? "\", shape=box];\n"
+                    : gender == Gender.FEMALE ? "\", shape=ellipse];\n" : "\", shape=diamond];\n");
+            peopleWritten++;
+        }
+        for (int i = first(); i >= 0; i = next(i)) {
+            int childCount = store.childCount(i);
+            for (int k = 0; k < childCount; k++) {
+                int child = store.child(i, k);
+                if (!isSelected(child)) continue;
+                putEdge(i, child);
+                putAscii(";\n");
+            }
+        }
+        FamilyUnits families = store.families();
+        for (int unit = 0; unit < families.size(); unit++) {
+            int first = families.partner(unit, 0);
+            int second = families.partner(unit, 1);
+            int events = families.eventCount(unit);
+            if (events == 0 || second == PersonStore.NONE || !isSelected(first) || !isSelected(second)) continue;
+            putEdge(first, second);
+            putAscii(families.eventKind(unit, events - 1) == FamilyUnits.MARRIED
+                    ? " [dir=none, style=bold];\n" : " [dir=none, style=dashed];\n");
+        }
+        putAscii("}\n");
+    }
+
+    private void putEdge(int from, int to) throws IOException {
+        putAscii("  \"");
+        putText(store.id(from), DOT);
+        putAscii("\" -> \"");
+        putText(store.id(to), DOT);
+        putByte((byte) '"');
+    }
+
+    /**
+     * One object per person: id, name, gender, born, died, parents, spouse and
+     * marriageYear, with null for anything unknown or not exported.
+     */
+    private void writeJsonLines() throws IOException {
+        for (int i = first(); i >= 0; i = next(i)) {
+            putAscii("{\"id\":\"");
+            putText(store.id(i), JSON);
+            putAscii("\",\"name\":\"");
+            putName(i, JSON);
+            Gender gender = store.gender(i);
+            putAscii(gender == null ? "\",\"gender\":null"
+                    : gender == Gender.MALE ? "\",\"gender\":\"MALE\""
+                    : gender == Gender.FEMALE ? "\",\"gender\":\"FEMALE\"" : "\",\"gender\":\"OTHER\"");
+            putAscii(",\"born\":");
+            putInt(store.birthYear(i));
+            putAscii(",\"died\":");
+            if (store.isAlive(i)) {
+                putAscii("null");
+            } else {
+                putInt(store.deathYear(i));
+            }
+            putAscii(",\"parents\":[");
+            int parentCount = store.parentCount(i);
+            boolean firstParent = true;
+            for (int slot = 0; slot < parentCount; slot++) {
+                int parent = store.parent(i, slot);
+                if (!isSelected(parent)) continue;
+                putAscii(firstParent ? "\"" : ",\"");
+                putText(store.id(parent), JSON);
+                putByte((byte) '"');
+                firstParent = false;
+            }
+            int spouse = store.spouse(i);
+            if (spouse != PersonStore.NONE && isSelected(spouse)) {
+                putAscii("],\"spouse\":\"");
+                putText(store.id(spouse), JSON);
+                putAscii("\",\"marriageYear\":");
+                putInt(store.marriageYear(i));
+                putAscii("}\n");
+            } else {
+                putAscii("],\"spouse\":null,\"marriageYear\":null}\n");
+            }
+            peopleWritten++;
+        }
+    }
+
+    /**
+     * INDI records with NAME, SEX, BIRT, DEAT, FAMC and FAMS, then a FAM record per
+     * exported family unit with HUSB, WIFE, CHIL and every MARR and DIV in order, which
+     * {@link GedcomImporter} reads back.
+     */
+    private void writeGedcom() throws IOException {
+        putAscii("0 HEAD\n1 SOUR FamilyTree\n1 GEDC\n2 VERS 5.5.1\n2 FORM LINEAGE-LINKED\n1 CHAR UTF-8\n");
+        FamilyUnits families = store.families();
+        for (int i = first(); i >= 0; i = next(i)) {
+            putAscii("0 @");
+            putText(store.id(i), GEDCOM);
+            putAscii("@ INDI\n1 NAME ");
+            putGedcomName(i);
+            Gender gender = store.gender(i);
+            if (gender != null) {
+                putAscii(gender == Gender.MALE ? "\n1 SEX M" : gender == Gender.FEMALE ? "\n1 SEX F" : "\n1 SEX U");
+            }
+            putAscii("\n1 BIRT\n2 DATE ");
+            putInt(store.birthYear(i));
+            if (!store.isAlive(i)) {
+                putAscii("\n1 DEAT\n2 DATE ");
+                putInt(store.deathYear(i));
+            }
+            putByte((byte) '\n');
+            int parents = families.childOf(i);
+            if (parents != PersonStore.NONE && isExported(families, parents)) {
+                putFamilyPointer("1 FAMC ", parents);
+            }
+            int unitCount = families.unitCount(i);
+            for (int k = 0; k < unitCount; k++) {
+                int unit = families.unit(i, k);
+                if (isExported(families, unit)) putFamilyPointer("1 FAMS ", unit);
+            }
+            peopleWritten++;
+        }
+
+        for (int unit = 0; unit < families.size(); unit++) {
+            if (!isExported(families, unit)) continue;
+            int husband = families.partner(unit, 0);
+            int wife = families.partner(unit, 1);
+            if (store.gender(husband) == Gender.FEMALE
+                    || (wife != PersonStore.NONE && store.gender(wife) == Gender.MALE)) {
+                husband = wife;
+                wife = families.partner(unit, 0);
+            }
+            putAscii("0 @F");
+            putInt(unit + 1);
+            putAscii("@ FAM\n");
+            putPersonPointer("1 HUSB @", husband);
+            putPersonPointer("1 WIFE @", wife);
+            int childCount = families.childCount(unit);
+            for (int k = 0; k < childCount; k++) {
+                putPersonPointer("1 CHIL @", families.child(unit, k));
+            }
+            int events = families.eventCount(unit);
+            for (int k = 0; k < events; k++) {
+                putAscii(families.eventKind(unit, k) == FamilyUnits.MARRIED ? "1 MARR\n" : "1 DIV\n");
+                int year = families.eventYear(unit, k);
+                if (year != PersonStore.NO_YEAR) {
+                    putAscii("2 DATE ");
+                    putInt(year);
+                    putByte((byte) '\n');
+                }
+            }
+        }
+        putAscii("0 TRLR\n");
+    }
+
+    /**
+     * A unit is exported when one of its partners is, together with at least one other
+     * exported member.
+     */
+    private boolean isExported(FamilyUnits families, int unit) {
+        int members = 0;
+        for (int slot = 0; slot < 2; slot++) {
+            int partner = families.partner(unit, slot);
+            if (partner != PersonStore.NONE && isSelected(partner)) members++;
+        }
+        if (members == 0) return false;
+        int childCount = families.childCount(unit);
+        for (int k = 0; k < childCount && members < 2; k++) {
+            if (isSelected(families.child(unit, k))) members++;
+        }
+        return members >= 2;
+    }
+
+    private void putFamilyPointer(String prefix, int unit) throws IOException {
+        putAscii(prefix);
+        putAscii("@F");
+        putInt(unit + 1);
+        putAscii("@\n");
+    }
+
+    private void putPersonPointer(String prefix, int person) throws IOException {
+        if (person == PersonStore.NONE || !isSelected(person)) return;
+        putAscii(prefix);
+        putText(store.id(person), GEDCOM);
+        putAscii("@\n");
+    }
+
+    private int first() {
+        return next(-1);
+    }
+
+    private int next(int person) {
+        int candidate = selection != null ? selection.nextSetBit(person + 1) : person + 1;
+        return candidate >= 0 && candidate < store.size() ? candidate : -1;
+    }
+
+    private boolean isSelected(int person) {
+        return selection == null || selection.get(person);
+    }
+
+    // Encoding
+
+    /**
+     * Writes the full name with the last word as the /surname/, as GEDCOM expects.
+     */
+    private void putGedcomName(int index) throws IOException {
+        int tokens = store.nameTokenCount(index);
+        for (int t = 0; t < tokens; t++) {
+            if (t > 0) putByte((byte) ' ');
+            boolean surname = t == tokens - 1 && tokens > 1;
+            if (surname) putByte((byte) '/');
+            putToken(store.nameToken(index, t), GEDCOM);
+            if (surname) putByte((byte) '/');
+        }
+    }
+
+    private void putName(int index, int escape) throws IOException {
+        int tokens = store.nameTokenCount(index);
+        for (int t = 0; t < tokens; t++) {
+            if (t > 0) putByte((byte) ' ');
+            putToken(store.nameToken(index, t), escape);
+        }
+    }
+
+    private void putToken(int token, int escape) throws IOException {
+        NameDictionary dictionary = store.nameDictionary();
+        int length = dictionary.utf8Length(token);
+        for (int i = 0; i < length; i++) {
+            putEscaped(dictionary.byteAt(token, i), escape);
+        }
+    }
+
+    /**
+     * Writes text as UTF-8, escaped for the format.
+     */
+    private void putText(String text, int escape) throws IOException {
+        int length = text.length();
+        for (int i = 0; i < length; ) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                putEscaped((byte) c, escape);
+                i++;
+                continue;
+            }
+            int codePoint = text.codePointAt(i);
+            i += Character.charCount(codePoint);
+            ensure(4);
+            if (codePoint < 0x800) {
+                buffer.put((byte) (0xC0 | codePoint >> 6));
+            } else {
+                if (codePoint < 0x10000) {
+                    buffer.put((byte) (0xE0 | codePoint >> 12));
+                } else {
+                    buffer.put((byte) (0xF0 | codePoint >> 18));
+                    buffer.put((byte) (0x80 | (codePoint >> 12 & 0x3F)));
+                }
+                buffer.put((byte) (0x80 | (codePoint >> 6 & 0x3F)));
+            }
+            buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+        }
+    }
+
+    /**
+     * Control characters become \\u escapes in JSON and spaces elsewhere, since they
+     * would break a DOT string or a GEDCOM line; quotes and backslashes are escaped in
+     * JSON and DOT.
+     */
+    private void putEscaped(byte b, int escape) throws IOException {
+        if (b >= 0 && b < 0x20) {
+            if (escape == JSON) {
+                putAscii("\\u00");
+                putByte(HEX[b >> 4]);
+                putByte(HEX[b & 0xF]);
+            } else {
+                putByte((byte) ' ');
+            }
+        } else if ((b == '"' || b == '\\') && escape != GEDCOM) {
+            ensure(2);
+            buffer.put((byte) '\\');
+            buffer.put(b);
+        } else {
+            putByte(b);
+        }
+    }
+
+    /**
+     * Writes value in decimal without creating a string.
+     */
+    private void putInt(int value) throws IOException {
+        long remaining = value;
+        ensure(digits.length + 1);
+        if (remaining < 0) {
+            buffer.put((byte) '-');
+            remaining = -remaining;
+        }
+        int count = 0;
+        do {
+            digits[count++] = (byte) ('0' + remaining % 10);
+            remaining /= 10;
+        } while (remaining > 0);
+        while (count > 0) {
+            buffer.put(digits[--count]);
+        }
+    }
+
+    private void putAscii(String text) throws IOException {
+        int length = text.length();
+        ensure(length);
+        for (int i = 0; i < length; i++) {
+            buffer.put((byte) text.charAt(i));
+        }
+    }
+
+    private void putByte(byte b) throws IOException {
+        ensure(1);
+        buffer.put(b);
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) flush();
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        bytesWritten += buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
\ No newline at end of file
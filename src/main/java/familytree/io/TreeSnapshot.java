@@ -0,0 +1,395 @@
+package familytree.io;
+
+import familytree.model.FamilyUnits;
+import familytree.model.Gender;
+import familytree.model.Minor;
+import familytree.model.NameDictionary;
+import familytree.model.Person;
+import familytree.model.PersonStore;
+import familytree.service.FamilyTree;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Compact binary snapshot of a whole {@link FamilyTree}.
+ * <pre>
+ * header    64 bytes: magic, version, person count, edge count, string table size,
+ *           CRC32 of each section, event count, CRC32 of the header itself
+ * records   fixed 36-byte person records (see {@link #RECORD_SIZE})
+ * offsets   (person count + 1) ints, CSR child offsets
+ * children  edge count ints
+ * strings   length-prefixed UTF-8 IDs and names, referenced by offset from records
+ * events    fixed 16-byte marriage and divorce events in the order they happened
+ * </pre>
+ * Loading replays the events, so the whole marriage history survives; version 1 files,
+ * which have no events section, restore only the current marriages from the records.
+ * All values are little-endian. Loading maps the file and bulk-copies each section into
+ * the store's primitive columns; every checksum is verified first, so a truncated or
+ * corrupt file is rejected before anything is built.
+ */
+public class TreeSnapshot {
+    public static final int MAGIC = 0x4E535446; // "FTSN" little-endian
+    public static final int VERSION = 2;
+
+    static final int HEADER_SIZE = 64;
+    static final int RECORD_SIZE = 36;
+    static final int EVENT_SIZE = 16;
+
+    private static final byte KIND_ADULT = 0;
+    private static final byte KIND_MINOR = 1;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private TreeSnapshot() {}
+
+    public static void save(FamilyTree familyTree, Path path) throws IOException {
+        PersonStore store = familyTree.getStore();
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                new Writer(store, channel).write();
+                channel.force(true);
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            // Leave no partial snapshot behind; the previous one, if any, is untouched
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @throws IOException if the file cannot be read or fails validation
+     */
+    public static FamilyTree load(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_SIZE) {
+                throw new IOException("Not a family tree snapshot: file too short");
+            }
+            if (fileSize > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot larger than 2 GB is not supported");
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+            return read(mapped, fileSize);
+        }
+    }
+
+    private static FamilyTree read(ByteBuffer file, long fileSize) throws IOException {
+        if (file.getInt(0) != MAGIC) {
+            throw new IOException("Not a family tree snapshot: bad magic");
+        }
+        int version = file.getInt(4);
+        if (version != 1 && version != VERSION) {
+            throw new IOException("Unsupported snapshot version " + version);
+        }
+        if (crc(file, 0, HEADER_SIZE - 4) != file.getInt(HEADER_SIZE - 4)) {
+            throw new IOException("Corrupt snapshot: header checksum mismatch");
+        }
+        int personCount = file.getInt(8);
+        int edgeCount = file.getInt(12);
+        long stringBytes = file.getLong(16);
+        int eventCount = version == 1 ? 0 : file.getInt(36);
+
+        long recordsStart = HEADER_SIZE;
+        long offsetsStart = recordsStart + (long) personCount * RECORD_SIZE;
+        long childrenStart = offsetsStart + (personCount + 1L) * 4;
+        long stringsStart = childrenStart + (long) edgeCount * 4;
+        long eventsStart = stringsStart + stringBytes;
+        if (personCount < 0 || edgeCount < 0 || eventCount < 0
+                || eventsStart + (long) eventCount * EVENT_SIZE != fileSize) {
+            throw new IOException("Corrupt snapshot: section sizes do not match file size");
+        }
+        verify(file, recordsStart, offsetsStart, file.getInt(24), "records");
+        verify(file, offsetsStart, stringsStart, file.getInt(28), "adjacency");
+        verify(file, stringsStart, eventsStart, file.getInt(32), "string table");
+        if (version > 1) {
+            verify(file, eventsStart, fileSize, file.getInt(40), "events");
+        }
+
+        try {
+            FamilyTree familyTree = build(file, personCount, edgeCount, (int) recordsStart, (int) offsetsStart,
+                    (int) childrenStart, (int) stringsStart, (int) stringBytes, version == 1);
+            replayEvents(familyTree.getStore(), file, (int) eventsStart, eventCount);
+            return familyTree;
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IOException("Corrupt snapshot: " + e.getMessage(), e);
+        }
+    }
+
+    private static FamilyTree build(ByteBuffer file, int personCount, int edgeCount, int recordsStart,
+                                    int offsetsStart, int childrenStart, int stringsStart, int stringBytes,
+                                    boolean restoreMarriages) {
+        PersonStore store = new PersonStore(personCount);
+        Gender[] genders = Gender.values();
+        int[] parentSlots = new int[2 * personCount];
+        int[] spouses = new int[personCount];
+        int[] marriageYears = new int[personCount];
+        byte[] scratch = new byte[64];
+
+        for (int i = 0; i < personCount; i++) {
+            int record = recordsStart + i * RECORD_SIZE;
+            byte kind = file.get(record);
+            int genderCode = file.get(record + 1);
+            int birthYear = file.getInt(record + 4);
+            int deathYear = file.getInt(record + 8);
+            marriageYears[i] = file.getInt(record + 12);
+            spouses[i] = file.getInt(record + 16);
+            parentSlots[2 * i] = file.getInt(record + 20);
+            parentSlots[2 * i + 1] = file.getInt(record + 24);
+            String id = readString(file, stringsStart, stringBytes, file.getInt(record + 28), scratch);
+            String name = readString(file, stringsStart, stringBytes, file.getInt(record + 32), scratch);
+            Gender gender = genderCode == 0 ? null : genders[genderCode - 1];
+
+            Person person = store.add(id, name, gender, birthYear, kind == KIND_MINOR);
+            if (deathYear != PersonStore.NO_YEAR) {
+                person.setDeathYear(deathYear);
+            }
+        }
+
+        int[] childOffsets = new int[personCount + 1];
+        sliceInts(file, offsetsStart, personCount + 1).get(childOffsets);
+        int[] children = new int[edgeCount];
+        sliceInts(file, childrenStart, edgeCount).get(children);
+        store.restoreLinks(parentSlots, childOffsets, children);
+
+        for (int i = 0; i < personCount && restoreMarriages; i++) {
+            int spouse = spouses[i];
+            if (spouse != PersonStore.NONE && spouse > i) {
+                store.person(i).marry(store.person(spouse), marriageYears[i]);
+            }
+        }
+        return new FamilyTree(store);
+    }
+
+    private static void replayEvents(PersonStore store, ByteBuffer file, int eventsStart, int eventCount) {
+        for (int i = 0; i < eventCount; i++) {
+            int event = eventsStart + i * EVENT_SIZE;
+            Person person1 = store.person(file.getInt(event));
+            Person person2 = store.person(file.getInt(event + 4));
+            int kind = file.getInt(event + 8);
+            int year = file.getInt(event + 12);
+            boolean applied;
+            if (kind == FamilyUnits.MARRIED) {
+                applied = person1.marry(person2, year);
+            } else if (kind == FamilyUnits.DIVORCED) {
+                applied = person1.getSpouse() == person2;
+                if (year == PersonStore.NO_YEAR) {
+                    person1.divorce();
+                } else {
+                    applied &= person1.divorce(year);
+                }
+            } else {
+                throw new IllegalArgumentException("Unknown event kind " + kind);
+            }
+            if (!applied) {
+                throw new IllegalArgumentException("Event " + i + " does not apply to " + person1.getId());
+            }
+        }
+    }
+
+    private static String readString(ByteBuffer file, int stringsStart, int stringBytes, int offset, byte[] scratch) {
+        if (offset < 0 || offset + 4 > stringBytes) {
+            throw new IndexOutOfBoundsException("String offset " + offset + " out of range");
+        }
+        int length = file.getInt(stringsStart + offset);
+        if (length < 0 || offset + 4 + length > stringBytes) {
+            throw new IndexOutOfBoundsException("String length " + length + " out of range");
+        }
+        byte[] bytes = length <= scratch.length ? scratch : new byte[length];
+        file.get(stringsStart + offset + 4, bytes, 0, length);
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private static IntBuffer sliceInts(ByteBuffer file, int start, int count) {
+        return file.slice(start, count * 4).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+    }
+
+    private static void verify(ByteBuffer file, long start, long end, int expected, String section)
+            throws IOException {
+        if (crc(file, start, end - start) != expected) {
+            throw new IOException("Corrupt snapshot: " + section + " checksum mismatch");
+        }
+    }
+
+    private static int crc(ByteBuffer file, long start, long length) {
+        CRC32 crc = new CRC32();
+        crc.update(file.slice((int) start, (int) length));
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Streams the sections through one reusable buffer, then writes the header last.
+     */
+    private static class Writer {
+        private final PersonStore store;
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        private CRC32 crc = new CRC32();
+
+        Writer(PersonStore store, FileChannel channel) {
+            this.store = store;
+            this.channel = channel;
+        }
+
+        void write() throws IOException {
+            int personCount = store.size();
+            // Encoded once, so offsets and the string table agree even for malformed UTF-16
+            byte[][] ids = new byte[personCount][];
+            long stringBytes = 0;
+            for (int i = 0; i < personCount; i++) {
+                ids[i] = store.id(i).getBytes(StandardCharsets.UTF_8);
+                stringBytes += 8 + ids[i].length + store.fullNameUtf8Length(i);
+            }
+            if (stringBytes > Integer.MAX_VALUE) {
+                throw new IOException("String table too large for snapshot format");
+            }
+
+            channel.position(HEADER_SIZE);
+            int stringOffset = 0;
+            for (int i = 0; i < personCount; i++) {
+                int idLength = ids[i].length;
+                ensure(RECORD_SIZE);
+                buffer.put(store.person(i) instanceof Minor ? KIND_MINOR : KIND_ADULT);
+                Gender gender = store.gender(i);
+                buffer.put((byte) (gender != null ? gender.ordinal() + 1 : 0));
+                buffer.putShort((short) 0);
+                buffer.putInt(store.birthYear(i));
+                buffer.putInt(store.deathYear(i));
+                buffer.putInt(store.marriageYear(i));
+                buffer.putInt(store.spouse(i));
+                buffer.putInt(store.parentCount(i) > 0 ? store.parent(i, 0) : PersonStore.NONE);
+                buffer.putInt(store.parentCount(i) > 1 ? store.parent(i, 1) : PersonStore.NONE);
+                buffer.putInt(stringOffset);
+                buffer.putInt(stringOffset + 4 + idLength);
+                stringOffset += 8 + idLength + store.fullNameUtf8Length(i);
+            }
+            int recordsCrc = finishSection();
+
+            int edgeCount = 0;
+            for (int i = 0; i < personCount; i++) {
+                ensure(4);
+                buffer.putInt(edgeCount);
+                edgeCount += store.childCount(i);
+            }
+            ensure(4);
+            buffer.putInt(edgeCount);
+            for (int i = 0; i < personCount; i++) {
+                int childCount = store.childCount(i);
+                for (int k = 0; k < childCount; k++) {
+                    ensure(4);
+                    buffer.putInt(store.child(i, k));
+                }
+            }
+            int adjacencyCrc = finishSection();
+
+            for (int i = 0; i < personCount; i++) {
+                putString(ids[i]);
+                putName(i);
+            }
+            int stringsCrc = finishSection();
+
+            FamilyUnits families = store.families();
+            int eventCount = families.eventLogSize();
+            for (int i = 0; i < eventCount; i++) {
+                int unit = families.loggedUnit(i);
+                ensure(EVENT_SIZE);
+                buffer.putInt(families.partner(unit, 0));
+                buffer.putInt(families.partner(unit, 1));
+                buffer.putInt(families.loggedKind(i));
+                buffer.putInt(families.loggedYear(i));
+            }
+            int eventsCrc = finishSection();
+
+            writeHeader(personCount, edgeCount, stringBytes, recordsCrc, adjacencyCrc, stringsCrc,
+                    eventCount, eventsCrc);
+        }
+
+        private void writeHeader(int personCount, int edgeCount, long stringBytes,
+                                 int recordsCrc, int adjacencyCrc, int stringsCrc,
+                                 int eventCount, int eventsCrc) throws IOException {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(personCount).putInt(edgeCount).putLong(stringBytes);
+            header.putInt(recordsCrc).putInt(adjacencyCrc).putInt(stringsCrc);
+            header.putInt(eventCount).putInt(eventsCrc);
+            CRC32 headerCrc = new CRC32();
+            headerCrc.update(header.array(), 0, HEADER_SIZE - 4);
+            header.putInt(HEADER_SIZE - 4, (int) headerCrc.getValue());
+            header.clear();
+            channel.position(0);
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+        }
+
+        private void putString(byte[] bytes) throws IOException {
+            ensure(4);
+            buffer.putInt(bytes.length);
+            int written = 0;
+            while (written < bytes.length) {
+                if (!buffer.hasRemaining()) flush();
+                int chunk = Math.min(buffer.remaining(), bytes.length - written);
+                buffer.put(bytes, written, chunk);
+                written += chunk;
+            }
+        }
+
+        /**
+         * Writes the full name as a length-prefixed string straight from its tokens.
+         */
+        private void putName(int index) throws IOException {
+            ensure(4);
+            buffer.putInt(store.fullNameUtf8Length(index));
+            NameDictionary dictionary = store.nameDictionary();
+            int tokens = store.nameTokenCount(index);
+            for (int t = 0; t < tokens; t++) {
+                if (t > 0) {
+                    ensure(1);
+                    buffer.put((byte) ' ');
+                }
+                int token = store.nameToken(index, t);
+                int length = dictionary.utf8Length(token);
+                int written = 0;
+                while (written < length) {
+                    if (!buffer.hasRemaining()) flush();
+                    written += dictionary.copyUtf8(token, written, buffer);
+                }
+            }
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) flush();
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            crc.update(buffer.duplicate());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private int finishSection() throws IOException {
+            flush();
+            int value = (int) crc.getValue();
+            crc = new CRC32();
+            return value;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,30 @@
+package familytree.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for one parent-child link attempt, including its cycle check.
+ */
+@Name("familytree.Link")
+@Label("Family Tree Link")
+@Category("Family Tree")
+@StackTrace(false)
+public class LinkEvent extends Event {
+    @Label("Parent")
+    public String parentId;
+
+    @Label("Child")
+    public String childId;
+
+    @Label("Cycle Check Visited")
+    @Description("People the cycle check walked through; 0 when the topological order alone decided")
+    public int cycleCheckVisited;
+
+    @Label("Linked")
+    public boolean linked;
+}
\ No newline at end of file
@@ -0,0 +1,56 @@
+package familytree.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide latency histograms, one per operation name.
+ * <p>
+ * Off by default (enable with {@link #setEnabled} or {@code -Dfamilytree.metrics=true}).
+ * Callers bracket an operation with {@link #start()} and {@link #record}; while
+ * disabled, start() is a single volatile read and record() returns immediately.
+ */
+public final class Metrics {
+    private static final Map<String, LatencyHistogram> HISTOGRAMS = new ConcurrentHashMap<>();
+    private static volatile boolean enabled = Boolean.getBoolean("familytree.metrics");
+
+    private Metrics() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    /**
+     * @return a start timestamp, or 0 when metrics are off
+     */
+    public static long start() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    public static void record(String operation, long start) {
+        if (start != 0L) {
+            histogram(operation).record(System.nanoTime() - start);
+        }
+    }
+
+    public static LatencyHistogram histogram(String operation) {
+        return HISTOGRAMS.computeIfAbsent(operation, name -> new LatencyHistogram());
+    }
+
+    /**
+     * Histograms recorded so far, sorted by operation name.
+     */
+    public static Map<String, LatencyHistogram> snapshot() {
+        return new TreeMap<>(HISTOGRAMS);
+    }
+
+    public static void reset() {
+        HISTOGRAMS.clear();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,32 @@
+package familytree.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for one {@code FamilyTree} operation.
+ */
+@Name("familytree.Operation")
+@Label("Family Tree Operation")
+@Category("Family Tree")
+@StackTrace(false)
+public class OperationEvent extends Event {
+    @Label("Operation")
+    public String operation;
+
+    @Label("Person")
+    @Description("Person the operation starts from, null for queries by year")
+    public String personId;
+
+    @Label("Generations")
+    @Description("Generation limit of ancestor and descendant queries, -1 otherwise")
+    public int generations = -1;
+
+    @Label("Result Size")
+    @Description("Size of the result, -1 for a cursor, which is read page by page later")
+    public int resultSize;
+}
\ No newline at end of file
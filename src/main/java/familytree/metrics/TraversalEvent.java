@@ -0,0 +1,44 @@
+package familytree.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight Recorder event for one {@code TraversalStrategy.traverse} call. The shape
+ * fields are measured only for traversals that pass the threshold and are recorded.
+ */
+@Name("familytree.Traversal")
+@Label("Family Tree Traversal")
+@Category("Family Tree")
+@StackTrace(false)
+@Threshold("1 ms")
+public class TraversalEvent extends Event {
+    @Label("Strategy")
+    public String strategy;
+
+    @Label("Person")
+    public String personId;
+
+    @Label("Max Depth")
+    public int maxDepth;
+
+    @Label("Result Size")
+    @Description("People returned, counting repeats along different paths")
+    public int resultSize;
+
+    @Label("Nodes Visited")
+    @Description("Distinct people within the depth limit")
+    public int nodesVisited;
+
+    @Label("Depth Reached")
+    public int depthReached;
+
+    @Label("Max Fan-Out")
+    @Description("Most children of any person visited")
+    public int maxFanOut;
+}
\ No newline at end of file
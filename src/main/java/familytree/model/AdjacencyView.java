@@ -0,0 +1,33 @@
+package familytree.model;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * Read-only list over one person's parents or children, reading the store directly.
+ */
+class AdjacencyView extends AbstractList<Person> implements RandomAccess {
+    private final PersonStore store;
+    private final int index;
+    private final boolean children;
+
+    AdjacencyView(PersonStore store, int index, boolean children) {
+        this.store = store;
+        this.index = index;
+        this.children = children;
+    }
+
+    @Override
+    public Person get(int position) {
+        if (position < 0 || position >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + position + ", Size: " + size());
+        }
+        int target = children ? store.child(index, position) : store.parent(index, position);
+        return store.person(target);
+    }
+
+    @Override
+    public int size() {
+        return children ? store.childCount(index) : store.parentCount(index);
+    }
+}
\ No newline at end of file
@@ -1,10 +1,26 @@
 package familytree.model;
 
 public class Adult extends Person {
+    /**
+     * @deprecated see {@link Person#Person(String, String, Gender, int)}
+     */
+    @Deprecated
     public Adult(String id, String fullName, Gender gender, int birthYear) {
         super(id, fullName, gender, birthYear);
     }
 
+    /**
+     * @deprecated see {@link Person#Person(PersonStore, String, String, Gender, int)}
+     */
+    @Deprecated
+    public Adult(PersonStore store, String id, String fullName, Gender gender, int birthYear) {
+        super(store, id, fullName, gender, birthYear);
+    }
+
+    Adult(PersonStore store, int index) {
+        super(store, index);
+    }
+
     public boolean canAdopt() {
         return true;
     }
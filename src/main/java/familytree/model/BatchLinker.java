@@ -0,0 +1,218 @@
+package familytree.model;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * One-shot validation and linking of a batch of parent -> child edges for
+ * {@link PersonStore#linkBatch}. Edges are sorted by (child, parent) to find duplicates
+ * and parent overflows, then Kahn's algorithm runs once over the existing graph plus
+ * the batch. Whatever Kahn cannot order is peeled from the other end as well, leaving
+ * only the people that sit on a cycle, so cycle reports name the offending edges.
+ * <p>
+ * A batch may also link people who are still to be added: indexes from the store's
+ * size on stand for them, in order, as people without any links yet. They are only
+ * added, through a callback, once the batch has passed validation.
+ */
+class BatchLinker {
+    private final PersonStore store;
+    private final int stored; // people already in the store
+    private final List<String> pendingIds;
+    private final int size;
+
+    // Accepted batch edges as (child << 32 | parent), sorted
+    private long[] edges;
+    private int edgeCount;
+
+    // Batch edges by parent, CSR
+    private int[] stagedOffsets;
+    private int[] stagedChildren;
+
+    BatchLinker(PersonStore store, List<String> pendingIds) {
+        this.store = store;
+        this.stored = store.size();
+        this.pendingIds = pendingIds;
+        this.size = stored + pendingIds.size();
+    }
+
+    int link(int[] parents, int[] children, int count, Runnable addPending, List<String> violations) {
+        collectEdges(parents, children, count, violations);
+        checkParentLimit(violations);
+        indexByParent();
+
+        int[] order = new int[size];
+        int[] pending = new int[size];
+        int ordered = topologicalSort(order, pending);
+        if (ordered < size) {
+            reportCycles(pending, violations);
+        }
+        if (!violations.isEmpty()) {
+            return 0;
+        }
+
+        if (!pendingIds.isEmpty()) {
+            addPending.run();
+            if (store.size() != size) {
+                throw new IllegalStateException("Expected " + pendingIds.size() + " people to be added, got "
+                        + (store.size() - stored));
+            }
+        }
+        for (int i = 0; i < edgeCount; i++) {
+            store.linkUnordered(parentOf(edges[i]), childOf(edges[i]));
+        }
+        store.reachability().assign(order, size);
+        for (int i = 0; i < edgeCount; i++) {
+            store.notifyLinked(parentOf(edges[i]), childOf(edges[i]));
+        }
+        return edgeCount;
+    }
+
+    private void collectEdges(int[] parents, int[] children, int count, List<String> violations) {
+        long[] keys = new long[count];
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            int parent = parents[i];
+            int child = children[i];
+            if (parent == child) {
+                violations.add("Cannot add self as child: " + id(child));
+            } else if (parent >= stored || child >= stored || !store.hasChild(parent, child)) {
+                keys[kept++] = ((long) child << 32) | parent;
+            }
+        }
+        Arrays.sort(keys, 0, kept);
+
+        edgeCount = 0;
+        for (int i = 0; i < kept; i++) {
+            if (i == 0 || keys[i] != keys[i - 1]) {
+                keys[edgeCount++] = keys[i];
+            }
+        }
+        edges = keys;
+    }
+
+    private void checkParentLimit(List<String> violations) {
+        int i = 0;
+        while (i < edgeCount) {
+            int child = childOf(edges[i]);
+            int end = i;
+            while (end < edgeCount && childOf(edges[end]) == child) {
+                end++;
+            }
+            if (parentCount(child) + (end - i) > 2) {
+                violations.add("Cannot have more than 2 parents: " + id(child));
+            }
+            i = end;
+        }
+    }
+
+    private void indexByParent() {
+        stagedOffsets = new int[size + 1];
+        for (int i = 0; i < edgeCount; i++) {
+            stagedOffsets[parentOf(edges[i]) + 1]++;
+        }
+        for (int i = 0; i < size; i++) {
+            stagedOffsets[i + 1] += stagedOffsets[i];
+        }
+        stagedChildren = new int[edgeCount];
+        int[] fill = Arrays.copyOf(stagedOffsets, size);
+        for (int i = 0; i < edgeCount; i++) {
+            stagedChildren[fill[parentOf(edges[i])]++] = childOf(edges[i]);
+        }
+    }
+
+    /**
+     * Kahn's algorithm over existing plus batch edges. On return pending[i] is still
+     * positive for every person that could not be ordered.
+     */
+    private int topologicalSort(int[] order, int[] pending) {
+        for (int i = 0; i < edgeCount; i++) {
+            pending[childOf(edges[i])]++;
+        }
+        int tail = 0;
+        for (int i = 0; i < size; i++) {
+            pending[i] += parentCount(i);
+            if (pending[i] == 0) order[tail++] = i;
+        }
+        for (int head = 0; head < tail; head++) {
+            int node = order[head];
+            int childCount = childCount(node);
+            for (int k = 0; k < childCount; k++) {
+                int child = store.child(node, k);
+                if (--pending[child] == 0) order[tail++] = child;
+            }
+            for (int k = stagedOffsets[node]; k < stagedOffsets[node + 1]; k++) {
+                int child = stagedChildren[k];
+                if (--pending[child] == 0) order[tail++] = child;
+            }
+        }
+        return tail;
+    }
+
+    private void reportCycles(int[] pending, List<String> violations) {
+        // Count, for every unordered person, their unordered children
+        int[] outgoing = new int[size];
+        int[] queue = new int[size];
+        int tail = 0;
+        for (int node = 0; node < size; node++) {
+            if (pending[node] == 0) continue;
+            int childCount = childCount(node);
+            for (int k = 0; k < childCount; k++) {
+                if (pending[store.child(node, k)] > 0) outgoing[node]++;
+            }
+            for (int k = stagedOffsets[node]; k < stagedOffsets[node + 1]; k++) {
+                if (pending[stagedChildren[k]] > 0) outgoing[node]++;
+            }
+            if (outgoing[node] == 0) queue[tail++] = node;
+        }
+
+        // Peel people with no unordered children; whoever remains lies on a cycle
+        boolean[] peeled = new boolean[size];
+        for (int head = 0; head < tail; head++) {
+            int node = queue[head];
+            peeled[node] = true;
+            for (int slot = 0; slot < parentCount(node); slot++) {
+                int parent = store.parent(node, slot);
+                if (pending[parent] > 0 && --outgoing[parent] == 0) queue[tail++] = parent;
+            }
+            for (int k = firstEdgeOf(node); k < edgeCount && childOf(edges[k]) == node; k++) {
+                int parent = parentOf(edges[k]);
+                if (pending[parent] > 0 && --outgoing[parent] == 0) queue[tail++] = parent;
+            }
+        }
+
+        for (int i = 0; i < edgeCount; i++) {
+            int parent = parentOf(edges[i]);
+            int child = childOf(edges[i]);
+            if (pending[parent] > 0 && pending[child] > 0 && !peeled[parent] && !peeled[child]) {
+                violations.add("Cycle detected: " + id(parent) + " -> " + id(child));
+            }
+        }
+    }
+
+    // Existing links; people still to be added have none
+
+    private int parentCount(int person) {
+        return person < stored ? store.parentCount(person) : 0;
+    }
+
+    private int childCount(int person) {
+        return person < stored ? store.childCount(person) : 0;
+    }
+
+    private String id(int person) {
+        return person < stored ? store.id(person) : pendingIds.get(person - stored);
+    }
+
+    private int firstEdgeOf(int child) {
+        int index = Arrays.binarySearch(edges, 0, edgeCount, (long) child << 32);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    private static int parentOf(long edge) {
+        return (int) edge;
+    }
+
+    private static int childOf(long edge) {
+        return (int) (edge >>> 32);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,249 @@
+package familytree.model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Family units of a {@link PersonStore}, the equivalent of GEDCOM FAM records: one per
+ * couple who married or had a child together, and one per parent for children whose
+ * other parent is unknown. A unit lists the couple, their children in the order they
+ * were linked, and every marriage and divorce between the two.
+ * <p>
+ * Units are identified by dense indexes and are never removed. Besides the units, the
+ * store's whole marriage history is kept as one event log in the order it happened,
+ * which is what snapshots persist and replay.
+ */
+public class FamilyUnits {
+    public static final int MARRIED = 1;
+    public static final int DIVORCED = 2;
+
+    private static final int NONE = PersonStore.NONE;
+
+    private int size;
+    private int[] partners = new int[32]; // two per unit, the second NONE for a lone parent
+    private int[][] children = new int[16][];
+    private int[] childCounts = new int[16];
+    private int[][] events = new int[16][]; // positions in the event log
+    private int[] eventCounts = new int[16];
+    private final Map<Long, Integer> byCouple = new HashMap<>();
+
+    // Per person: the unit they are a child of, and the units they are a partner in
+    private int[] childOf = new int[16];
+    private int[][] partnerOf = new int[16][];
+    private int[] partnerOfCounts = new int[16];
+
+    // Event log: unit, MARRIED or DIVORCED, and year (PersonStore.NO_YEAR if unknown)
+    private int[] logUnits = new int[16];
+    private int[] logKinds = new int[16];
+    private int[] logYears = new int[16];
+    private int logSize;
+
+    FamilyUnits() {
+        Arrays.fill(childOf, NONE);
+    }
+
+    FamilyUnits(FamilyUnits source) {
+        size = source.size;
+        partners = Arrays.copyOf(source.partners, 2 * size);
+        children = deepCopy(source.children, source.childCounts, size);
+        childCounts = Arrays.copyOf(source.childCounts, size);
+        events = deepCopy(source.events, source.eventCounts, size);
+        eventCounts = Arrays.copyOf(source.eventCounts, size);
+        byCouple.putAll(source.byCouple);
+        childOf = source.childOf.clone();
+        partnerOf = deepCopy(source.partnerOf, source.partnerOfCounts, source.partnerOf.length);
+        partnerOfCounts = source.partnerOfCounts.clone();
+        logUnits = Arrays.copyOf(source.logUnits, source.logSize);
+        logKinds = Arrays.copyOf(source.logKinds, source.logSize);
+        logYears = Arrays.copyOf(source.logYears, source.logSize);
+        logSize = source.logSize;
+    }
+
+    public int size() { return size; }
+
+    /**
+     * @param slot 0 or 1
+     * @return the partner, or {@link PersonStore#NONE} for the missing partner of a lone parent
+     */
+    public int partner(int unit, int slot) { return partners[2 * unit + slot]; }
+
+    public int childCount(int unit) { return childCounts[unit]; }
+    public int child(int unit, int position) { return children[unit][position]; }
+
+    public int eventCount(int unit) { return eventCounts[unit]; }
+    public int eventKind(int unit, int position) { return logKinds[events[unit][position]]; }
+    public int eventYear(int unit, int position) { return logYears[events[unit][position]]; }
+
+    /**
+     * Position of a unit's event in the store-wide event log, for ordering across units.
+     */
+    public int eventOrder(int unit, int position) { return events[unit][position]; }
+
+    /**
+     * The unit person is a child of, or {@link PersonStore#NONE} without known parents.
+     */
+    public int childOf(int person) {
+        return person < childOf.length ? childOf[person] : NONE;
+    }
+
+    /**
+     * Number of units person is a partner in, in the order they were formed.
+     */
+    public int unitCount(int person) {
+        return person < partnerOfCounts.length ? partnerOfCounts[person] : 0;
+    }
+
+    public int unit(int person, int position) { return partnerOf[person][position]; }
+
+    /**
+     * The unit of a couple, or of a lone parent when partner2 is {@link PersonStore#NONE};
+     * {@link PersonStore#NONE} if there is none.
+     */
+    public int find(int partner1, int partner2) {
+        Integer unit = byCouple.get(coupleKey(partner1, partner2));
+        return unit != null ? unit : NONE;
+    }
+
+    /**
+     * The other partner of person in unit, or {@link PersonStore#NONE} if unknown.
+     */
+    public int otherPartner(int unit, int person) {
+        int first = partners[2 * unit];
+        return first == person ? partners[2 * unit + 1] : first;
+    }
+
+    public int eventLogSize() { return logSize; }
+    public int loggedUnit(int position) { return logUnits[position]; }
+    public int loggedKind(int position) { return logKinds[position]; }
+    public int loggedYear(int position) { return logYears[position]; }
+
+    /**
+     * Rough heap footprint in bytes, see {@link PersonStore#estimateBytes()}.
+     */
+    long estimateBytes() {
+        return 20L * childOf.length + 100L * size + 12L * logUnits.length;
+    }
+
+    // Maintained by the store
+
+    void linked(int child, int parent1, int parent2) {
+        int previous = childOf(child);
+        if (previous != NONE) {
+            removeChild(previous, child);
+        }
+        int unit = findOrCreate(parent1, parent2);
+        ensurePersonCapacity(child + 1);
+        if (childCounts[unit] == 0) {
+            children[unit] = new int[2];
+        } else if (childCounts[unit] == children[unit].length) {
+            children[unit] = Arrays.copyOf(children[unit], childCounts[unit] * 2);
+        }
+        children[unit][childCounts[unit]++] = child;
+        childOf[child] = unit;
+    }
+
+    void married(int person1, int person2, int year) {
+        log(findOrCreate(person1, person2), MARRIED, year);
+    }
+
+    void divorced(int person1, int person2, int year) {
+        log(findOrCreate(person1, person2), DIVORCED, year);
+    }
+
+    private int findOrCreate(int partner1, int partner2) {
+        long key = coupleKey(partner1, partner2);
+        Integer existing = byCouple.get(key);
+        if (existing != null) return existing;
+
+        int unit = size++;
+        if (unit == childCounts.length) {
+            int capacity = Math.max(16, unit * 2);
+            partners = Arrays.copyOf(partners, 2 * capacity);
+            children = Arrays.copyOf(children, capacity);
+            childCounts = Arrays.copyOf(childCounts, capacity);
+            events = Arrays.copyOf(events, capacity);
+            eventCounts = Arrays.copyOf(eventCounts, capacity);
+        }
+        int first = partner2 == NONE || partner1 < partner2 ? partner1 : partner2;
+        int second = first == partner1 ? partner2 : partner1;
+        partners[2 * unit] = first;
+        partners[2 * unit + 1] = second;
+        byCouple.put(key, unit);
+        addPartnerOf(first, unit);
+        if (second != NONE) {
+            addPartnerOf(second, unit);
+        }
+        return unit;
+    }
+
+    private void addPartnerOf(int person, int unit) {
+        ensurePersonCapacity(person + 1);
+        int count = partnerOfCounts[person];
+        if (count == 0) {
+            partnerOf[person] = new int[1];
+        } else if (count == partnerOf[person].length) {
+            partnerOf[person] = Arrays.copyOf(partnerOf[person], count * 2);
+        }
+        partnerOf[person][count] = unit;
+        partnerOfCounts[person] = count + 1;
+    }
+
+    private void removeChild(int unit, int child) {
+        int[] list = children[unit];
+        int count = childCounts[unit];
+        for (int i = 0; i < count; i++) {
+            if (list[i] == child) {
+                System.arraycopy(list, i + 1, list, i, count - i - 1);
+                childCounts[unit] = count - 1;
+                return;
+            }
+        }
+    }
+
+    private void log(int unit, int kind, int year) {
+        if (logSize == logUnits.length) {
+            int capacity = Math.max(16, logSize * 2);
+            logUnits = Arrays.copyOf(logUnits, capacity);
+            logKinds = Arrays.copyOf(logKinds, capacity);
+            logYears = Arrays.copyOf(logYears, capacity);
+        }
+        logUnits[logSize] = unit;
+        logKinds[logSize] = kind;
+        logYears[logSize] = year;
+
+        int count = eventCounts[unit];
+        if (count == 0) {
+            events[unit] = new int[2];
+        } else if (count == events[unit].length) {
+            events[unit] = Arrays.copyOf(events[unit], count * 2);
+        }
+        events[unit][count] = logSize++;
+        eventCounts[unit] = count + 1;
+    }
+
+    private void ensurePersonCapacity(int required) {
+        if (required <= childOf.length) return;
+        int capacity = Math.max(required, childOf.length * 2);
+        int old = childOf.length;
+        childOf = Arrays.copyOf(childOf, capacity);
+        Arrays.fill(childOf, old, capacity, NONE);
+        partnerOf = Arrays.copyOf(partnerOf, capacity);
+        partnerOfCounts = Arrays.copyOf(partnerOfCounts, capacity);
+    }
+
+    private static long coupleKey(int partner1, int partner2) {
+        if (partner2 == NONE) return ((long) partner1 << 32) | 0xFFFFFFFFL;
+        int low = Math.min(partner1, partner2);
+        int high = Math.max(partner1, partner2);
+        return ((long) low << 32) | high;
+    }
+
+    private static int[][] deepCopy(int[][] source, int[] counts, int length) {
+        int[][] copy = new int[Math.max(length, 1)][];
+        for (int i = 0; i < length; i++) {
+            if (source[i] != null) copy[i] = Arrays.copyOf(source[i], Math.max(counts[i], 1));
+        }
+        return copy;
+    }
+}
\ No newline at end of file
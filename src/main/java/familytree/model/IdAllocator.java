@@ -0,0 +1,120 @@
+package familytree.model;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out person numbers for one {@link PersonStore} and converts them to and from
+ * the textual form {@code P} followed by the number, zero-padded to three digits
+ * ({@code P001}, {@code P042}, {@code P1234}).
+ * <p>
+ * Allocation is a single atomic add, so any number of threads may allocate or reserve
+ * ranges at once. Textual IDs sort by number only up to P999; order by
+ * {@link #parse(CharSequence)} rather than by the string.
+ */
+public final class IdAllocator {
+    /** Returned by {@link #parse} for text that is not a canonical ID. */
+    public static final long NOT_AN_ID = -1;
+
+    private static final int MIN_DIGITS = 3;
+    private static final int MAX_DIGITS = 18;
+
+    private final AtomicLong next;
+
+    public IdAllocator() {
+        this(1);
+    }
+
+    IdAllocator(long next) {
+        this.next = new AtomicLong(next);
+    }
+
+    public long allocate() {
+        return next.getAndIncrement();
+    }
+
+    /**
+     * Reserves count consecutive numbers for a caller that assigns them itself, such as
+     * an importer numbering its records up front.
+     *
+     * @return the first number of the range
+     */
+    public long reserve(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Cannot reserve a negative number of IDs");
+        }
+        return next.getAndAdd(count);
+    }
+
+    /**
+     * Makes sure number is never handed out, e.g. after it was read from a snapshot.
+     */
+    public void advancePast(long number) {
+        long current;
+        while (number >= (current = next.get()) && !next.compareAndSet(current, number + 1)) {
+            // Retry until this number or a larger one is covered
+        }
+    }
+
+    /**
+     * The number the next allocation will return.
+     */
+    public long peek() {
+        return next.get();
+    }
+
+    public static String format(long number) {
+        char[] buffer = new char[MAX_DIGITS + 1];
+        int length = encode(number, buffer, 0);
+        return new String(buffer, 0, length);
+    }
+
+    /**
+     * Writes the textual form of number into buffer at offset.
+     *
+     * @return the number of chars written, at most 19
+     */
+    public static int encode(long number, char[] buffer, int offset) {
+        if (number < 0) {
+            throw new IllegalArgumentException("Invalid person number: " + number);
+        }
+        int digits = Math.max(MIN_DIGITS, digitCount(number));
+        buffer[offset] = 'P';
+        for (int i = offset + digits; i > offset; i--) {
+            buffer[i] = (char) ('0' + number % 10);
+            number /= 10;
+        }
+        return digits + 1;
+    }
+
+    /**
+     * Decodes a canonical ID, one that {@link #format} would produce, without allocating.
+     *
+     * @return the number, or {@link #NOT_AN_ID} for any other text
+     */
+    public static long parse(CharSequence id) {
+        int length = id.length();
+        if (length < MIN_DIGITS + 1 || length > MAX_DIGITS + 1 || id.charAt(0) != 'P') {
+            return NOT_AN_ID;
+        }
+        // Only the three-digit form may start with zeros
+        if (length > MIN_DIGITS + 1 && id.charAt(1) == '0') {
+            return NOT_AN_ID;
+        }
+        long number = 0;
+        for (int i = 1; i < length; i++) {
+            char c = id.charAt(i);
+            if (c < '0' || c > '9') return NOT_AN_ID;
+            number = number * 10 + (c - '0');
+        }
+        return number;
+    }
+
+    private static int digitCount(long number) {
+        int digits = 1;
+        while (number >= 10) {
+            number /= 10;
+            digits++;
+        }
+        return digits;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,34 @@
+package familytree.model;
+
+/**
+ * One marriage from a person's history: who to, when it began, and when it ended in
+ * divorce if it did. Years are null when not recorded.
+ */
+public final class Marriage {
+    private final Person spouse;
+    private final Integer year;
+    private final boolean divorced;
+    private final Integer divorceYear;
+
+    public Marriage(Person spouse, Integer year, boolean divorced, Integer divorceYear) {
+        this.spouse = spouse;
+        this.year = year;
+        this.divorced = divorced;
+        this.divorceYear = divorceYear;
+    }
+
+    public Person getSpouse() { return spouse; }
+    public Integer getYear() { return year; }
+    public boolean isDivorced() { return divorced; }
+    public Integer getDivorceYear() { return divorceYear; }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(spouse.getId()).append(": married ")
+                .append(year != null ? year : "?");
+        if (divorced) {
+            text.append(", divorced ").append(divorceYear != null ? divorceYear : "?");
+        }
+        return text.toString();
+    }
+}
\ No newline at end of file
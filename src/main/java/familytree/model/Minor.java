@@ -1,10 +1,26 @@
 package familytree.model;
 
 public class Minor extends Person {
+    /**
+     * @deprecated see {@link Person#Person(String, String, Gender, int)}
+     */
+    @Deprecated
     public Minor(String id, String fullName, Gender gender, int birthYear) {
         super(id, fullName, gender, birthYear);
     }
 
+    /**
+     * @deprecated see {@link Person#Person(PersonStore, String, String, Gender, int)}
+     */
+    @Deprecated
+    public Minor(PersonStore store, String id, String fullName, Gender gender, int birthYear) {
+        super(store, id, fullName, gender, birthYear);
+    }
+
+    Minor(PersonStore store, int index) {
+        super(store, index);
+    }
+
     public boolean needsGuardian() {
         return true;
     }
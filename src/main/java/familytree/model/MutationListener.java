@@ -0,0 +1,40 @@
+package familytree.model;
+
+/**
+ * Observer of every change made to a {@link PersonStore}, called synchronously after
+ * the change has been applied. People are identified by their store index. Every
+ * callback defaults to doing nothing, so listeners override only what they track.
+ * <p>
+ * The callbacks after a change must not throw: the change is already applied and other
+ * listeners would miss it. A listener that may have to refuse changes, such as a journal
+ * that can no longer write, does so from {@link #beforeChange()}.
+ */
+public interface MutationListener {
+    /**
+     * Called before each change is applied; throwing refuses it and leaves the store as
+     * it was.
+     */
+    default void beforeChange() {
+    }
+
+    default void personAdded(int index) {
+    }
+
+    /**
+     * @param year the new death year, or {@link PersonStore#NO_YEAR} when cleared
+     */
+    default void deathYearChanged(int index, int year) {
+    }
+
+    default void linked(int parent, int child) {
+    }
+
+    default void married(int person1, int person2, int year) {
+    }
+
+    /**
+     * @param year the divorce year, or {@link PersonStore#NO_YEAR} if not known
+     */
+    default void divorced(int person1, int person2, int year) {
+    }
+}
\ No newline at end of file
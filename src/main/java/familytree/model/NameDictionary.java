@@ -0,0 +1,142 @@
+package familytree.model;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Shared dictionary of the words names are made of. Each distinct word, given name or
+ * surname alike, is stored once as UTF-8 in one byte array and referred to by a dense
+ * int token, so a name repeated across many people costs a few ints per person.
+ * <p>
+ * Tokens are appended and never removed; lookups by content go through an
+ * open-addressing table over the token bytes.
+ */
+public class NameDictionary {
+    private byte[] bytes = new byte[256];
+    private int[] offsets = new int[33]; // token t is bytes[offsets[t], offsets[t + 1])
+    private boolean[] ascii = new boolean[32];
+    private int count;
+    private int[] table = new int[64]; // token + 1, 0 means empty
+
+    NameDictionary() {}
+
+    NameDictionary(NameDictionary source) {
+        count = source.count;
+        bytes = Arrays.copyOf(source.bytes, source.offsets[count]);
+        offsets = Arrays.copyOf(source.offsets, count + 1);
+        ascii = Arrays.copyOf(source.ascii, count);
+        table = source.table.clone();
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int utf8Length(int token) {
+        return offsets[token + 1] - offsets[token];
+    }
+
+    public String token(int token) {
+        return new String(bytes, offsets[token], utf8Length(token), StandardCharsets.UTF_8);
+    }
+
+    public byte byteAt(int token, int position) {
+        return bytes[offsets[token] + position];
+    }
+
+    /**
+     * Appends the token's characters, without creating a string for ASCII tokens.
+     */
+    public void appendTo(int token, StringBuilder target) {
+        int start = offsets[token];
+        int end = offsets[token + 1];
+        if (!ascii[token]) {
+            target.append(new String(bytes, start, end - start, StandardCharsets.UTF_8));
+            return;
+        }
+        for (int i = start; i < end; i++) {
+            target.append((char) bytes[i]);
+        }
+    }
+
+    /**
+     * Copies UTF-8 bytes of the token from position from on, as many as fit in target.
+     *
+     * @return the number of bytes copied
+     */
+    public int copyUtf8(int token, int from, ByteBuffer target) {
+        int length = Math.min(target.remaining(), utf8Length(token) - from);
+        target.put(bytes, offsets[token] + from, length);
+        return length;
+    }
+
+    /**
+     * Token of the word text[start, end), added if new.
+     */
+    int intern(String text, int start, int end) {
+        byte[] word = text.substring(start, end).getBytes(StandardCharsets.UTF_8);
+        int hash = hash(word, 0, word.length);
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        while (table[slot] != 0) {
+            int token = table[slot] - 1;
+            if (Arrays.equals(bytes, offsets[token], offsets[token + 1], word, 0, word.length)) {
+                return token;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return add(word, slot);
+    }
+
+    private int add(byte[] word, int slot) {
+        int token = count++;
+        if (token == ascii.length) {
+            offsets = Arrays.copyOf(offsets, token * 2 + 1);
+            ascii = Arrays.copyOf(ascii, token * 2);
+        }
+        int start = offsets[token];
+        if (start + word.length > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(start + word.length, bytes.length * 2));
+        }
+        System.arraycopy(word, 0, bytes, start, word.length);
+        offsets[token + 1] = start + word.length;
+        boolean plain = true;
+        for (byte b : word) {
+            if (b < 0) plain = false;
+        }
+        ascii[token] = plain;
+        table[slot] = token + 1;
+        if (count * 2 > table.length) {
+            rehash();
+        }
+        return token;
+    }
+
+    private void rehash() {
+        table = new int[table.length * 2];
+        int mask = table.length - 1;
+        for (int token = 0; token < count; token++) {
+            int slot = hash(bytes, offsets[token], offsets[token + 1]) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = token + 1;
+        }
+    }
+
+    /**
+     * Rough heap footprint in bytes, see {@link PersonStore#estimateBytes()}.
+     */
+    long estimateBytes() {
+        return bytes.length + 5L * ascii.length + 4L * table.length;
+    }
+
+    private static int hash(byte[] data, int start, int end) {
+        int hash = 1;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + data[i];
+        }
+        return hash ^ (hash >>> 16);
+    }
+}
\ No newline at end of file
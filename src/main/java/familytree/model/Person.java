@@ -5,28 +5,44 @@ import java.util.List;
 import java.util.Objects;
 
 public abstract class Person {
-    private final String id;
-    private final String fullName;
-    private final Gender gender;
-    private final int birthYear;
-    private Integer deathYear;
-    private Person spouse;
-    private Integer marriageYear;
-    private final List<Person> children;
-    private final List<Person> parents;
-
+    private final PersonStore store;
+    private final int index;
+
+    /**
+     * Creates a person in a private store of their own.
+     *
+     * @deprecated a person created this way cannot be linked to or married with anyone
+     * else, as each has a different store; create people in one store through
+     * {@link familytree.pattern.PersonFactory} or {@link PersonStore#add}
+     */
+    @Deprecated
     public Person(String id, String fullName, Gender gender, int birthYear) {
+        this(new PersonStore(), id, fullName, gender, birthYear);
+    }
+
+    /**
+     * @deprecated store listeners are told about the person while this constructor is
+     * still running, before any subclass has finished constructing; use
+     * {@link PersonStore#add}, which creates the view first
+     */
+    @Deprecated
+    public Person(PersonStore store, String id, String fullName, Gender gender, int birthYear) {
         validateInput(id, fullName, birthYear);
 
-        this.id = id;
-        this.fullName = fullName;
-        this.gender = gender;
-        this.birthYear = birthYear;
-        this.children = new ArrayList<>();
-        this.parents = new ArrayList<>();
+        this.store = store;
+        this.index = store.register(id, fullName, gender, birthYear);
+        store.attach(index, this);
+    }
+
+    /**
+     * Binds a view to a person already in store, e.g. in a snapshot.
+     */
+    Person(PersonStore store, int index) {
+        this.store = store;
+        this.index = index;
     }
 
-    private void validateInput(String id, String fullName, int birthYear) {
+    static void validateInput(String id, String fullName, int birthYear) {
         if (id == null || id.trim().isEmpty()) {
             throw new IllegalArgumentException("ID cannot be null or empty");
         }
@@ -39,69 +55,82 @@ public abstract class Person {
     }
 
     public void setDeathYear(Integer deathYear) {
-        if (deathYear != null && deathYear < birthYear) {
+        if (deathYear != null && deathYear < getBirthYear()) {
             throw new IllegalArgumentException("Death year cannot be before birth year");
         }
-        this.deathYear = deathYear;
+        store.setDeathYear(index, deathYear != null ? deathYear : PersonStore.NO_YEAR);
     }
 
     public boolean marry(Person spouse, int year) {
-        if (this.spouse != null || spouse.getSpouse() != null) {
+        checkSameStore(spouse);
+        if (store.spouse(index) != PersonStore.NONE || store.spouse(spouse.index) != PersonStore.NONE) {
             return false;
         }
-        if (year < this.birthYear || year < spouse.getBirthYear()) {
+        if (year < getBirthYear() || year < spouse.getBirthYear()) {
             throw new IllegalArgumentException("Marriage year cannot be before birth year");
         }
 
-        this.spouse = spouse;
-        this.marriageYear = year;
-        spouse.spouse = this;
-        spouse.marriageYear = year;
+        store.marry(index, spouse.index, year);
         return true;
     }
 
     public void divorce() {
-        if (this.spouse != null) {
-            Person exSpouse = this.spouse;
-            this.spouse = null;
-            this.marriageYear = null;
-            exSpouse.spouse = null;
-            exSpouse.marriageYear = null;
+        int exSpouse = store.spouse(index);
+        if (exSpouse != PersonStore.NONE) {
+            store.divorce(index, exSpouse, PersonStore.NO_YEAR);
         }
     }
 
+    /**
+     * Divorces the current spouse, recording the year in the marriage history.
+     *
+     * @return false if not married
+     */
+    public boolean divorce(int year) {
+        int exSpouse = store.spouse(index);
+        if (exSpouse == PersonStore.NONE) {
+            return false;
+        }
+        if (year < store.marriageYear(index)) {
+            throw new IllegalArgumentException("Divorce year cannot be before marriage year");
+        }
+        store.divorce(index, exSpouse, year);
+        return true;
+    }
+
     public boolean addChild(Person child) {
         if (child == this) {
             throw new IllegalArgumentException("Cannot add self as child");
         }
+        checkSameStore(child);
         if (hasCycle(child)) {
             throw new IllegalArgumentException("Cycle detected: cannot make descendant an ancestor");
         }
-        if (!children.contains(child)) {
-            children.add(child);
-            return child.addParent(this);
+        if (store.hasChild(index, child.index)) {
+            return false;
         }
-        return false;
-    }
-
-    private boolean addParent(Person parent) {
-        if (parents.size() >= 2) {
+        if (store.parentCount(child.index) >= 2) {
             throw new IllegalArgumentException("Cannot have more than 2 parents");
         }
-        if (!parents.contains(parent)) {
-            parents.add(parent);
-            return true;
+        store.link(index, child.index);
+        return true;
+    }
+
+    private void checkSameStore(Person other) {
+        if (other.store != store) {
+            throw new IllegalArgumentException("Persons belong to different family trees");
         }
-        return false;
     }
 
     private boolean hasCycle(Person potentialChild) {
-        return potentialChild == this || potentialChild.getAncestors().contains(this);
+        return potentialChild == this || store.isAncestor(potentialChild.index, index);
     }
 
     public List<Person> getAncestors() {
         List<Person> ancestors = new ArrayList<>();
-        for (Person parent : parents) {
+        int parentCount = store.parentCount(index);
+        for (int slot = 0; slot < parentCount; slot++) {
+            Person parent = store.person(store.parent(index, slot));
             ancestors.add(parent);
             ancestors.addAll(parent.getAncestors());
         }
@@ -109,19 +138,59 @@ public abstract class Person {
     }
 
     // Getters
-    public String getId() { return id; }
-    public String getFullName() { return fullName; }
-    public Gender getGender() { return gender; }
-    public int getBirthYear() { return birthYear; }
-    public Integer getDeathYear() { return deathYear; }
-    public Person getSpouse() { return spouse; }
-    public Integer getMarriageYear() { return marriageYear; }
-    public List<Person> getChildren() { return new ArrayList<>(children); }
-    public List<Person> getParents() { return new ArrayList<>(parents); }
-
-    public boolean isAlive() { return deathYear == null; }
+    public PersonStore getStore() { return store; }
+    public int getIndex() { return index; }
+    public String getId() { return store.id(index); }
+    public String getFullName() { return store.fullName(index); }
+    public Gender getGender() { return store.gender(index); }
+    public int getBirthYear() { return store.birthYear(index); }
+    public Integer getDeathYear() { return boxYear(store.deathYear(index)); }
+    public Integer getMarriageYear() { return boxYear(store.marriageYear(index)); }
+
+    public Person getSpouse() {
+        int spouse = store.spouse(index);
+        return spouse != PersonStore.NONE ? store.person(spouse) : null;
+    }
+
+    public List<Person> getChildren() {
+        int count = store.childCount(index);
+        List<Person> children = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            children.add(store.person(store.child(index, i)));
+        }
+        return children;
+    }
+
+    public List<Person> getParents() {
+        int count = store.parentCount(index);
+        List<Person> parents = new ArrayList<>(count);
+        for (int slot = 0; slot < count; slot++) {
+            parents.add(store.person(store.parent(index, slot)));
+        }
+        return parents;
+    }
+
+    /**
+     * Live, read-only view of the children; unlike {@link #getChildren()} nothing is copied.
+     */
+    public List<Person> getChildrenView() {
+        return new AdjacencyView(store, index, true);
+    }
+
+    /**
+     * Live, read-only view of the parents; unlike {@link #getParents()} nothing is copied.
+     */
+    public List<Person> getParentsView() {
+        return new AdjacencyView(store, index, false);
+    }
+
+    public boolean isAlive() { return store.isAlive(index); }
     public int getAge(int currentYear) {
-        return currentYear - birthYear;
+        return currentYear - getBirthYear();
+    }
+
+    private static Integer boxYear(int year) {
+        return year != PersonStore.NO_YEAR ? year : null;
     }
 
     @Override
@@ -129,16 +198,27 @@ public abstract class Person {
         if (this == o) return true;
         if (!(o instanceof Person)) return false;
         Person person = (Person) o;
-        return Objects.equals(id, person.id);
+        return Objects.equals(getId(), person.getId());
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(id);
+        return Objects.hash(getId());
     }
 
     @Override
     public String toString() {
-        return String.format("%s | %s | %s | b.%d", id, fullName, gender, birthYear);
+        StringBuilder text = new StringBuilder(48);
+        appendTo(text);
+        return text.toString();
+    }
+
+    /**
+     * Appends the same text as {@link #toString()}, writing the name from its encoded form.
+     */
+    public void appendTo(StringBuilder target) {
+        target.append(getId()).append(" | ");
+        store.appendFullName(index, target);
+        target.append(" | ").append(getGender()).append(" | b.").append(getBirthYear());
     }
 }
\ No newline at end of file
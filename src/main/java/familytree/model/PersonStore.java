@@ -0,0 +1,670 @@
+package familytree.model;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Column-oriented storage for every person of one family tree.
+ * <p>
+ * Each person is a dense int index. Scalar attributes live in primitive columns,
+ * parents in a fixed two-slot array and children in a shared CSR-style pool where
+ * every person owns a contiguous segment. Names are kept as word tokens of a shared
+ * {@link NameDictionary}. {@link Person} objects are thin views
+ * holding only the store and their index.
+ * <p>
+ * A store is not thread-safe, but {@link #snapshot()} returns a read-only copy that
+ * any number of threads may read concurrently.
+ */
+public class PersonStore {
+    public static final int NONE = -1;
+    public static final int NO_YEAR = Integer.MIN_VALUE;
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final Gender[] GENDERS = Gender.values();
+
+    private int size;
+    private Person[] views;
+    private String[] ids;
+    // Numeric form of each ID, or IdAllocator.NOT_AN_ID if it is not canonical
+    private long[] numbers;
+    // Names: tokens nameTokens[nameStarts[i] ..) of the dictionary, joined by single spaces;
+    // the name of person i ends where the name of person i + 1 starts
+    private int[] nameStarts;
+    private int[] nameTokens;
+    private int nameTokenCount;
+    private final NameDictionary dictionary;
+    private byte[] genders;
+    private int[] birthYears;
+    private int[] deathYears;
+    private int[] marriageYears;
+    private int[] spouses;
+
+    // Parents: two fixed slots per person (2 * index, 2 * index + 1)
+    private int[] parentSlots;
+
+    // Children: segment [childOffsets[i], childOffsets[i] + childCounts[i]) of childPool
+    private int[] childOffsets;
+    private int[] childCounts;
+    private int[] childCapacities;
+    private int[] childPool;
+    private int poolSize;
+    private int links;
+    private long textLength; // characters of every ID
+
+    // Open-addressing ID lookup keyed by number (by string for non-canonical IDs);
+    // slots hold index + 1, 0 means empty
+    private int[] idTable;
+    private final IdAllocator idAllocator;
+
+    private final ReachabilityIndex reachability;
+    private final FamilyUnits families;
+    private MutationListener[] listeners = new MutationListener[0];
+
+    // Snapshots only: views of the source store, used to create this store's views lazily
+    private final Person[] sourceViews;
+
+    public PersonStore() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public PersonStore(int expectedSize) {
+        int capacity = Math.max(INITIAL_CAPACITY, expectedSize);
+        views = new Person[capacity];
+        ids = new String[capacity];
+        numbers = new long[capacity];
+        nameStarts = new int[capacity];
+        nameTokens = new int[capacity * 2];
+        dictionary = new NameDictionary();
+        genders = new byte[capacity];
+        birthYears = new int[capacity];
+        deathYears = new int[capacity];
+        marriageYears = new int[capacity];
+        spouses = new int[capacity];
+        parentSlots = new int[capacity * 2];
+        childOffsets = new int[capacity];
+        childCounts = new int[capacity];
+        childCapacities = new int[capacity];
+        childPool = new int[capacity];
+        idTable = new int[tableSizeFor(capacity)];
+        idAllocator = new IdAllocator();
+        reachability = new ReachabilityIndex(this, capacity);
+        families = new FamilyUnits();
+        sourceViews = null;
+    }
+
+    private PersonStore(PersonStore source) {
+        size = source.size;
+        views = new Person[size];
+        sourceViews = source.views;
+        ids = Arrays.copyOf(source.ids, size);
+        numbers = Arrays.copyOf(source.numbers, size);
+        nameStarts = Arrays.copyOf(source.nameStarts, size);
+        nameTokens = Arrays.copyOf(source.nameTokens, source.nameTokenCount);
+        nameTokenCount = source.nameTokenCount;
+        dictionary = new NameDictionary(source.dictionary);
+        genders = Arrays.copyOf(source.genders, size);
+        birthYears = Arrays.copyOf(source.birthYears, size);
+        deathYears = Arrays.copyOf(source.deathYears, size);
+        marriageYears = Arrays.copyOf(source.marriageYears, size);
+        spouses = Arrays.copyOf(source.spouses, size);
+        parentSlots = Arrays.copyOf(source.parentSlots, 2 * size);
+        childCounts = Arrays.copyOf(source.childCounts, size);
+        childCapacities = childCounts;
+        childOffsets = new int[size];
+        links = source.links;
+        textLength = source.textLength;
+        childPool = new int[source.countEdges()];
+        for (int i = 0; i < size; i++) {
+            childOffsets[i] = poolSize;
+            System.arraycopy(source.childPool, source.childOffsets[i], childPool, poolSize, childCounts[i]);
+            poolSize += childCounts[i];
+        }
+        idTable = source.idTable.clone();
+        idAllocator = new IdAllocator(source.idAllocator.peek());
+        reachability = new ReachabilityIndex(this, source.reachability, size);
+        families = new FamilyUnits(source.families);
+    }
+
+    /**
+     * Copies the current state into a read-only store that is safe to read from any
+     * number of threads while this one keeps changing. Views of the copy are created on
+     * first access; every mutation of it throws {@link UnsupportedOperationException}.
+     */
+    public PersonStore snapshot() {
+        return new PersonStore(this);
+    }
+
+    public boolean isReadOnly() {
+        return sourceViews != null;
+    }
+
+    private void checkWritable() {
+        if (sourceViews != null) {
+            throw new UnsupportedOperationException("Snapshot stores are read-only");
+        }
+    }
+
+    /**
+     * Like checkWritable, and lets every listener refuse the change about to be made.
+     */
+    private void checkChange() {
+        checkWritable();
+        for (MutationListener listener : listeners) {
+            listener.beforeChange();
+        }
+    }
+
+    /**
+     * Adds a person and returns their view, which is fully constructed before any
+     * listener can see it.
+     *
+     * @param minor whether the view is a {@link Minor} rather than an {@link Adult}
+     */
+    public Person add(String id, String fullName, Gender gender, int birthYear, boolean minor) {
+        Person.validateInput(id, fullName, birthYear);
+        int index = register(id, fullName, gender, birthYear);
+        Person view = minor ? new Minor(this, index) : new Adult(this, index);
+        attach(index, view);
+        return view;
+    }
+
+    /**
+     * Stores a new person's data; {@link #attach} then binds their view.
+     */
+    int register(String id, String fullName, Gender gender, int birthYear) {
+        checkChange();
+        long number = IdAllocator.parse(id);
+        if ((number != IdAllocator.NOT_AN_ID ? indexOf(number) : indexOf(id)) != NONE) {
+            throw new IllegalArgumentException("Duplicate person ID: " + id);
+        }
+        ensureCapacity(size + 1);
+
+        int index = size++;
+        ids[index] = id;
+        numbers[index] = number;
+        encodeName(index, fullName);
+        textLength += id.length();
+        genders[index] = (byte) (gender != null ? gender.ordinal() + 1 : 0);
+        birthYears[index] = birthYear;
+        deathYears[index] = NO_YEAR;
+        marriageYears[index] = NO_YEAR;
+        spouses[index] = NONE;
+        parentSlots[2 * index] = NONE;
+        parentSlots[2 * index + 1] = NONE;
+        childOffsets[index] = poolSize;
+        childCounts[index] = 0;
+        childCapacities[index] = 0;
+
+        insertId(index);
+        if (number != IdAllocator.NOT_AN_ID) {
+            idAllocator.advancePast(number);
+        }
+        reachability.onRegister(index);
+        return index;
+    }
+
+    void attach(int index, Person view) {
+        views[index] = view;
+        for (MutationListener listener : listeners) {
+            listener.personAdded(index);
+        }
+    }
+
+    void setDeathYear(int index, int year) {
+        checkChange();
+        deathYears[index] = year;
+        for (MutationListener listener : listeners) {
+            listener.deathYearChanged(index, year);
+        }
+    }
+
+    void marry(int person1, int person2, int year) {
+        checkChange();
+        spouses[person1] = person2;
+        marriageYears[person1] = year;
+        spouses[person2] = person1;
+        marriageYears[person2] = year;
+        families.married(person1, person2, year);
+        for (MutationListener listener : listeners) {
+            listener.married(person1, person2, year);
+        }
+    }
+
+    void divorce(int person1, int person2, int year) {
+        checkChange();
+        spouses[person1] = NONE;
+        marriageYears[person1] = NO_YEAR;
+        spouses[person2] = NONE;
+        marriageYears[person2] = NO_YEAR;
+        families.divorced(person1, person2, year);
+        for (MutationListener listener : listeners) {
+            listener.divorced(person1, person2, year);
+        }
+    }
+
+    /**
+     * Links parent and child without any validation; callers check invariants first.
+     */
+    void link(int parent, int child) {
+        checkChange();
+        linkUnordered(parent, child);
+        reachability.onLink(parent, child);
+        notifyLinked(parent, child);
+    }
+
+    void notifyLinked(int parent, int child) {
+        for (MutationListener listener : listeners) {
+            listener.linked(parent, child);
+        }
+    }
+
+    public void addMutationListener(MutationListener listener) {
+        listeners = Arrays.copyOf(listeners, listeners.length + 1);
+        listeners[listeners.length - 1] = listener;
+    }
+
+    public void removeMutationListener(MutationListener listener) {
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i] == listener) {
+                MutationListener[] remaining = new MutationListener[listeners.length - 1];
+                System.arraycopy(listeners, 0, remaining, 0, i);
+                System.arraycopy(listeners, i + 1, remaining, i, listeners.length - i - 1);
+                listeners = remaining;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Links without touching the reachability index; batch callers re-assign the order.
+     */
+    void linkUnordered(int parent, int child) {
+        checkWritable();
+        appendChild(parent, child);
+        links++;
+        int slot = 2 * child;
+        if (parentSlots[slot] == NONE) {
+            parentSlots[slot] = parent;
+        } else {
+            parentSlots[slot + 1] = parent;
+        }
+        families.linked(child, parentSlots[slot], parentSlots[slot + 1]);
+    }
+
+    /**
+     * Validates and links a batch of parent -> child edges with one linear
+     * topological-sort pass instead of a cycle check per edge. Links that already
+     * exist or repeat within the batch are ignored. Every self-link, two-parent
+     * violation and cycle is appended to violations; nothing is linked unless
+     * violations is empty on return.
+     *
+     * @return the number of new links made
+     */
+    public int linkBatch(int[] parents, int[] children, int count, List<String> violations) {
+        return linkBatch(parents, children, count, List.of(), null, violations);
+    }
+
+    /**
+     * Like {@link #linkBatch(int[], int[], int, List)} for a batch that also adds people:
+     * indexes from {@link #size()} on stand for the people of pendingIds, in order, who
+     * are validated as having no links yet. Only if nothing is violated is addPending
+     * run, which must add exactly those people in that order, and the links made.
+     *
+     * @return the number of new links made
+     */
+    public int linkBatch(int[] parents, int[] children, int count, List<String> pendingIds,
+                         Runnable addPending, List<String> violations) {
+        checkChange();
+        return new BatchLinker(this, pendingIds).link(parents, children, count, addPending, violations);
+    }
+
+    /**
+     * Installs all relationships at once, e.g. when loading a snapshot. The store must not
+     * have any links yet. Children of person i are children[childOffsets[i] ..
+     * childOffsets[i + 1]) and its parents are parentSlots[2i], parentSlots[2i + 1]
+     * ({@link #NONE} when absent).
+     *
+     * @throws IllegalArgumentException if the arrays are inconsistent or contain a cycle
+     */
+    public void restoreLinks(int[] parentSlots, int[] childOffsets, int[] children) {
+        checkWritable();
+        if (poolSize != 0 || childOffsets.length != size + 1 || parentSlots.length < 2 * size
+                || childOffsets[size] != children.length) {
+            throw new IllegalArgumentException("Links do not match the store");
+        }
+        int[] parentsSeen = new int[size];
+        for (int i = 0; i < size; i++) {
+            int start = childOffsets[i];
+            int end = childOffsets[i + 1];
+            if (start > end) {
+                throw new IllegalArgumentException("Corrupt child offsets at " + ids[i]);
+            }
+            for (int k = start; k < end; k++) {
+                int child = children[k];
+                if (child < 0 || child >= size || ++parentsSeen[child] > 2
+                        || (parentSlots[2 * child] != i && parentSlots[2 * child + 1] != i)) {
+                    throw new IllegalArgumentException("Inconsistent relationship at " + ids[i]);
+                }
+            }
+            childCounts[i] = end - start;
+            childCapacities[i] = end - start;
+        }
+        for (int i = 0; i < size; i++) {
+            int first = parentSlots[2 * i];
+            int second = parentSlots[2 * i + 1];
+            int expected = (first != NONE ? 1 : 0) + (second != NONE ? 1 : 0);
+            if (expected != parentsSeen[i] || (first == NONE && second != NONE)) {
+                throw new IllegalArgumentException("Inconsistent parents at " + ids[i]);
+            }
+        }
+
+        System.arraycopy(childOffsets, 0, this.childOffsets, 0, size);
+        System.arraycopy(parentSlots, 0, this.parentSlots, 0, 2 * size);
+        childPool = children.length > 0 ? children : new int[INITIAL_CAPACITY];
+        poolSize = children.length;
+        links = children.length;
+        // Each child joins its family in the order its first parent lists it
+        for (int i = 0; i < size; i++) {
+            for (int k = childOffsets[i]; k < childOffsets[i + 1]; k++) {
+                int child = children[k];
+                if (parentSlots[2 * child] == i) {
+                    families.linked(child, i, parentSlots[2 * child + 1]);
+                }
+            }
+        }
+        if (!reachability.rebuild()) {
+            throw new IllegalArgumentException("Relationships contain a cycle");
+        }
+    }
+
+    /**
+     * Repacks the child pool into exact CSR order, dropping the slack left by growth.
+     */
+    public void compact() {
+        checkWritable();
+        int[] packed = new int[Math.max(INITIAL_CAPACITY, countEdges())];
+        int offset = 0;
+        for (int i = 0; i < size; i++) {
+            int count = childCounts[i];
+            System.arraycopy(childPool, childOffsets[i], packed, offset, count);
+            childOffsets[i] = offset;
+            childCapacities[i] = count;
+            offset += count;
+        }
+        childPool = packed;
+        poolSize = offset;
+    }
+
+    // Read accessors
+    public int size() { return size; }
+    public Person person(int index) {
+        Person view = views[index];
+        if (view == null) {
+            // Snapshot view; racing readers may each create one, which is harmless as
+            // views are immutable and compare by ID
+            view = sourceViews[index] instanceof Minor ? new Minor(this, index) : new Adult(this, index);
+            views[index] = view;
+        }
+        return view;
+    }
+    public String id(int index) { return ids[index]; }
+    public long number(int index) { return numbers[index]; }
+    public String fullName(int index) {
+        StringBuilder name = new StringBuilder(16);
+        appendFullName(index, name);
+        return name.toString();
+    }
+
+    /**
+     * Appends the full name straight from its dictionary tokens.
+     */
+    public void appendFullName(int index, StringBuilder target) {
+        int end = nameEnd(index);
+        for (int i = nameStarts[index]; i < end; i++) {
+            if (i > nameStarts[index]) target.append(' ');
+            dictionary.appendTo(nameTokens[i], target);
+        }
+    }
+
+    public int nameTokenCount(int index) {
+        return nameEnd(index) - nameStarts[index];
+    }
+
+    /**
+     * Dictionary token of the word at position of the full name; words are separated by
+     * single spaces.
+     */
+    public int nameToken(int index, int position) {
+        return nameTokens[nameStarts[index] + position];
+    }
+
+    public NameDictionary nameDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Length of the full name in UTF-8 bytes.
+     */
+    public int fullNameUtf8Length(int index) {
+        int end = nameEnd(index);
+        int length = Math.max(0, end - nameStarts[index] - 1);
+        for (int i = nameStarts[index]; i < end; i++) {
+            length += dictionary.utf8Length(nameTokens[i]);
+        }
+        return length;
+    }
+
+    private int nameEnd(int index) {
+        return index + 1 < size ? nameStarts[index + 1] : nameTokenCount;
+    }
+
+    /**
+     * Splits the name at every space, keeping empty words, so joining the tokens with
+     * single spaces gives back exactly the original.
+     */
+    private void encodeName(int index, String fullName) {
+        nameStarts[index] = nameTokenCount;
+        int start = 0;
+        while (true) {
+            int space = fullName.indexOf(' ', start);
+            int end = space < 0 ? fullName.length() : space;
+            if (nameTokenCount == nameTokens.length) {
+                nameTokens = Arrays.copyOf(nameTokens, nameTokenCount * 2);
+            }
+            nameTokens[nameTokenCount++] = dictionary.intern(fullName, start, end);
+            if (space < 0) return;
+            start = space + 1;
+        }
+    }
+    public Gender gender(int index) { return genders[index] != 0 ? GENDERS[genders[index] - 1] : null; }
+    public int birthYear(int index) { return birthYears[index]; }
+    public int deathYear(int index) { return deathYears[index]; }
+    public int marriageYear(int index) { return marriageYears[index]; }
+    public int spouse(int index) { return spouses[index]; }
+    public boolean isAlive(int index) { return deathYears[index] == NO_YEAR; }
+
+    /**
+     * Number of parent-child links made so far.
+     */
+    public int linkCount() { return links; }
+
+    public int parentCount(int index) {
+        if (parentSlots[2 * index] == NONE) return 0;
+        return parentSlots[2 * index + 1] == NONE ? 1 : 2;
+    }
+
+    public int parent(int index, int slot) {
+        return parentSlots[2 * index + slot];
+    }
+
+    public int childCount(int index) {
+        return childCounts[index];
+    }
+
+    public int child(int index, int position) {
+        return childPool[childOffsets[index] + position];
+    }
+
+    /**
+     * True if ancestor is a parent, grandparent, ... of descendant.
+     */
+    public boolean isAncestor(int ancestor, int descendant) {
+        return reachability.isAncestor(ancestor, descendant);
+    }
+
+    public ReachabilityIndex reachability() {
+        return reachability;
+    }
+
+    public FamilyUnits families() {
+        return families;
+    }
+
+    /**
+     * Rough heap footprint in bytes: every column at its current capacity, the child
+     * pool, the ID table, the family units, the ID strings and the name dictionary.
+     * Object headers are approximated and indexes built on top of the store are not
+     * included, so this is meant for budgeting rather than exact accounting.
+     */
+    public long estimateBytes() {
+        long perSlot = 2 * 4 + 8 + 4 + 1 + 4 * 4 + 2 * 4 + 3 * 4 + 5 * 4; // columns, parents, CSR, reachability
+        long perPerson = 16 + 40; // view and ID string object
+        return views.length * perSlot + size * perPerson + textLength + 4L * nameTokens.length
+                + dictionary.estimateBytes() + 4L * childPool.length + 4L * idTable.length
+                + families.estimateBytes();
+    }
+
+    public boolean hasChild(int parent, int child) {
+        int offset = childOffsets[parent];
+        int end = offset + childCounts[parent];
+        for (int i = offset; i < end; i++) {
+            if (childPool[i] == child) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Source of the numbers behind this store's IDs. It always stays ahead of every
+     * canonical ID registered, whoever assigned it.
+     */
+    public IdAllocator getIdAllocator() {
+        return idAllocator;
+    }
+
+    public int indexOf(String id) {
+        if (id == null) return NONE;
+        long number = IdAllocator.parse(id);
+        if (number != IdAllocator.NOT_AN_ID) return indexOf(number);
+
+        int mask = idTable.length - 1;
+        int slot = mix(id.hashCode()) & mask;
+        while (true) {
+            int entry = idTable[slot];
+            if (entry == 0) return NONE;
+            if (numbers[entry - 1] == IdAllocator.NOT_AN_ID && ids[entry - 1].equals(id)) return entry - 1;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Looks a person up by the number of their canonical ID, without touching strings.
+     */
+    public int indexOf(long number) {
+        if (number < 0) return NONE;
+        int mask = idTable.length - 1;
+        int slot = mix(Long.hashCode(number)) & mask;
+        while (true) {
+            int entry = idTable[slot];
+            if (entry == 0) return NONE;
+            if (numbers[entry - 1] == number) return entry - 1;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private int countEdges() {
+        int edges = 0;
+        for (int i = 0; i < size; i++) {
+            edges += childCounts[i];
+        }
+        return edges;
+    }
+
+    private void appendChild(int parent, int child) {
+        int count = childCounts[parent];
+        if (count == childCapacities[parent]) {
+            growChildSegment(parent);
+        }
+        childPool[childOffsets[parent] + count] = child;
+        childCounts[parent] = count + 1;
+    }
+
+    private void growChildSegment(int parent) {
+        int offset = childOffsets[parent];
+        int count = childCounts[parent];
+        int newCapacity = Math.max(2, count * 2);
+
+        if (offset + childCapacities[parent] == poolSize) {
+            // Segment is the tail of the pool: extend in place
+            ensurePoolCapacity(offset + newCapacity);
+            poolSize = offset + newCapacity;
+        } else {
+            // Relocate the segment to the end of the pool
+            ensurePoolCapacity(poolSize + newCapacity);
+            System.arraycopy(childPool, offset, childPool, poolSize, count);
+            childOffsets[parent] = poolSize;
+            poolSize += newCapacity;
+        }
+        childCapacities[parent] = newCapacity;
+    }
+
+    private void ensurePoolCapacity(int required) {
+        if (required > childPool.length) {
+            childPool = Arrays.copyOf(childPool, Math.max(required, childPool.length * 2));
+        }
+    }
+
+    private void ensureCapacity(int required) {
+        int capacity = views.length;
+        if (required <= capacity) return;
+
+        int newCapacity = Math.max(required, capacity * 2);
+        views = Arrays.copyOf(views, newCapacity);
+        ids = Arrays.copyOf(ids, newCapacity);
+        numbers = Arrays.copyOf(numbers, newCapacity);
+        nameStarts = Arrays.copyOf(nameStarts, newCapacity);
+        genders = Arrays.copyOf(genders, newCapacity);
+        birthYears = Arrays.copyOf(birthYears, newCapacity);
+        deathYears = Arrays.copyOf(deathYears, newCapacity);
+        marriageYears = Arrays.copyOf(marriageYears, newCapacity);
+        spouses = Arrays.copyOf(spouses, newCapacity);
+        parentSlots = Arrays.copyOf(parentSlots, newCapacity * 2);
+        childOffsets = Arrays.copyOf(childOffsets, newCapacity);
+        childCounts = Arrays.copyOf(childCounts, newCapacity);
+        childCapacities = Arrays.copyOf(childCapacities, newCapacity);
+        reachability.grow(newCapacity);
+
+        idTable = new int[tableSizeFor(newCapacity)];
+        for (int i = 0; i < size; i++) {
+            insertId(i);
+        }
+    }
+
+    private void insertId(int index) {
+        int mask = idTable.length - 1;
+        long number = numbers[index];
+        int hash = number != IdAllocator.NOT_AN_ID ? Long.hashCode(number) : ids[index].hashCode();
+        int slot = mix(hash) & mask;
+        while (idTable[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        idTable[slot] = index + 1;
+    }
+
+    private static int tableSizeFor(int capacity) {
+        return Integer.highestOneBit(capacity * 2 - 1) << 1;
+    }
+
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
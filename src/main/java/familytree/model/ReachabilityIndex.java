@@ -0,0 +1,243 @@
+package familytree.model;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Ancestor reachability over a {@link PersonStore}, kept as a dynamic topological order
+ * (Pearce-Kelly). Every ancestor has a smaller order than its descendants, so most
+ * "is X an ancestor of Y" questions are answered by one comparison, and inserts that
+ * already respect the order (parents added before their children) cost O(1).
+ * Positive answers walk upward from Y, pruned to the order window between X and Y.
+ */
+public class ReachabilityIndex {
+    private final PersonStore store;
+    private int[] order;
+
+    // Scratch state reused by every search. A read-only snapshot is searched by many
+    // threads at once, so it keeps a pool that grows to the number of concurrent searches
+    // and is dropped with the snapshot.
+    private Search search;
+    private final ConcurrentLinkedQueue<Search> idleSearches;
+    private int[] forward;
+    private int[] backward;
+
+    ReachabilityIndex(PersonStore store, int capacity) {
+        this.store = store;
+        this.order = new int[capacity];
+        this.search = new Search(capacity);
+        this.idleSearches = null;
+        this.forward = new int[capacity];
+        this.backward = new int[capacity];
+    }
+
+    /**
+     * Read-only copy of source for a snapshot of its store.
+     */
+    ReachabilityIndex(PersonStore store, ReachabilityIndex source, int size) {
+        this.store = store;
+        this.order = Arrays.copyOf(source.order, size);
+        this.idleSearches = new ConcurrentLinkedQueue<>();
+    }
+
+    void grow(int capacity) {
+        order = Arrays.copyOf(order, capacity);
+        search = new Search(capacity);
+        forward = new int[capacity];
+        backward = new int[capacity];
+    }
+
+    void onRegister(int index) {
+        order[index] = index;
+    }
+
+    public int order(int index) {
+        return order[index];
+    }
+
+    public boolean isAncestor(int ancestor, int descendant) {
+        if (ancestor == descendant || order[ancestor] >= order[descendant]) {
+            return false;
+        }
+        Search search = acquireSearch();
+        try {
+            return search(search, ancestor, descendant);
+        } finally {
+            releaseSearch(search);
+        }
+    }
+
+    private boolean search(Search search, int ancestor, int descendant) {
+        search.visited = 0;
+        int lowerBound = order[ancestor];
+        int[] stamps = search.stamps;
+        int[] stack = search.stack;
+        int stamp = search.nextStamp();
+        int top = 0;
+        stack[top++] = descendant;
+        stamps[descendant] = stamp;
+        while (top > 0) {
+            int node = stack[--top];
+            search.visited++;
+            int parentCount = store.parentCount(node);
+            for (int slot = 0; slot < parentCount; slot++) {
+                int parent = store.parent(node, slot);
+                if (parent == ancestor) return true;
+                if (stamps[parent] != stamp && order[parent] > lowerBound) {
+                    stamps[parent] = stamp;
+                    stack[top++] = parent;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * People {@code isAncestor(ancestor, descendant)} walks through; 0 when the order
+     * comparison alone answers it. A diagnostic: it repeats the search, so isAncestor
+     * itself stays free of shared writes.
+     */
+    public int searchVisits(int ancestor, int descendant) {
+        if (ancestor == descendant || order[ancestor] >= order[descendant]) {
+            return 0;
+        }
+        Search search = acquireSearch();
+        try {
+            search(search, ancestor, descendant);
+            return search.visited;
+        } finally {
+            releaseSearch(search);
+        }
+    }
+
+    private Search acquireSearch() {
+        if (idleSearches == null) return search;
+        Search idle = idleSearches.poll();
+        return idle != null ? idle : new Search(order.length);
+    }
+
+    private void releaseSearch(Search used) {
+        if (idleSearches != null) idleSearches.offer(used);
+    }
+
+    /**
+     * Restores the topological order after parent -> child has been linked.
+     * The caller must already have ruled out a cycle.
+     */
+    void onLink(int parent, int child) {
+        int lowerBound = order[child];
+        int upperBound = order[parent];
+        if (upperBound < lowerBound) return;
+
+        // Descendants of child that sit at or before parent in the order
+        int forwardCount = collect(child, upperBound, true, forward);
+        // Ancestors of parent that sit after child in the order
+        int backwardCount = collect(parent, lowerBound, false, backward);
+
+        sortByOrder(forward, forwardCount);
+        sortByOrder(backward, backwardCount);
+
+        // Hand the freed order slots back out: ancestors first, then descendants
+        int[] slots = new int[forwardCount + backwardCount];
+        for (int i = 0; i < backwardCount; i++) slots[i] = order[backward[i]];
+        for (int i = 0; i < forwardCount; i++) slots[backwardCount + i] = order[forward[i]];
+        Arrays.sort(slots);
+        for (int i = 0; i < backwardCount; i++) order[backward[i]] = slots[i];
+        for (int i = 0; i < forwardCount; i++) order[forward[i]] = slots[backwardCount + i];
+    }
+
+    /**
+     * Replaces the whole order with a complete topological order of the store.
+     */
+    void assign(int[] topologicalOrder, int size) {
+        for (int position = 0; position < size; position++) {
+            order[topologicalOrder[position]] = position;
+        }
+    }
+
+    /**
+     * Rebuilds the order from scratch with Kahn's algorithm.
+     *
+     * @return false if the graph contains a cycle
+     */
+    boolean rebuild() {
+        int size = store.size();
+        int[] pending = new int[size];
+        int[] queue = new int[size];
+        int tail = 0;
+        for (int i = 0; i < size; i++) {
+            pending[i] = store.parentCount(i);
+            if (pending[i] == 0) queue[tail++] = i;
+        }
+        for (int head = 0; head < tail; head++) {
+            int node = queue[head];
+            int childCount = store.childCount(node);
+            for (int k = 0; k < childCount; k++) {
+                int child = store.child(node, k);
+                if (--pending[child] == 0) queue[tail++] = child;
+            }
+        }
+        if (tail < size) return false;
+        assign(queue, size);
+        return true;
+    }
+
+    private int collect(int start, int bound, boolean downward, int[] out) {
+        int[] stamps = search.stamps;
+        int[] stack = search.stack;
+        int stamp = search.nextStamp();
+        int count = 0;
+        int top = 0;
+        stack[top++] = start;
+        stamps[start] = stamp;
+        while (top > 0) {
+            int node = stack[--top];
+            out[count++] = node;
+            int degree = downward ? store.childCount(node) : store.parentCount(node);
+            for (int k = 0; k < degree; k++) {
+                int next = downward ? store.child(node, k) : store.parent(node, k);
+                boolean inWindow = downward ? order[next] <= bound : order[next] > bound;
+                if (stamps[next] != stamp && inWindow) {
+                    stamps[next] = stamp;
+                    stack[top++] = next;
+                }
+            }
+        }
+        return count;
+    }
+
+    private void sortByOrder(int[] nodes, int count) {
+        long[] keyed = new long[count];
+        for (int i = 0; i < count; i++) {
+            keyed[i] = ((long) order[nodes[i]] << 32) | nodes[i];
+        }
+        Arrays.sort(keyed);
+        for (int i = 0; i < count; i++) {
+            nodes[i] = (int) keyed[i];
+        }
+    }
+
+    /**
+     * Visited marks and DFS stack for one search; a node is visited when
+     * stamps[node] == stamp.
+     */
+    private static final class Search {
+        final int[] stamps;
+        final int[] stack;
+        int stamp;
+        int visited;
+
+        Search(int capacity) {
+            stamps = new int[capacity];
+            stack = new int[capacity];
+        }
+
+        int nextStamp() {
+            if (++stamp == 0) {
+                Arrays.fill(stamps, 0);
+                stamp = 1;
+            }
+            return stamp;
+        }
+    }
+}
@@ -1,35 +1,98 @@
 package familytree.pattern;
 
 import familytree.model.Person;
+import familytree.model.PersonStore;
+import java.util.BitSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.ArrayList;
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.NoSuchElementException;
 
 public class BFSTraversal implements TraversalStrategy {
+    private final boolean unique;
+
+    public BFSTraversal() {
+        this(false);
+    }
+
+    /**
+     * @param unique report each person once, at their minimum generation distance
+     */
+    public BFSTraversal(boolean unique) {
+        this.unique = unique;
+    }
+
+    public boolean isUnique() {
+        return unique;
+    }
+
     @Override
     public List<Person> traverse(Person person, int maxDepth) {
         List<Person> result = new ArrayList<>();
-        Queue<Person> queue = new LinkedList<>();
-        Queue<Integer> depthQueue = new LinkedList<>();
+        iterator(person, maxDepth).forEachRemaining(result::add);
+        return result;
+    }
 
-        queue.offer(person);
-        depthQueue.offer(0);
+    @Override
+    public Iterator<Person> iterator(Person person, int maxDepth) {
+        return new BFSIterator(person, maxDepth, unique ? new BitSet() : null);
+    }
 
-        while (!queue.isEmpty()) {
-            Person current = queue.poll();
-            int depth = depthQueue.poll();
+    /**
+     * Marks the person and every descendant whose minimum distance is at most maxDepth.
+     */
+    static BitSet withinDepth(Person person, int maxDepth) {
+        BitSet seen = new BitSet();
+        new BFSIterator(person, maxDepth, seen).forEachRemaining(p -> { });
+        return seen;
+    }
 
-            if (depth <= maxDepth) {
-                result.add(current);
+    private static class BFSIterator implements Iterator<Person> {
+        private final PersonStore store;
+        private final int maxDepth;
+        private final BitSet seen;
+        private final IntQueue queue = new IntQueue();
 
-                for (Person child : current.getChildren()) {
-                    queue.offer(child);
-                    depthQueue.offer(depth + 1);
+        BFSIterator(Person person, int maxDepth, BitSet seen) {
+            this.store = person.getStore();
+            this.maxDepth = maxDepth;
+            this.seen = seen;
+            if (maxDepth >= 0) {
+                queue.offer(person.getIndex(), 0);
+                if (seen != null) {
+                    seen.set(person.getIndex());
                 }
             }
         }
 
-        return result;
+        @Override
+        public boolean hasNext() {
+            return !queue.isEmpty();
+        }
+
+        @Override
+        public Person next() {
+            if (queue.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            int current = queue.peekNode();
+            int depth = queue.peekDepth();
+            queue.poll();
+
+            if (depth < maxDepth) {
+                int childCount = store.childCount(current);
+                for (int i = 0; i < childCount; i++) {
+                    int child = store.child(current, i);
+                    if (seen == null) {
+                        queue.offer(child, depth + 1);
+                    } else if (!seen.get(child)) {
+                        // Marked on discovery, so the first (shortest) distance wins
+                        seen.set(child);
+                        queue.offer(child, depth + 1);
+                    }
+                }
+            }
+            return store.person(current);
+        }
     }
 }
\ No newline at end of file
@@ -1,24 +1,120 @@
 package familytree.pattern;
 
 import familytree.model.Person;
+import familytree.model.PersonStore;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.NoSuchElementException;
 
 public class DFSTraversal implements TraversalStrategy {
+    private final boolean unique;
+
+    public DFSTraversal() {
+        this(false);
+    }
+
+    /**
+     * @param unique report each person once even when several paths lead to them
+     */
+    public DFSTraversal(boolean unique) {
+        this.unique = unique;
+    }
+
+    public boolean isUnique() {
+        return unique;
+    }
+
     @Override
     public List<Person> traverse(Person person, int maxDepth) {
         List<Person> result = new ArrayList<>();
-        traverseDFS(person, result, 0, maxDepth);
+        iterator(person, maxDepth).forEachRemaining(result::add);
         return result;
     }
 
-    private void traverseDFS(Person person, List<Person> result, int currentDepth, int maxDepth) {
-        if (currentDepth > maxDepth) return;
+    @Override
+    public Iterator<Person> iterator(Person person, int maxDepth) {
+        return new DFSIterator(person, maxDepth, unique);
+    }
 
-        result.add(person);
+    /**
+     * Pre-order walk driven by an explicit stack of (node, next child position) frames;
+     * the stack height is the depth of the frame's node.
+     * <p>
+     * In unique mode nobody is emitted twice. When the depth is limited, a person reached
+     * first along a long path may still be within range along a shorter one, so a
+     * breadth-first pass first marks everyone whose minimum distance is in range and the
+     * walk is then restricted to that set.
+     */
+    private static class DFSIterator implements Iterator<Person> {
+        private final PersonStore store;
+        private final int maxDepth;
+        private final BitSet emitted;
+        private final BitSet allowed;
+        private int[] nodes = new int[16];
+        private int[] positions = new int[16];
+        private int top = -1;
+        private int pending = PersonStore.NONE;
+
+        DFSIterator(Person person, int maxDepth, boolean unique) {
+            this.store = person.getStore();
+            this.maxDepth = maxDepth;
+            this.emitted = unique ? new BitSet() : null;
+            boolean limited = maxDepth < store.size() - 1;
+            this.allowed = unique && limited ? BFSTraversal.withinDepth(person, maxDepth) : null;
+            if (maxDepth >= 0) {
+                pending = person.getIndex();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (pending == PersonStore.NONE && top >= 0) {
+                int parent = nodes[top];
+                if (positions[top] == store.childCount(parent)) {
+                    top--;
+                    continue;
+                }
+                int child = store.child(parent, positions[top]++);
+                if (accepts(child)) {
+                    pending = child;
+                }
+            }
+            return pending != PersonStore.NONE;
+        }
+
+        @Override
+        public Person next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            int node = pending;
+            pending = PersonStore.NONE;
+            if (emitted != null) {
+                emitted.set(node);
+                // Children are filtered by accepts(); the allowed set already bounds depth
+                push(node);
+            } else if (top + 1 < maxDepth) {
+                // Only expand nodes whose children are still within maxDepth
+                push(node);
+            }
+            return store.person(node);
+        }
+
+        private boolean accepts(int node) {
+            if (emitted == null) return true;
+            return !emitted.get(node) && (allowed == null || allowed.get(node));
+        }
 
-        for (Person child : person.getChildren()) {
-            traverseDFS(child, result, currentDepth + 1, maxDepth);
+        private void push(int node) {
+            if (++top == nodes.length) {
+                nodes = Arrays.copyOf(nodes, top * 2);
+                positions = Arrays.copyOf(positions, top * 2);
+            }
+            nodes[top] = node;
+            positions[top] = 0;
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,93 @@
+package familytree.pattern;
+
+import familytree.metrics.Metrics;
+import familytree.metrics.TraversalEvent;
+import familytree.model.Person;
+import familytree.model.PersonStore;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Decorator that times {@link #traverse} calls into the {@code traverse.<Strategy>}
+ * histogram and emits a {@link TraversalEvent}. Lazy iteration is passed through
+ * untouched, as its cost lands wherever the caller consumes it.
+ * <p>
+ * When neither metrics nor the event are enabled the wrapper adds one volatile read
+ * and one flag check. The shape of the walk (distinct people, depth reached, fan-out)
+ * is only measured for events that are actually recorded.
+ */
+public class InstrumentedTraversal implements TraversalStrategy {
+    private final TraversalStrategy delegate;
+    private final String histogram;
+
+    private InstrumentedTraversal(TraversalStrategy delegate) {
+        this.delegate = delegate;
+        this.histogram = "traverse." + delegate.getClass().getSimpleName();
+    }
+
+    public static TraversalStrategy wrap(TraversalStrategy strategy) {
+        return strategy instanceof InstrumentedTraversal ? strategy : new InstrumentedTraversal(strategy);
+    }
+
+    public TraversalStrategy getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public List<Person> traverse(Person person, int maxDepth) {
+        long start = Metrics.start();
+        TraversalEvent event = new TraversalEvent();
+        if (start == 0L && !event.isEnabled()) {
+            return delegate.traverse(person, maxDepth);
+        }
+
+        event.begin();
+        List<Person> result = delegate.traverse(person, maxDepth);
+        event.end();
+        Metrics.record(histogram, start);
+        if (event.shouldCommit()) {
+            event.strategy = delegate.getClass().getSimpleName();
+            event.personId = person.getId();
+            event.maxDepth = maxDepth;
+            event.resultSize = result.size();
+            measureShape(person, maxDepth, event);
+            event.commit();
+        }
+        return result;
+    }
+
+    @Override
+    public Iterator<Person> iterator(Person person, int maxDepth) {
+        return delegate.iterator(person, maxDepth);
+    }
+
+    /**
+     * Breadth-first pass over the distinct people within maxDepth of person.
+     */
+    private static void measureShape(Person person, int maxDepth, TraversalEvent event) {
+        if (maxDepth < 0) return;
+        PersonStore store = person.getStore();
+        BitSet seen = new BitSet();
+        IntQueue queue = new IntQueue();
+        seen.set(person.getIndex());
+        queue.offer(person.getIndex(), 0);
+        while (!queue.isEmpty()) {
+            int node = queue.peekNode();
+            int depth = queue.peekDepth();
+            queue.poll();
+            event.nodesVisited++;
+            event.depthReached = Math.max(event.depthReached, depth);
+            int childCount = store.childCount(node);
+            event.maxFanOut = Math.max(event.maxFanOut, childCount);
+            if (depth >= maxDepth) continue;
+            for (int k = 0; k < childCount; k++) {
+                int child = store.child(node, k);
+                if (!seen.get(child)) {
+                    seen.set(child);
+                    queue.offer(child, depth + 1);
+                }
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,55 @@
+package familytree.pattern;
+
+import java.util.Arrays;
+
+/**
+ * Growable ring buffer of (node, depth) int pairs, so breadth-first walks avoid boxing.
+ */
+public class IntQueue {
+    private int[] nodes = new int[16];
+    private int[] depths = new int[16];
+    private int head;
+    private int size;
+
+    public void offer(int node, int depth) {
+        if (size == nodes.length) {
+            grow();
+        }
+        int slot = (head + size) & (nodes.length - 1);
+        nodes[slot] = node;
+        depths[slot] = depth;
+        size++;
+    }
+
+    /** Node at the head; read {@link #peekDepth()} before {@link #poll()}. */
+    public int peekNode() {
+        return nodes[head];
+    }
+
+    public int peekDepth() {
+        return depths[head];
+    }
+
+    public void poll() {
+        head = (head + 1) & (nodes.length - 1);
+        size--;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private void grow() {
+        int capacity = nodes.length;
+        int[] newNodes = new int[capacity * 2];
+        int[] newDepths = new int[capacity * 2];
+        int firstPart = capacity - head;
+        System.arraycopy(nodes, head, newNodes, 0, firstPart);
+        System.arraycopy(nodes, 0, newNodes, firstPart, head);
+        System.arraycopy(depths, head, newDepths, 0, firstPart);
+        System.arraycopy(depths, 0, newDepths, firstPart, head);
+        nodes = newNodes;
+        depths = newDepths;
+        head = 0;
+    }
+}
\ No newline at end of file
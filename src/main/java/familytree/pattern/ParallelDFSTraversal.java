@@ -0,0 +1,211 @@
+package familytree.pattern;
+
+import familytree.model.Person;
+import familytree.model.PersonStore;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Depth-first descendant traversal split across a {@link ForkJoinPool}.
+ * <p>
+ * Each task walks its part of the tree sequentially until it has emitted
+ * {@code sequentialCutoff} people. From then on, the first child it meets that has
+ * children of its own is forked for idle workers to steal together with all its later
+ * siblings, as one task, so leaves and small sibling subtrees never become tasks of
+ * their own and every task emits at least the cutoff before splitting again. In ordered
+ * mode the forked results are spliced back so the output equals
+ * {@link DFSTraversal}; unordered mode skips the bookkeeping and returns task results
+ * in completion order.
+ */
+public class ParallelDFSTraversal implements TraversalStrategy {
+    public static final int DEFAULT_SEQUENTIAL_CUTOFF = 1024;
+
+    private final ForkJoinPool pool;
+    private final int sequentialCutoff;
+    private final boolean ordered;
+
+    public ParallelDFSTraversal() {
+        this(DEFAULT_SEQUENTIAL_CUTOFF, true);
+    }
+
+    public ParallelDFSTraversal(int sequentialCutoff, boolean ordered) {
+        this(ForkJoinPool.commonPool(), sequentialCutoff, ordered);
+    }
+
+    public ParallelDFSTraversal(ForkJoinPool pool, int sequentialCutoff, boolean ordered) {
+        if (sequentialCutoff < 1) {
+            throw new IllegalArgumentException("Sequential cutoff must be at least 1");
+        }
+        this.pool = pool;
+        this.sequentialCutoff = sequentialCutoff;
+        this.ordered = ordered;
+    }
+
+    public int getSequentialCutoff() { return sequentialCutoff; }
+    public boolean isOrdered() { return ordered; }
+
+    @Override
+    public List<Person> traverse(Person person, int maxDepth) {
+        if (maxDepth < 0) {
+            return new ArrayList<>();
+        }
+        PersonStore store = person.getStore();
+        Queue<SubtreeTask> completed = ordered ? null : new ConcurrentLinkedQueue<>();
+        SubtreeTask root = new SubtreeTask(null, store, person.getIndex(), -1, 0, maxDepth, completed);
+        pool.invoke(root);
+
+        List<Person> result = new ArrayList<>();
+        if (ordered) {
+            collectInOrder(root, store, result);
+        } else {
+            for (SubtreeTask task : completed) {
+                task.appendTo(store, result, 0, task.count);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Replays the task tree in pre-order without recursion: deep chains produce
+     * one nested task per cutoff-sized slice.
+     */
+    private static void collectInOrder(SubtreeTask root, PersonStore store, List<Person> result) {
+        Deque<int[]> cursors = new ArrayDeque<>();
+        Deque<SubtreeTask> tasks = new ArrayDeque<>();
+        tasks.push(root);
+        cursors.push(new int[2]); // {buffer position, next splice}
+
+        while (!tasks.isEmpty()) {
+            SubtreeTask task = tasks.peek();
+            int[] cursor = cursors.peek();
+            if (cursor[1] < task.forked.size()) {
+                int splice = task.splicePositions[cursor[1]];
+                task.appendTo(store, result, cursor[0], splice);
+                cursor[0] = splice;
+                tasks.push(task.forked.get(cursor[1]++));
+                cursors.push(new int[2]);
+            } else {
+                task.appendTo(store, result, cursor[0], task.count);
+                tasks.pop();
+                cursors.pop();
+            }
+        }
+    }
+
+    /**
+     * Walks rootNode itself when firstChild is negative, or else the children of rootNode
+     * from position firstChild on; rootDepth is the depth of rootNode either way.
+     */
+    private final class SubtreeTask extends CountedCompleter<Void> {
+        private static final long serialVersionUID = 1L;
+
+        private final PersonStore store;
+        private final int rootNode;
+        private final int firstChild;
+        private final int rootDepth;
+        private final int maxDepth;
+        private final Queue<SubtreeTask> completed;
+
+        private int[] buffer = new int[16];
+        private int count;
+        private List<SubtreeTask> forked = Collections.emptyList();
+        private int[] splicePositions;
+
+        SubtreeTask(SubtreeTask parent, PersonStore store, int rootNode, int firstChild, int rootDepth,
+                    int maxDepth, Queue<SubtreeTask> completed) {
+            super(parent);
+            this.store = store;
+            this.rootNode = rootNode;
+            this.firstChild = firstChild;
+            this.rootDepth = rootDepth;
+            this.maxDepth = maxDepth;
+            this.completed = completed;
+        }
+
+        @Override
+        public void compute() {
+            int[] nodes = new int[16];
+            int[] positions = new int[16];
+            int top = -1;
+
+            if (firstChild < 0) {
+                emit(rootNode);
+                if (rootDepth < maxDepth) {
+                    nodes[++top] = rootNode;
+                }
+            } else {
+                nodes[++top] = rootNode;
+                positions[top] = firstChild;
+            }
+
+            while (top >= 0) {
+                int parent = nodes[top];
+                if (positions[top] == store.childCount(parent)) {
+                    top--;
+                    continue;
+                }
+                int child = store.child(parent, positions[top]++);
+                int childDepth = rootDepth + top + 1;
+                boolean expandable = childDepth < maxDepth && store.childCount(child) > 0;
+
+                if (expandable && count >= sequentialCutoff) {
+                    // Hand this child and the siblings after it to one task
+                    fork(parent, positions[top] - 1, childDepth - 1);
+                    top--;
+                    continue;
+                }
+                emit(child);
+                if (expandable) {
+                    if (++top == nodes.length) {
+                        nodes = Arrays.copyOf(nodes, top * 2);
+                        positions = Arrays.copyOf(positions, top * 2);
+                    }
+                    nodes[top] = child;
+                    positions[top] = 0;
+                }
+            }
+
+            if (completed != null) {
+                completed.add(this);
+            }
+            tryComplete();
+        }
+
+        private void fork(int parent, int position, int parentDepth) {
+            SubtreeTask task = new SubtreeTask(this, store, parent, position, parentDepth, maxDepth, completed);
+            if (ordered) {
+                if (forked.isEmpty()) {
+                    forked = new ArrayList<>();
+                    splicePositions = new int[4];
+                } else if (forked.size() == splicePositions.length) {
+                    splicePositions = Arrays.copyOf(splicePositions, forked.size() * 2);
+                }
+                splicePositions[forked.size()] = count;
+                forked.add(task);
+            }
+            addToPendingCount(1);
+            task.fork();
+        }
+
+        private void emit(int node) {
+            if (count == buffer.length) {
+                buffer = Arrays.copyOf(buffer, count * 2);
+            }
+            buffer[count++] = node;
+        }
+
+        void appendTo(PersonStore store, List<Person> result, int from, int to) {
+            for (int i = from; i < to; i++) {
+                result.add(store.person(buffer[i]));
+            }
+        }
+    }
+}
\ No newline at end of file
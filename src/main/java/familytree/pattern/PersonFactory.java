@@ -1,24 +1,31 @@
 package familytree.pattern;
 
 import familytree.model.Person;
-import familytree.model.Adult;
-import familytree.model.Minor;
 import familytree.model.Gender;
+import familytree.model.IdAllocator;
+import familytree.model.PersonStore;
 
 public class PersonFactory {
-    private static int idCounter = 1;
-
     private PersonFactory() {}
 
-    public static Person createPerson(String fullName, Gender gender, int birthYear, Integer deathYear) {
-        String id = generateId();
-        Person person;
+    /**
+     * Creates a person under the next free ID of store. There is no overload without a
+     * store: IDs are unique per store, so people made in separate stores would share them.
+     */
+    public static Person createPerson(PersonStore store, String fullName, Gender gender, int birthYear, Integer deathYear) {
+        checkYears(birthYear, deathYear);
+        return createPerson(store, store.getIdAllocator().allocate(), fullName, gender, birthYear, deathYear);
+    }
 
-        if (birthYear > 2005) { // Simple rule: born after 2005 is Minor
-            person = new Minor(id, fullName, gender, birthYear);
-        } else {
-            person = new Adult(id, fullName, gender, birthYear);
-        }
+    /**
+     * Creates a person under a number the caller already holds, e.g. one from a range
+     * reserved with {@link familytree.model.IdAllocator#reserve(int)}.
+     */
+    public static Person createPerson(PersonStore store, long number, String fullName, Gender gender, int birthYear, Integer deathYear) {
+        checkYears(birthYear, deathYear);
+        String id = IdAllocator.format(number);
+        // Simple rule: born after 2005 is Minor
+        Person person = store.add(id, fullName, gender, birthYear, birthYear > 2005);
 
         if (deathYear != null) {
             person.setDeathYear(deathYear);
@@ -27,11 +34,24 @@ public class PersonFactory {
         return person;
     }
 
-    private static String generateId() {
-        return String.format("P%03d", idCounter++);
+    /**
+     * Throws the IllegalArgumentException createPerson would for this input, without
+     * creating anyone.
+     */
+    public static void validate(String fullName, int birthYear, Integer deathYear) {
+        if (fullName == null || fullName.trim().isEmpty()) {
+            throw new IllegalArgumentException("Full name cannot be null or empty");
+        }
+        if (birthYear < 0) {
+            throw new IllegalArgumentException("Birth year must be positive");
+        }
+        checkYears(birthYear, deathYear);
     }
 
-    public static void resetCounter() {
-        idCounter = 1;
+    private static void checkYears(int birthYear, Integer deathYear) {
+        // Checked up front: once constructed, the person is already registered in the store
+        if (deathYear != null && deathYear < birthYear) {
+            throw new IllegalArgumentException("Death year cannot be before birth year");
+        }
     }
 }
\ No newline at end of file
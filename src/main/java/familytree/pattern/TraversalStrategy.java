@@ -1,11 +1,27 @@
 package familytree.pattern;
 
 import familytree.model.Person;
+import java.util.Iterator;
 import java.util.List;
-import java.util.ArrayList;
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public interface TraversalStrategy {
     List<Person> traverse(Person person, int maxDepth);
+
+    /**
+     * Lazily yields the same people, in the same order, as {@link #traverse}.
+     * Strategies that can walk incrementally override this so callers may stop early.
+     */
+    default Iterator<Person> iterator(Person person, int maxDepth) {
+        return traverse(person, maxDepth).iterator();
+    }
+
+    default Stream<Person> stream(Person person, int maxDepth) {
+        Spliterator<Person> spliterator = Spliterators.spliteratorUnknownSize(
+                iterator(person, maxDepth), Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,193 @@
+package familytree.server;
+
+import familytree.cli.CLI;
+import familytree.service.FamilyTree;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Serves one {@link FamilyTree} over TCP using the {@link CLI} command language: each
+ * line a client sends is a command, and each connection is a CLI session in the
+ * server's output format. Clients may pipeline, sending many commands without waiting;
+ * replies are written in order and flushed once the commands already received have
+ * all been answered.
+ * <p>
+ * Every connection runs on its own thread: a virtual thread when the runtime has them
+ * (Java 21 and later), otherwise a thread from a cached pool. Queries from different
+ * connections run in parallel; commands that change the tree take turns with them.
+ */
+public class FamilyTreeServer implements Closeable {
+    private final FamilyTree tree;
+    private final CLI.Format format;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ServerSocket serverSocket;
+    private final ExecutorService connections;
+    private final boolean virtualThreads;
+    private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger accepted = new AtomicInteger();
+    private Thread acceptor;
+    private volatile boolean closed;
+
+    /**
+     * Binds the server; {@link #start} begins accepting connections.
+     *
+     * @param address where to listen; port 0 picks a free port
+     */
+    public FamilyTreeServer(FamilyTree tree, InetSocketAddress address, CLI.Format format) throws IOException {
+        this.tree = tree;
+        this.format = format;
+        this.serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(address, 1024);
+        ExecutorService executor = newVirtualThreadExecutor();
+        this.virtualThreads = executor != null;
+        this.connections = virtualThreads ? executor : newPooledExecutor();
+    }
+
+    public synchronized void start() {
+        if (acceptor != null) {
+            throw new IllegalStateException("Server already started");
+        }
+        acceptor = new Thread(this::acceptLoop, "familytree-acceptor");
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public FamilyTree getFamilyTree() {
+        return tree;
+    }
+
+    /**
+     * Connections accepted since the server started.
+     */
+    public int getConnectionCount() {
+        return accepted.get();
+    }
+
+    public int getOpenConnectionCount() {
+        return sockets.size();
+    }
+
+    /**
+     * Whether connections run on virtual threads rather than pooled platform threads.
+     */
+    public boolean usesVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Blocks until the server is closed.
+     */
+    public void awaitTermination() throws InterruptedException {
+        Thread thread;
+        synchronized (this) {
+            thread = acceptor;
+        }
+        if (thread != null) thread.join();
+        connections.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stops accepting, drops every open connection and waits for their sessions to end.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        serverSocket.close();
+        for (Socket socket : sockets) {
+            closeQuietly(socket);
+        }
+        connections.shutdown();
+        try {
+            connections.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (closed) break;
+                continue;
+            }
+            accepted.incrementAndGet();
+            sockets.add(socket);
+            try {
+                connections.execute(() -> serve(socket));
+            } catch (RuntimeException e) {
+                sockets.remove(socket);
+                closeQuietly(socket);
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try {
+            socket.setTcpNoDelay(true);
+            CLI session = new CLI(tree, lock,
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8),
+                    new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), format);
+            session.start();
+        } catch (SocketException e) {
+            // Client went away or the server is closing
+        } catch (IOException e) {
+            System.err.println("Connection failed: " + e.getMessage());
+        } finally {
+            sockets.remove(socket);
+            closeQuietly(socket);
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Nothing left to release
+        }
+    }
+
+    static ExecutorService newPooledExecutor() {
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory factory = task -> {
+            Thread thread = new Thread(task, "familytree-connection-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return Executors.newCachedThreadPool(factory);
+    }
+
+    /**
+     * Looked up reflectively so the server still builds and runs on Java 17.
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+            // Not available, or a preview feature that is not enabled
+            return null;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,256 @@
+package familytree.server;
+
+import familytree.metrics.LatencyHistogram;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load-generating client for a {@link FamilyTreeServer} running with TSV output.
+ * <p>
+ * Seeds the server with a tree in which everyone has four children, then opens a
+ * number of connections that each send their share of commands in pipelined windows,
+ * about one write per ten queries, and reports throughput and the round-trip latency
+ * of each window.
+ */
+public class LoadGenerator {
+    // Children per person in the seeded tree
+    private static final int FAN_OUT = 4;
+    private static final int SEED_WINDOW = 1024;
+
+    private final String host;
+    private final int port;
+    private final SplittableRandom random = new SplittableRandom(42);
+    private final LatencyHistogram windowLatency = new LatencyHistogram();
+    private final AtomicLong replies = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private String[] ids = new String[0];
+
+    public LoadGenerator(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * Usage: {@code LoadGenerator [Host] [Port] [Connections] [Requests] [Pipeline] [People]},
+     * where Requests is the total over all connections and Pipeline the number of
+     * commands each connection sends before reading their replies.
+     */
+    public static void main(String[] args) throws Exception {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 7070;
+        int connections = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+        int requests = args.length > 3 ? Integer.parseInt(args[3]) : 1_000_000;
+        int pipeline = args.length > 4 ? Integer.parseInt(args[4]) : 32;
+        int people = args.length > 5 ? Integer.parseInt(args[5]) : 10_000;
+
+        LoadGenerator generator = new LoadGenerator(host, port);
+        long start = System.nanoTime();
+        generator.seed(people);
+        System.out.printf("Seeded %d people in %d ms%n", people, (System.nanoTime() - start) / 1_000_000);
+        generator.run(connections, requests, pipeline).print(System.out);
+    }
+
+    /**
+     * Adds people over one connection and links each to a parent added before them.
+     */
+    public void seed(int people) throws IOException {
+        if (people < 1) {
+            throw new IllegalArgumentException("Need at least 1 person");
+        }
+        String[] seeded = new String[people];
+        int[] generation = new int[people];
+        try (Connection connection = new Connection(host, port)) {
+            // Windowed so neither side fills its socket buffer while the other is still writing
+            for (int from = 0; from < people; from += SEED_WINDOW) {
+                int to = Math.min(people, from + SEED_WINDOW);
+                for (int i = from; i < to; i++) {
+                    if (i > 0) generation[i] = generation[(i - 1) / FAN_OUT] + 1;
+                    connection.send("ADD_PERSON \"Person " + i + "\" " + (i % 2 == 0 ? "MALE" : "FEMALE")
+                            + " " + (1800 + 25 * generation[i]));
+                }
+                connection.flush();
+                for (int i = from; i < to; i++) {
+                    String reply = connection.readReply();
+                    if (!reply.startsWith("OK\t")) {
+                        throw new IOException("Cannot seed: " + reply);
+                    }
+                    seeded[i] = reply.substring(3);
+                }
+            }
+
+            for (int from = 1; from < people; from += SEED_WINDOW) {
+                int to = Math.min(people, from + SEED_WINDOW);
+                for (int i = from; i < to; i++) {
+                    connection.send("ADD_PARENT_CHILD " + seeded[(i - 1) / FAN_OUT] + " " + seeded[i]);
+                }
+                connection.flush();
+                for (int i = from; i < to; i++) {
+                    String reply = connection.readReply();
+                    if (!reply.equals("OK")) {
+                        throw new IOException("Cannot seed: " + reply);
+                    }
+                }
+            }
+        }
+        ids = seeded;
+    }
+
+    /**
+     * Sends requests commands spread over the given number of connections, each on its
+     * own thread, and waits for every reply.
+     */
+    public Result run(int connections, int requests, int pipeline) throws Exception {
+        if (connections < 1 || pipeline < 1) {
+            throw new IllegalArgumentException("Need at least 1 connection and a pipeline of at least 1");
+        }
+        if (ids.length == 0) {
+            throw new IllegalArgumentException("Seed the server first");
+        }
+        windowLatency.reset();
+        replies.set(0);
+        errors.set(0);
+
+        long start = System.nanoTime();
+        ExecutorService executor = FamilyTreeServer.newPooledExecutor();
+        try {
+            List<Future<?>> clients = new ArrayList<>();
+            for (int c = 0; c < connections; c++) {
+                int share = requests / connections + (c < requests % connections ? 1 : 0);
+                long seed = random.nextLong();
+                clients.add(executor.submit(() -> {
+                    drive(share, pipeline, new SplittableRandom(seed));
+                    return null;
+                }));
+            }
+            for (Future<?> client : clients) {
+                client.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return new Result(connections, replies.get(), errors.get(), System.nanoTime() - start, windowLatency);
+    }
+
+    private void drive(int requests, int pipeline, SplittableRandom random) throws IOException {
+        try (Connection connection = new Connection(host, port)) {
+            int sent = 0;
+            while (sent < requests) {
+                int window = Math.min(pipeline, requests - sent);
+                long start = System.nanoTime();
+                for (int i = 0; i < window; i++) {
+                    connection.send(nextCommand(random));
+                }
+                connection.flush();
+                for (int i = 0; i < window; i++) {
+                    if (connection.readReply().startsWith("ERR")) {
+                        errors.incrementAndGet();
+                    }
+                }
+                windowLatency.record(System.nanoTime() - start);
+                replies.addAndGet(window);
+                sent += window;
+            }
+        }
+    }
+
+    private String nextCommand(SplittableRandom random) {
+        String id = ids[random.nextInt(ids.length)];
+        switch (random.nextInt(10)) {
+            case 0:
+                return "ADD_PERSON \"Visitor\" FEMALE 1990";
+            case 1:
+            case 2:
+                return "ANCESTORS " + id + " 3";
+            case 3:
+            case 4:
+                return "SIBLINGS " + id;
+            case 5:
+            case 6:
+                return "SHOW " + id;
+            default:
+                return "CHILDREN " + id;
+        }
+    }
+
+    public static final class Result {
+        public final int connections;
+        public final long replies;
+        public final long errors;
+        public final long elapsedNanos;
+        public final LatencyHistogram windowLatency;
+
+        Result(int connections, long replies, long errors, long elapsedNanos, LatencyHistogram windowLatency) {
+            this.connections = connections;
+            this.replies = replies;
+            this.errors = errors;
+            this.elapsedNanos = elapsedNanos;
+            this.windowLatency = windowLatency;
+        }
+
+        public double getThroughput() {
+            return elapsedNanos == 0 ? 0.0 : replies * 1e9 / elapsedNanos;
+        }
+
+        public void print(PrintStream out) {
+            out.printf("%d commands over %d connections in %d ms: %.0f commands/s, %d errors%n",
+                    replies, connections, elapsedNanos / 1_000_000, getThroughput(), errors);
+            out.printf("window round trip: mean=%.1fus p50=%.1fus p99=%.1fus max=%.1fus%n",
+                    windowLatency.getMean() / 1000.0,
+                    windowLatency.getValueAtPercentile(50) / 1000.0,
+                    windowLatency.getValueAtPercentile(99) / 1000.0,
+                    windowLatency.getMax() / 1000.0);
+        }
+    }
+
+    /**
+     * One client connection. A reply ends with its first line that is not a PERSON
+     * record, which holds for every command this client sends.
+     */
+    private static final class Connection implements AutoCloseable {
+        private final Socket socket;
+        private final BufferedReader in;
+        private final Writer out;
+
+        Connection(String host, int port) throws IOException {
+            socket = new Socket(host, port);
+            socket.setTcpNoDelay(true);
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8), 1 << 16);
+            out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), 1 << 16);
+        }
+
+        void send(String command) throws IOException {
+            out.write(command);
+            out.write('\n');
+        }
+
+        void flush() throws IOException {
+            out.flush();
+        }
+
+        String readReply() throws IOException {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (!line.startsWith("PERSON\t")) return line;
+            }
+            throw new IOException("Server closed the connection");
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
\ No newline at end of file
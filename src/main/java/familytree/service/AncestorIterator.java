@@ -0,0 +1,113 @@
+package familytree.service;
+
+import familytree.model.Person;
+import familytree.model.PersonStore;
+import familytree.pattern.IntQueue;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Lazy walk over the ancestors of one person, up to a number of generations.
+ * <p>
+ * The default walk is pre-order over parent slots, listing an ancestor once per path,
+ * driven by a stack of (node, next parent slot) frames no deeper than the generations
+ * walked. The unique walk is breadth-first and lists each ancestor once, at their
+ * minimum distance.
+ */
+class AncestorIterator implements Iterator<Person> {
+    private final PersonStore store;
+    private final int maxDepth;
+
+    // Pre-order walk: frames of (node, next parent slot); the stack height is the depth
+    private int[] nodes;
+    private int[] slots;
+    private int top = -1;
+
+    // Unique walk
+    private final BitSet seen;
+    private final IntQueue queue;
+
+    private int pending = PersonStore.NONE;
+
+    AncestorIterator(Person person, int maxDepth, boolean unique) {
+        this.store = person.getStore();
+        this.maxDepth = maxDepth;
+        int start = person.getIndex();
+        if (unique) {
+            seen = new BitSet();
+            queue = new IntQueue();
+            seen.set(start);
+            queue.offer(start, 0);
+        } else {
+            seen = null;
+            queue = null;
+            nodes = new int[16];
+            slots = new int[16];
+            if (maxDepth > 0) push(start);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (pending == PersonStore.NONE) {
+            pending = queue != null ? nextUnique() : nextOnPath();
+        }
+        return pending != PersonStore.NONE;
+    }
+
+    @Override
+    public Person next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        int node = pending;
+        pending = PersonStore.NONE;
+        return store.person(node);
+    }
+
+    private int nextOnPath() {
+        while (top >= 0) {
+            int node = nodes[top];
+            if (slots[top] == store.parentCount(node)) {
+                top--;
+                continue;
+            }
+            int parent = store.parent(node, slots[top]++);
+            // Only expand parents whose own parents are still within maxDepth
+            if (top + 1 < maxDepth) push(parent);
+            return parent;
+        }
+        return PersonStore.NONE;
+    }
+
+    private int nextUnique() {
+        while (!queue.isEmpty()) {
+            int node = queue.peekNode();
+            int depth = queue.peekDepth();
+            queue.poll();
+            if (depth < maxDepth) {
+                int parentCount = store.parentCount(node);
+                for (int slot = 0; slot < parentCount; slot++) {
+                    int parent = store.parent(node, slot);
+                    if (!seen.get(parent)) {
+                        seen.set(parent);
+                        queue.offer(parent, depth + 1);
+                    }
+                }
+            }
+            if (depth > 0) return node;
+        }
+        return PersonStore.NONE;
+    }
+
+    private void push(int node) {
+        if (++top == nodes.length) {
+            nodes = Arrays.copyOf(nodes, top * 2);
+            slots = Arrays.copyOf(slots, top * 2);
+        }
+        nodes[top] = node;
+        slots[top] = 0;
+    }
+}
\ No newline at end of file
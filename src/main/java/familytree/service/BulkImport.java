@@ -0,0 +1,301 @@
+package familytree.service;
+
+import familytree.model.Gender;
+import familytree.model.IdAllocator;
+import familytree.model.Person;
+import familytree.model.PersonStore;
+import familytree.pattern.PersonFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Batch loading session for a {@link FamilyTree}, obtained from
+ * {@link FamilyTree#beginBulkImport()}.
+ * <p>
+ * People, parent-child links, marriages and divorces are all staged and only applied
+ * on {@link #commit()}: cycles and the two-parent limit are validated in one linear
+ * topological-sort pass over the whole batch, and every violation is reported
+ * together. Marriages and divorces take effect in the order they were staged, so a
+ * batch can divorce and remarry someone. The batch is applied all-or-nothing; a
+ * rejected batch adds nobody.
+ * <p>
+ * A staged person gets their ID straight away, so links and marriages can name them
+ * before they exist. The tree must not gain people from elsewhere until the batch is
+ * committed.
+ */
+public class BulkImport {
+    private final FamilyTree familyTree;
+    private final PersonStore store;
+    private final List<String> violations = new ArrayList<>();
+    private final int base; // store size when the batch began; staged person k gets index base + k
+
+    // Staged people
+    private final List<String> stagedIds = new ArrayList<>();
+    private final Map<String, Integer> stagedIndexes = new HashMap<>();
+    private long[] numbers = new long[64];
+    private String[] names = new String[64];
+    private Gender[] genders = new Gender[64];
+    private int[] birthYears = new int[64];
+    private Integer[] deathYears = new Integer[64];
+    private int stagedCount;
+
+    private int[] parents = new int[64];
+    private int[] children = new int[64];
+    private int linkCount;
+
+    // Marriages and divorces in staged order
+    private int[] spouses = new int[32];
+    private int[] eventYears = new int[16];
+    private boolean[] divorces = new boolean[16];
+    private int eventCount;
+
+    private long nextReserved;
+    private long reservedEnd;
+
+    private int peopleAdded;
+    private int relationshipsAdded;
+    private int marriagesAdded;
+    private int divorcesAdded;
+    private boolean committed;
+
+    BulkImport(FamilyTree familyTree, PersonStore store) {
+        this.familyTree = familyTree;
+        this.store = store;
+        this.base = store.size();
+    }
+
+    /**
+     * Reserves one range of IDs for the next count people added, so the batch is
+     * numbered consecutively and skips the per-person allocation. Numbers left unused at
+     * commit, or given to people of a rejected batch, are simply never handed out.
+     */
+    public void reserveIds(int count) {
+        checkOpen();
+        nextReserved = store.getIdAllocator().reserve(count);
+        reservedEnd = nextReserved + count;
+    }
+
+    /**
+     * Stages a person, who is added to the tree on commit.
+     *
+     * @return the ID the person will have
+     * @throws IllegalArgumentException for input {@link FamilyTree#addPerson} would refuse
+     */
+    public String addPerson(String fullName, Gender gender, int birthYear, Integer deathYear) {
+        checkOpen();
+        PersonFactory.validate(fullName, birthYear, deathYear);
+        if (stagedCount == numbers.length) {
+            int capacity = stagedCount * 2;
+            numbers = Arrays.copyOf(numbers, capacity);
+            names = Arrays.copyOf(names, capacity);
+            genders = Arrays.copyOf(genders, capacity);
+            birthYears = Arrays.copyOf(birthYears, capacity);
+            deathYears = Arrays.copyOf(deathYears, capacity);
+        }
+        long number = nextReserved < reservedEnd ? nextReserved++ : store.getIdAllocator().allocate();
+        String id = IdAllocator.format(number);
+        numbers[stagedCount] = number;
+        names[stagedCount] = fullName;
+        genders[stagedCount] = gender;
+        birthYears[stagedCount] = birthYear;
+        deathYears[stagedCount] = deathYear;
+        stagedIds.add(id);
+        stagedIndexes.put(id, stagedCount);
+        stagedCount++;
+        return id;
+    }
+
+    /**
+     * Stages a link between people of the tree or of this batch.
+     */
+    public void addParentChildRelationship(String parentId, String childId) {
+        link(indexOf(parentId), indexOf(childId));
+    }
+
+    public void addParentChildRelationship(Person parent, Person child) {
+        link(parent.getIndex(), child.getIndex());
+    }
+
+    private void link(int parent, int child) {
+        checkOpen();
+        if (linkCount == parents.length) {
+            parents = Arrays.copyOf(parents, linkCount * 2);
+            children = Arrays.copyOf(children, linkCount * 2);
+        }
+        parents[linkCount] = parent;
+        children[linkCount] = child;
+        linkCount++;
+    }
+
+    /**
+     * Stages a marriage between people of the tree or of this batch.
+     */
+    public void marry(String person1Id, String person2Id, int year) {
+        marry(indexOf(person1Id), indexOf(person2Id), year);
+    }
+
+    public void marry(Person person1, Person person2, int year) {
+        marry(person1.getIndex(), person2.getIndex(), year);
+    }
+
+    private void marry(int person1, int person2, int year) {
+        stageEvent(person1, person2, year, false);
+    }
+
+    /**
+     * Stages the divorce of a couple married in the tree or earlier in this batch.
+     *
+     * @param year the year of the divorce, or null if unknown
+     */
+    public void divorce(String person1Id, String person2Id, Integer year) {
+        divorce(indexOf(person1Id), indexOf(person2Id), year);
+    }
+
+    public void divorce(Person person1, Person person2, Integer year) {
+        divorce(person1.getIndex(), person2.getIndex(), year);
+    }
+
+    private void divorce(int person1, int person2, Integer year) {
+        stageEvent(person1, person2, year != null ? year : PersonStore.NO_YEAR, true);
+    }
+
+    private void stageEvent(int person1, int person2, int year, boolean divorce) {
+        checkOpen();
+        if (eventCount == eventYears.length) {
+            spouses = Arrays.copyOf(spouses, eventCount * 4);
+            eventYears = Arrays.copyOf(eventYears, eventCount * 2);
+            divorces = Arrays.copyOf(divorces, eventCount * 2);
+        }
+        spouses[2 * eventCount] = person1;
+        spouses[2 * eventCount + 1] = person2;
+        eventYears[eventCount] = year;
+        divorces[eventCount] = divorce;
+        eventCount++;
+    }
+
+    /**
+     * Records a problem found by the caller, e.g. a malformed input record. Any rejection
+     * makes {@link #commit()} fail after reporting it alongside the graph violations.
+     */
+    public void reject(String violation) {
+        checkOpen();
+        violations.add(violation);
+    }
+
+    /**
+     * Validates the batch and applies every staged person, link, marriage and divorce.
+     *
+     * @throws BulkImportException listing every violation; nothing staged is applied
+     */
+    public void commit() {
+        checkOpen();
+        committed = true;
+        if (store.size() != base) {
+            throw new IllegalStateException("People were added to the tree during the bulk import");
+        }
+
+        checkMarriages();
+        relationshipsAdded = store.linkBatch(parents, children, linkCount, stagedIds, this::addStaged, violations);
+        if (!violations.isEmpty()) {
+            throw new BulkImportException(violations);
+        }
+        for (int i = 0; i < eventCount; i++) {
+            Person first = store.person(spouses[2 * i]);
+            if (!divorces[i]) {
+                first.marry(store.person(spouses[2 * i + 1]), eventYears[i]);
+                marriagesAdded++;
+            } else {
+                if (eventYears[i] != PersonStore.NO_YEAR) {
+                    first.divorce(eventYears[i]);
+                } else {
+                    first.divorce();
+                }
+                divorcesAdded++;
+            }
+        }
+        store.compact();
+    }
+
+    private void addStaged() {
+        for (int i = 0; i < stagedCount; i++) {
+            familyTree.addPerson(numbers[i], names[i], genders[i], birthYears[i], deathYears[i]);
+        }
+        peopleAdded = stagedCount;
+    }
+
+    public int getPeopleAdded() { return peopleAdded; }
+    public int getRelationshipsAdded() { return relationshipsAdded; }
+    public int getMarriagesAdded() { return marriagesAdded; }
+    public int getDivorcesAdded() { return divorcesAdded; }
+
+    /**
+     * Replays the staged marriages and divorces against each person's current spouse and
+     * the year they married.
+     */
+    private void checkMarriages() {
+        int size = base + stagedCount;
+        int[] spouse = new int[size];
+        int[] since = new int[size];
+        boolean[] seen = new boolean[size];
+        for (int i = 0; i < eventCount; i++) {
+            int first = spouses[2 * i];
+            int second = spouses[2 * i + 1];
+            int year = eventYears[i];
+            recall(first, spouse, since, seen);
+            recall(second, spouse, since, seen);
+            if (divorces[i]) {
+                if (spouse[first] != second) {
+                    violations.add("Divorce failed: " + id(first) + " and " + id(second) + " are not married");
+                } else if (year != PersonStore.NO_YEAR && year < since[first]) {
+                    violations.add("Divorce year cannot be before marriage year: " + id(first) + " & " + id(second));
+                }
+                spouse[first] = PersonStore.NONE;
+                spouse[second] = PersonStore.NONE;
+            } else if (first == second) {
+                violations.add("Cannot marry self: " + id(first));
+            } else {
+                if (spouse[first] != PersonStore.NONE || spouse[second] != PersonStore.NONE) {
+                    violations.add("Marriage failed: " + id(first) + " or " + id(second) + " is already married");
+                } else if (year < birthYear(first) || year < birthYear(second)) {
+                    violations.add("Marriage year cannot be before birth year: " + id(first) + " & " + id(second));
+                }
+                spouse[first] = second;
+                spouse[second] = first;
+                since[first] = year;
+                since[second] = year;
+            }
+        }
+    }
+
+    private void recall(int person, int[] spouse, int[] since, boolean[] seen) {
+        if (seen[person]) return;
+        seen[person] = true;
+        spouse[person] = person < base ? store.spouse(person) : PersonStore.NONE;
+        since[person] = person < base ? store.marriageYear(person) : PersonStore.NO_YEAR;
+    }
+
+    // People of the tree by index, then staged people from base on
+
+    private int indexOf(String id) {
+        Integer staged = stagedIndexes.get(id);
+        if (staged != null) return base + staged;
+        return familyTree.getPerson(id).getIndex();
+    }
+
+    private String id(int person) {
+        return person < base ? store.id(person) : stagedIds.get(person - base);
+    }
+
+    private int birthYear(int person) {
+        return person < base ? store.birthYear(person) : birthYears[person - base];
+    }
+
+    private void checkOpen() {
+        if (committed) {
+            throw new IllegalStateException("Bulk import already committed");
+        }
+    }
+}
\ No newline at end of file
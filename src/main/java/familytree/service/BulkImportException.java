@@ -0,0 +1,23 @@
+package familytree.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Thrown when a bulk import is committed with one or more violations; carries all of them.
+ */
+public class BulkImportException extends IllegalArgumentException {
+    private static final long serialVersionUID = 1L;
+
+    private final List<String> violations;
+
+    public BulkImportException(List<String> violations) {
+        super(violations.size() + " violation(s), first: " + violations.get(0));
+        this.violations = Collections.unmodifiableList(new ArrayList<>(violations));
+    }
+
+    public List<String> getViolations() {
+        return violations;
+    }
+}
\ No newline at end of file
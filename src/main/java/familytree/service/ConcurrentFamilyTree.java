@@ -0,0 +1,190 @@
+package familytree.service;
+
+import familytree.model.Gender;
+import familytree.model.Person;
+import familytree.pattern.DFSTraversal;
+import familytree.pattern.TraversalStrategy;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Thread-safe front for a {@link FamilyTree} with snapshot isolation.
+ * <p>
+ * Readers read the latest published snapshot, an immutable copy of the tree that
+ * stays consistent however long they hold it. Writers take turns on a private working
+ * tree and publish a fresh snapshot once their batch is done, so a batch of edits
+ * becomes visible to readers all at once and pays for one copy.
+ * <p>
+ * Single edits ({@link #addPerson}, {@link #addParentChildRelationship},
+ * {@link #marry}) do not copy the tree each time. They become visible when the writer
+ * calls {@link #publish}, or with the next batch, so a run of single edits pays for
+ * one copy, not one per edit. Readers never publish and never take the lock.
+ */
+public class ConcurrentFamilyTree {
+    private final FamilyTree working;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private volatile TraversalStrategy traversalStrategy = new DFSTraversal();
+    private volatile FamilyTree published;
+    private volatile long version;
+    private boolean pending; // single edits not yet published; guarded by writeLock
+
+    public ConcurrentFamilyTree() {
+        this(new FamilyTree());
+    }
+
+    /**
+     * Takes ownership of tree; it must not be changed other than through this object.
+     */
+    public ConcurrentFamilyTree(FamilyTree tree) {
+        this.working = tree;
+        publishWorking();
+    }
+
+    /**
+     * The latest published state. It never changes, so a reader can run any number of
+     * queries against it and see one consistent tree; mutating it throws
+     * {@link UnsupportedOperationException}.
+     */
+    public FamilyTree snapshot() {
+        return published;
+    }
+
+    /**
+     * Publishes the single edits made since the last snapshot, if there are any.
+     */
+    public void publish() {
+        writeLock.lock();
+        try {
+            if (pending) publishWorking();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Number of snapshots published so far.
+     */
+    public long version() {
+        return version;
+    }
+
+    public void setTraversalStrategy(TraversalStrategy strategy) {
+        writeLock.lock();
+        try {
+            traversalStrategy = strategy;
+            working.setTraversalStrategy(strategy);
+            // Readers may be using the current snapshot; rewrap its store instead
+            FamilyTree rewrapped = new FamilyTree(snapshot().getStore());
+            rewrapped.setTraversalStrategy(strategy);
+            published = rewrapped;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Applies a batch of edits while holding the write lock and publishes the result.
+     * Edits are not rolled back: if the batch throws, whatever it applied before the
+     * failure is still published.
+     */
+    public <T> T write(Function<FamilyTree, T> edits) {
+        writeLock.lock();
+        try {
+            return edits.apply(working);
+        } finally {
+            publishWorking();
+            writeLock.unlock();
+        }
+    }
+
+    public void update(Consumer<FamilyTree> edits) {
+        write(tree -> {
+            edits.accept(tree);
+            return null;
+        });
+    }
+
+    private void publishWorking() {
+        pending = false;
+        FamilyTree snapshot = new FamilyTree(working.getStore().snapshot());
+        snapshot.setTraversalStrategy(traversalStrategy);
+        published = snapshot;
+        version++;
+    }
+
+    // Single-edit writes, visible once published
+
+    /**
+     * Adds a person without publishing.
+     *
+     * @return the new person's ID, to look them up in a later {@link #snapshot}
+     */
+    public String addPerson(String fullName, Gender gender, int birthYear, Integer deathYear) {
+        return edit(tree -> tree.addPerson(fullName, gender, birthYear, deathYear).getId());
+    }
+
+    public void addParentChildRelationship(String parentId, String childId) {
+        edit(tree -> {
+            tree.addParentChildRelationship(parentId, childId);
+            return null;
+        });
+    }
+
+    public void marry(String person1Id, String person2Id, int year) {
+        edit(tree -> {
+            tree.marry(person1Id, person2Id, year);
+            return null;
+        });
+    }
+
+    private <T> T edit(Function<FamilyTree, T> edit) {
+        writeLock.lock();
+        try {
+            return edit.apply(working);
+        } finally {
+            // Even a failed edit may have changed something
+            pending = true;
+            writeLock.unlock();
+        }
+    }
+
+    // Reads against the latest snapshot
+
+    public Person getPerson(String id) {
+        return snapshot().getPerson(id);
+    }
+
+    public boolean personExists(String id) {
+        return snapshot().personExists(id);
+    }
+
+    public List<Person> getAncestors(String personId, int generations) {
+        return snapshot().getAncestors(personId, generations);
+    }
+
+    public List<Person> getDescendants(String personId, int generations) {
+        return snapshot().getDescendants(personId, generations);
+    }
+
+    public boolean isAncestor(String ancestorId, String descendantId) {
+        return snapshot().isAncestor(ancestorId, descendantId);
+    }
+
+    public List<Person> getSiblings(String personId) {
+        return snapshot().getSiblings(personId);
+    }
+
+    public List<Person> getChildren(String personId) {
+        return snapshot().getChildren(personId);
+    }
+
+    public Person getSpouse(String personId) {
+        return snapshot().getSpouse(personId);
+    }
+
+    public int size() {
+        return snapshot().size();
+    }
+}
\ No newline at end of file
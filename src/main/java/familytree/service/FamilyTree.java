@@ -1,107 +1,598 @@
 package familytree.service;
 
+import familytree.io.TreeSnapshot;
+import familytree.metrics.LinkEvent;
+import familytree.metrics.Metrics;
+import familytree.metrics.OperationEvent;
+import familytree.model.FamilyUnits;
+import familytree.model.Marriage;
 import familytree.model.Person;
 import familytree.model.Gender;
+import familytree.model.PersonStore;
 import familytree.pattern.PersonFactory;
 import familytree.pattern.TraversalStrategy;
 import familytree.pattern.DFSTraversal;
-import java.util.HashMap;
-import java.util.Map;
+import familytree.pattern.IntQueue;
+import familytree.pattern.InstrumentedTraversal;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.stream.Stream;
 
 public class FamilyTree {
-    private final Map<String, Person> people;
+    private final PersonStore store;
     private TraversalStrategy traversalStrategy;
+    private KinshipService kinshipService;
+    private PersonIndex personIndex;
+    private SubtreeAggregates subtreeAggregates;
+    private TemporalIndex temporalIndex;
+    private IntegrityScanner integrityScanner;
+    private QueryCache queryCache;
 
     public FamilyTree() {
-        this.people = new HashMap<>();
-        this.traversalStrategy = new DFSTraversal(); // Default strategy
+        this(new PersonStore());
+    }
+
+    public FamilyTree(PersonStore store) {
+        this.store = store;
+        this.traversalStrategy = InstrumentedTraversal.wrap(new DFSTraversal()); // Default strategy
+    }
+
+    public static FamilyTree load(Path path) throws IOException {
+        return TreeSnapshot.load(path);
+    }
+
+    public void save(Path path) throws IOException {
+        TreeSnapshot.save(this, path);
     }
 
     public void setTraversalStrategy(TraversalStrategy strategy) {
-        this.traversalStrategy = strategy;
+        this.traversalStrategy = InstrumentedTraversal.wrap(strategy);
+    }
+
+    /**
+     * Caches ancestor and descendant results, holding at most capacity people in total.
+     */
+    public void enableQueryCache(int capacity) {
+        disableQueryCache();
+        queryCache = new QueryCache(store, capacity);
+        store.addMutationListener(queryCache);
+    }
+
+    public void disableQueryCache() {
+        if (queryCache != null) {
+            store.removeMutationListener(queryCache);
+            queryCache = null;
+        }
+    }
+
+    /**
+     * @return the active cache, or null when caching is off
+     */
+    public QueryCache getQueryCache() {
+        return queryCache;
     }
 
     public Person addPerson(String fullName, Gender gender, int birthYear, Integer deathYear) {
-        Person person = PersonFactory.createPerson(fullName, gender, birthYear, deathYear);
-        people.put(person.getId(), person);
+        long start = Metrics.start();
+        OperationEvent event = beginEvent();
+        Person person = PersonFactory.createPerson(store, fullName, gender, birthYear, deathYear);
+        finishEvent(event, start, "addPerson", person.getId(), -1, 1);
+        return person;
+    }
+
+    Person addPerson(long number, String fullName, Gender gender, int birthYear, Integer deathYear) {
+        long start = Metrics.start();
+        OperationEvent event = beginEvent();
+        Person person = PersonFactory.createPerson(store, number, fullName, gender, birthYear, deathYear);
+        finishEvent(event, start, "addPerson", person.getId(), -1, 1);
         return person;
     }
 
     public void addParentChildRelationship(String parentId, String childId) {
         Person parent = getPerson(parentId);
         Person child = getPerson(childId);
-        parent.addChild(child);
+        LinkEvent event = new LinkEvent();
+        // The cycle check's cost as the link sees it, measured only while the event is recorded
+        int cycleCheckVisited = event.isEnabled()
+                ? store.reachability().searchVisits(child.getIndex(), parent.getIndex()) : 0;
+        long start = Metrics.start();
+        event.begin();
+        boolean linked = false;
+        try {
+            linked = parent.addChild(child);
+        } finally {
+            event.end();
+            Metrics.record("addParentChildRelationship", start);
+            if (event.shouldCommit()) {
+                event.parentId = parentId;
+                event.childId = childId;
+                event.cycleCheckVisited = cycleCheckVisited;
+                event.linked = linked;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Starts a batch load whose relationships are validated once, on commit.
+     */
+    public BulkImport beginBulkImport() {
+        return new BulkImport(this, store);
     }
 
     public void marry(String person1Id, String person2Id, int year) {
+        long start = Metrics.start();
+        OperationEvent event = beginEvent();
         Person person1 = getPerson(person1Id);
         Person person2 = getPerson(person2Id);
 
         if (!person1.marry(person2, year)) {
             throw new IllegalArgumentException("Marriage failed: one or both persons are already married");
         }
+        finishEvent(event, start, "marry", person1Id, -1, 1);
     }
 
     public List<Person> getAncestors(String personId, int generations) {
-        Person person = getPerson(personId);
+        return getAncestors(personId, generations, false);
+    }
+
+    /**
+     * @param unique list each ancestor once, generation by generation, at their minimum
+     *               distance; otherwise an ancestor appears once per path leading to them
+     */
+    public List<Person> getAncestors(String personId, int generations, boolean unique) {
+        long start = Metrics.start();
+        OperationEvent event = beginEvent();
+        List<Person> ancestors = findAncestors(getPerson(personId), generations, unique);
+        finishEvent(event, start, unique ? "getAncestorsUnique" : "getAncestors", personId, generations, ancestors.size());
+        return ancestors;
+    }
+
+    private List<Person> findAncestors(Person person, int generations, boolean unique) {
+        QueryCache.Kind kind = unique ? QueryCache.Kind.UNIQUE_ANCESTORS : QueryCache.Kind.ANCESTORS;
+        if (queryCache != null) {
+            List<Person> cached = queryCache.get(kind, person.getIndex(), generations, null);
+            if (cached != null) return cached;
+        }
+
         List<Person> ancestors = new ArrayList<>();
-        collectAncestors(person, ancestors, 0, generations);
+        new AncestorIterator(person, generations, unique).forEachRemaining(ancestors::add);
+        if (queryCache != null) {
+            queryCache.put(kind, person.getIndex(), generations, null, ancestors);
+        }
         return ancestors;
     }
 
-    private void collectAncestors(Person person, List<Person> ancestors, int currentDepth, int maxDepth) {
-        if (currentDepth > maxDepth) return;
+    public List<Person> getDescendants(String personId, int generations) {
+        long start = Metrics.start();
+        OperationEvent event = beginEvent();
+        List<Person> descendants = findDescendants(getPerson(personId), generations);
+        finishEvent(event, start, "getDescendants", personId, generations, descendants.size());
+        return descendants;
+    }
 
-        if (currentDepth > 0) { // Don't add self for ancestors
-            ancestors.add(person);
+    private List<Person> findDescendants(Person person, int generations) {
+        if (queryCache == null) {
+            return traversalStrategy.traverse(person, generations);
         }
 
-        for (Person parent : person.getParents()) {
-            collectAncestors(parent, ancestors, currentDepth + 1, maxDepth);
+        TraversalStrategy strategy = traversalStrategy;
+        List<Person> cached = queryCache.get(QueryCache.Kind.DESCENDANTS, person.getIndex(), generations, strategy);
+        if (cached != null) return cached;
+        List<Person> descendants = strategy.traverse(person, generations);
+        queryCache.put(QueryCache.Kind.DESCENDANTS, person.getIndex(), generations, strategy, descendants);
+        return descendants;
+    }
+
+    /**
+     * Lazily walks the descendants with the current strategy; nothing beyond what the
+     * caller consumes is visited.
+     */
+    public Stream<Person> streamDescendants(String personId, int generations) {
+        Person person = getPerson(personId);
+        return traversalStrategy.stream(person, generations);
+    }
+
+    /**
+     * Ancestors as of a year: the walk only passes through people born by then, and lists
+     * those of them alive in that year, each once, generation by generation.
+     */
+    public List<Person> getAncestorsAsOf(String personId, int generations, int year) {
+        long start = Metrics.start();
+        OperationEvent event = beginEvent();
+        List<Person> ancestors = walkAsOf(getPerson(personId).getIndex(), generations, year, false);
+        finishEvent(event, start, "getAncestorsAsOf", personId, generations, ancestors.size());
+        return ancestors;
+    }
+
+    /**
+     * Descendants as of a year, like {@link #getAncestorsAsOf}: nobody born after the
+     * year is walked through, so later generations are pruned rather than filtered.
+     */
+    public List<Person> getDescendantsAsOf(String personId, int generations, int year) {
+        long start = Metrics.start();
+        OperationEvent event = beginEvent();
+        List<Person> descendants = walkAsOf(getPerson(personId).getIndex(), generations, year, true);
+        finishEvent(event, start, "getDescendantsAsOf", personId, generations, descendants.size());
+        return descendants;
+    }
+
+    private List<Person> walkAsOf(int start, int generations, int year, boolean downward) {
+        List<Person> result = new ArrayList<>();
+        BitSet seen = new BitSet();
+        IntQueue queue = new IntQueue();
+        seen.set(start);
+        queue.offer(start, 0);
+        while (!queue.isEmpty()) {
+            int current = queue.peekNode();
+            int depth = queue.peekDepth();
+            queue.poll();
+            if (depth >= generations) continue;
+
+            int count = downward ? store.childCount(current) : store.parentCount(current);
+            for (int k = 0; k < count; k++) {
+                int next = downward ? store.child(current, k) : store.parent(current, k);
+                if (seen.get(next) || store.birthYear(next) > year) continue;
+                seen.set(next);
+                int death = store.deathYear(next);
+                if (death == PersonStore.NO_YEAR || death >= year) {
+                    result.add(store.person(next));
+                }
+                queue.offer(next, depth + 1);
+            }
         }
+        return result;
     }
 
-    public List<Person> getDescendants(String personId, int generations) {
+    /**
+     * Opens a cursor over the same ancestors as {@link #getAncestors(String, int, boolean)},
+     * returned pageSize at a time.
+     */
+    public PageCursor openAncestors(String personId, int generations, boolean unique, int pageSize) {
+        long start = Metrics.start();
+        OperationEvent event = beginEvent();
         Person person = getPerson(personId);
-        return traversalStrategy.traverse(person, generations);
+        PageCursor cursor = new PageCursor(store, new AncestorIterator(person, generations, unique), pageSize);
+        finishEvent(event, start, "openAncestors", personId, generations, -1);
+        return cursor;
     }
 
-    public List<Person> getSiblings(String personId) {
+    /**
+     * Opens a cursor over the same descendants as {@link #getDescendants}, walked with
+     * the current strategy and returned pageSize at a time.
+     */
+    public PageCursor openDescendants(String personId, int generations, int pageSize) {
+        long start = Metrics.start();
+        OperationEvent event = beginEvent();
         Person person = getPerson(personId);
+        PageCursor cursor = new PageCursor(store, traversalStrategy.iterator(person, generations), pageSize);
+        finishEvent(event, start, "openDescendants", personId, generations, -1);
+        return cursor;
+    }
+
+    public boolean isAncestor(String ancestorId, String descendantId) {
+        long start = Metrics.start();
+        OperationEvent event = beginEvent();
+        Person ancestor = getPerson(ancestorId);
+        Person descendant = getPerson(descendantId);
+        boolean result = store.isAncestor(ancestor.getIndex(), descendant.getIndex());
+        finishEvent(event, start, "isAncestor", descendantId, -1, result ? 1 : 0);
+        return result;
+    }
+
+    public List<Person> getSiblings(String personId) {
+        long start = Metrics.start();
+        OperationEvent event = beginEvent();
+        int person = getPerson(personId).getIndex();
         List<Person> siblings = new ArrayList<>();
 
-        for (Person parent : person.getParents()) {
-            for (Person child : parent.getChildren()) {
-                if (!child.equals(person) && !siblings.contains(child)) {
-                    siblings.add(child);
+        // Children of the second parent who also have the first were already listed
+        int parentCount = store.parentCount(person);
+        int first = parentCount > 0 ? store.parent(person, 0) : PersonStore.NONE;
+        for (int slot = 0; slot < parentCount; slot++) {
+            int parent = store.parent(person, slot);
+            int childCount = store.childCount(parent);
+            for (int k = 0; k < childCount; k++) {
+                int child = store.child(parent, k);
+                if (child != person && (slot == 0 || !isParent(first, child))) {
+                    siblings.add(store.person(child));
                 }
             }
         }
 
+        finishEvent(event, start, "getSiblings", personId, -1, siblings.size());
+        return siblings;
+    }
+
+    /**
+     * Siblings sharing every known parent, in the order they were linked.
+     */
+    public List<Person> getFullSiblings(String personId) {
+        long start = Metrics.start();
+        OperationEvent event = beginEvent();
+        int person = getPerson(personId).getIndex();
+        FamilyUnits families = store.families();
+        List<Person> siblings = new ArrayList<>();
+        int unit = families.childOf(person);
+        int childCount = unit == PersonStore.NONE ? 0 : families.childCount(unit);
+        for (int i = 0; i < childCount; i++) {
+            int child = families.child(unit, i);
+            if (child != person) siblings.add(store.person(child));
+        }
+        finishEvent(event, start, "getFullSiblings", personId, -1, siblings.size());
+        return siblings;
+    }
+
+    /**
+     * Siblings sharing one parent but not the other, grouped by the family they belong to.
+     */
+    public List<Person> getHalfSiblings(String personId) {
+        long start = Metrics.start();
+        OperationEvent event = beginEvent();
+        int person = getPerson(personId).getIndex();
+        FamilyUnits families = store.families();
+        List<Person> siblings = new ArrayList<>();
+        int own = families.childOf(person);
+        for (int slot = 0; slot < store.parentCount(person); slot++) {
+            int parent = store.parent(person, slot);
+            for (int i = 0; i < families.unitCount(parent); i++) {
+                int unit = families.unit(parent, i);
+                if (unit == own) continue;
+                for (int k = 0; k < families.childCount(unit); k++) {
+                    siblings.add(store.person(families.child(unit, k)));
+                }
+            }
+        }
+        finishEvent(event, start, "getHalfSiblings", personId, -1, siblings.size());
         return siblings;
     }
 
+    /**
+     * Every marriage of a person, current or ended, in the order they took place.
+     */
+    public List<Marriage> getMarriageHistory(String personId) {
+        long start = Metrics.start();
+        OperationEvent event = beginEvent();
+        int person = getPerson(personId).getIndex();
+        FamilyUnits families = store.families();
+        List<int[]> started = new ArrayList<>(); // unit and event position, ordered by log
+        for (int i = 0; i < families.unitCount(person); i++) {
+            int unit = families.unit(person, i);
+            for (int k = 0; k < families.eventCount(unit); k++) {
+                if (families.eventKind(unit, k) == FamilyUnits.MARRIED) {
+                    started.add(new int[] {unit, k, families.eventOrder(unit, k)});
+                }
+            }
+        }
+        started.sort((a, b) -> Integer.compare(a[2], b[2]));
+
+        List<Marriage> history = new ArrayList<>(started.size());
+        for (int[] marriage : started) {
+            int unit = marriage[0];
+            int position = marriage[1];
+            boolean divorced = position + 1 < families.eventCount(unit);
+            history.add(new Marriage(store.person(families.otherPartner(unit, person)),
+                    boxYear(families.eventYear(unit, position)), divorced,
+                    divorced ? boxYear(families.eventYear(unit, position + 1)) : null));
+        }
+        finishEvent(event, start, "getMarriageHistory", personId, -1, history.size());
+        return history;
+    }
+
+    /**
+     * People with whom this person has children, in the order their first child was linked.
+     */
+    public List<Person> getCoParents(String personId) {
+        long start = Metrics.start();
+        OperationEvent event = beginEvent();
+        int person = getPerson(personId).getIndex();
+        FamilyUnits families = store.families();
+        List<Person> coParents = new ArrayList<>();
+        for (int i = 0; i < families.unitCount(person); i++) {
+            int unit = families.unit(person, i);
+            int other = families.otherPartner(unit, person);
+            if (other != PersonStore.NONE && families.childCount(unit) > 0) {
+                coParents.add(store.person(other));
+            }
+        }
+        finishEvent(event, start, "getCoParents", personId, -1, coParents.size());
+        return coParents;
+    }
+
+    public void divorce(String personId, Integer year) {
+        long start = Metrics.start();
+        OperationEvent event = beginEvent();
+        Person person = getPerson(personId);
+        if (person.getSpouse() == null) {
+            throw new IllegalArgumentException("Divorce failed: " + personId + " is not married");
+        }
+        if (year != null) {
+            person.divorce(year);
+        } else {
+            person.divorce();
+        }
+        finishEvent(event, start, "divorce", personId, -1, 1);
+    }
+
+    private boolean isParent(int parent, int child) {
+        return store.parent(child, 0) == parent
+                || (store.parentCount(child) > 1 && store.parent(child, 1) == parent);
+    }
+
+    private static Integer boxYear(int year) {
+        return year != PersonStore.NO_YEAR ? year : null;
+    }
+
     public List<Person> getChildren(String personId) {
+        long start = Metrics.start();
+        OperationEvent event = beginEvent();
         Person person = getPerson(personId);
-        return person.getChildren();
+        List<Person> children = person.getChildren();
+        finishEvent(event, start, "getChildren", personId, -1, children.size());
+        return children;
     }
 
     public Person getSpouse(String personId) {
+        long start = Metrics.start();
+        OperationEvent event = beginEvent();
         Person person = getPerson(personId);
-        return person.getSpouse();
+        Person spouse = person.getSpouse();
+        finishEvent(event, start, "getSpouse", personId, -1, spouse != null ? 1 : 0);
+        return spouse;
+    }
+
+    /**
+     * Kinship analytics over this tree, created on first use and kept in sync with new links.
+     */
+    public synchronized KinshipService getKinshipService() {
+        if (kinshipService == null) {
+            kinshipService = new KinshipService(store);
+        }
+        return kinshipService;
+    }
+
+    /**
+     * Name and year indexes over this tree, built on first use and maintained from then on.
+     */
+    public synchronized PersonIndex getPersonIndex() {
+        if (personIndex == null) {
+            personIndex = new PersonIndex(store);
+        }
+        return personIndex;
+    }
+
+    /**
+     * Everyone matching query, in the order they were added.
+     */
+    public List<Person> find(PersonQuery query) {
+        long start = Metrics.start();
+        OperationEvent event = beginEvent();
+        List<Person> found = getPersonIndex().find(query);
+        finishEvent(event, start, "find", null, -1, found.size());
+        return found;
+    }
+
+    /**
+     * Descendant counts for everyone in this tree, built on first use and maintained
+     * from then on.
+     */
+    public synchronized SubtreeAggregates getSubtreeAggregates() {
+        if (subtreeAggregates == null) {
+            subtreeAggregates = new SubtreeAggregates(store);
+        }
+        return subtreeAggregates;
+    }
+
+    /**
+     * Lifespan and marriage interval indexes over this tree, built on first use and
+     * maintained from then on.
+     */
+    public synchronized TemporalIndex getTemporalIndex() {
+        if (temporalIndex == null) {
+            temporalIndex = new TemporalIndex(store);
+        }
+        return temporalIndex;
+    }
+
+    /**
+     * Integrity scanner with the built-in rules, created on first use and tracking
+     * changes for incremental scans from then on.
+     */
+    public synchronized IntegrityScanner getIntegrityScanner() {
+        if (integrityScanner == null) {
+            integrityScanner = new IntegrityScanner(store);
+        }
+        return integrityScanner;
+    }
+
+    public List<Person> getAliveIn(int year) {
+        long start = Metrics.start();
+        OperationEvent event = beginEvent();
+        List<Person> alive = getTemporalIndex().aliveIn(year);
+        finishEvent(event, start, "getAliveIn", null, -1, alive.size());
+        return alive;
+    }
+
+    /**
+     * People alive at some point between from and to, both inclusive.
+     */
+    public List<Person> getAliveBetween(int from, int to) {
+        long start = Metrics.start();
+        OperationEvent event = beginEvent();
+        List<Person> alive = getTemporalIndex().aliveBetween(from, to);
+        finishEvent(event, start, "getAliveBetween", null, -1, alive.size());
+        return alive;
+    }
+
+    public List<Person> getMarriedIn(int year) {
+        long start = Metrics.start();
+        OperationEvent event = beginEvent();
+        List<Person> married = getTemporalIndex().marriedIn(year);
+        finishEvent(event, start, "getMarriedIn", null, -1, married.size());
+        return married;
+    }
+
+    /**
+     * Number of distinct descendants, each counted once however many lines lead to them.
+     */
+    public int getDescendantCount(String personId) {
+        return getSubtreeAggregates().descendantCount(getPerson(personId).getIndex());
+    }
+
+    public int getLivingDescendantCount(String personId) {
+        return getSubtreeAggregates().livingDescendantCount(getPerson(personId).getIndex());
+    }
+
+    /**
+     * Descendants per generation: element 0 counts children, element 1 grandchildren.
+     */
+    public int[] getGenerationCounts(String personId) {
+        long start = Metrics.start();
+        OperationEvent event = beginEvent();
+        int[] counts = getSubtreeAggregates().generationCounts(getPerson(personId).getIndex());
+        finishEvent(event, start, "getGenerationCounts", personId, -1, counts.length);
+        return counts;
+    }
+
+    private static OperationEvent beginEvent() {
+        OperationEvent event = new OperationEvent();
+        event.begin();
+        return event;
+    }
+
+    private static void finishEvent(OperationEvent event, long start, String operation,
+                                    String personId, int generations, int resultSize) {
+        event.end();
+        Metrics.record(operation, start);
+        if (event.shouldCommit()) {
+            event.operation = operation;
+            event.personId = personId;
+            event.generations = generations;
+            event.resultSize = resultSize;
+            event.commit();
+        }
     }
 
     public Person getPerson(String id) {
-        Person person = people.get(id);
-        if (person == null) {
+        int index = store.indexOf(id);
+        if (index == PersonStore.NONE) {
             throw new IllegalArgumentException("Unknown person ID: " + id);
         }
-        return person;
+        return store.person(index);
     }
 
     public boolean personExists(String id) {
-        return people.containsKey(id);
+        return store.indexOf(id) != PersonStore.NONE;
+    }
+
+    public int size() {
+        return store.size();
+    }
+
+    public PersonStore getStore() {
+        return store;
     }
 }
\ No newline at end of file
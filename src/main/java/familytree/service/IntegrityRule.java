@@ -0,0 +1,27 @@
+package familytree.service;
+
+import familytree.model.PersonStore;
+
+/**
+ * One consistency rule checked by {@link IntegrityScanner}, a person at a time. Rules
+ * see the whole store, so they can compare a person with their parents, children and
+ * spouses; {@link IntegrityRules} has the built-in ones.
+ * <p>
+ * A scan checks different people on several threads at once, so a rule must only read
+ * the store and must be safe to call concurrently.
+ */
+public interface IntegrityRule {
+    /**
+     * Receives the problems a rule finds.
+     */
+    interface Reporter {
+        void report(int person, String message);
+    }
+
+    /**
+     * Name violations are reported under, such as {@code CHILD_BEFORE_PARENT}.
+     */
+    String name();
+
+    void check(PersonStore store, int person, Reporter reporter);
+}
\ No newline at end of file
@@ -0,0 +1,140 @@
+package familytree.service;
+
+import familytree.model.FamilyUnits;
+import familytree.model.PersonStore;
+import java.util.List;
+
+/**
+ * Built-in {@link IntegrityRule}s for the cross-record mistakes that checks at insert
+ * time cannot see.
+ */
+public final class IntegrityRules {
+    public static final int DEFAULT_MINIMUM_MARRIAGE_AGE = 12;
+    public static final int DEFAULT_POSTHUMOUS_YEARS = 1;
+
+    private IntegrityRules() {}
+
+    /**
+     * Every built-in rule with its default limits.
+     */
+    public static List<IntegrityRule> defaults() {
+        return List.of(childBeforeParent(), parentDeadBeforeBirth(DEFAULT_POSTHUMOUS_YEARS),
+                marriedTooYoung(DEFAULT_MINIMUM_MARRIAGE_AGE), spouseMismatch());
+    }
+
+    /**
+     * A person born in the same year as a parent or earlier.
+     */
+    public static IntegrityRule childBeforeParent() {
+        return new IntegrityRule() {
+            @Override
+            public String name() {
+                return "CHILD_BEFORE_PARENT";
+            }
+
+            @Override
+            public void check(PersonStore store, int person, Reporter reporter) {
+                int born = store.birthYear(person);
+                int parentCount = store.parentCount(person);
+                for (int slot = 0; slot < parentCount; slot++) {
+                    int parent = store.parent(person, slot);
+                    if (store.birthYear(parent) >= born) {
+                        reporter.report(person, "born " + born + ", not after parent " + store.id(parent)
+                                + " born " + store.birthYear(parent));
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * A person born more than years after the death of a parent; one year allows for a
+     * father who died before the birth.
+     */
+    public static IntegrityRule parentDeadBeforeBirth(int years) {
+        if (years < 0) {
+            throw new IllegalArgumentException("Years cannot be negative");
+        }
+        return new IntegrityRule() {
+            @Override
+            public String name() {
+                return "PARENT_DEAD_BEFORE_BIRTH";
+            }
+
+            @Override
+            public void check(PersonStore store, int person, Reporter reporter) {
+                int born = store.birthYear(person);
+                int parentCount = store.parentCount(person);
+                for (int slot = 0; slot < parentCount; slot++) {
+                    int parent = store.parent(person, slot);
+                    int died = store.deathYear(parent);
+                    if (died != PersonStore.NO_YEAR && born - died > years) {
+                        reporter.report(person, "born " + born + ", " + (born - died) + " years after parent "
+                                + store.id(parent) + " died in " + died);
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * A marriage, current or past, entered before minimumAge.
+     */
+    public static IntegrityRule marriedTooYoung(int minimumAge) {
+        if (minimumAge < 0) {
+            throw new IllegalArgumentException("Minimum age cannot be negative");
+        }
+        return new IntegrityRule() {
+            @Override
+            public String name() {
+                return "MARRIED_TOO_YOUNG";
+            }
+
+            @Override
+            public void check(PersonStore store, int person, Reporter reporter) {
+                FamilyUnits families = store.families();
+                int born = store.birthYear(person);
+                int unitCount = families.unitCount(person);
+                for (int k = 0; k < unitCount; k++) {
+                    int unit = families.unit(person, k);
+                    int events = families.eventCount(unit);
+                    for (int e = 0; e < events; e++) {
+                        int year = families.eventYear(unit, e);
+                        if (families.eventKind(unit, e) == FamilyUnits.MARRIED && year != PersonStore.NO_YEAR
+                                && year - born < minimumAge) {
+                            reporter.report(person, "married " + store.id(families.otherPartner(unit, person))
+                                    + " in " + year + " at age " + (year - born));
+                        }
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * A spouse who is not married back to the person, or who records another marriage
+     * year.
+     */
+    public static IntegrityRule spouseMismatch() {
+        return new IntegrityRule() {
+            @Override
+            public String name() {
+                return "SPOUSE_MISMATCH";
+            }
+
+            @Override
+            public void check(PersonStore store, int person, Reporter reporter) {
+                int spouse = store.spouse(person);
+                if (spouse == PersonStore.NONE) return;
+                if (spouse < 0 || spouse >= store.size()) {
+                    reporter.report(person, "spouse points outside the tree");
+                } else if (store.spouse(spouse) != person) {
+                    reporter.report(person, "spouse " + store.id(spouse) + " is not married to them");
+                } else if (store.marriageYear(spouse) != store.marriageYear(person)) {
+                    reporter.report(person, "married in " + store.marriageYear(person) + " but spouse "
+                            + store.id(spouse) + " records " + store.marriageYear(spouse));
+                }
+            }
+        };
+    }
+}
\ No newline at end of file
@@ -0,0 +1,222 @@
+package familytree.service;
+
+import familytree.metrics.Metrics;
+import familytree.model.MutationListener;
+import familytree.model.PersonStore;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+/**
+ * Checks every person of a {@link PersonStore} against a set of {@link IntegrityRule}s.
+ * The store is split into fixed ranges of people that are checked in parallel on a
+ * {@link ForkJoinPool}; each range's violations are handed to the caller's sink as soon
+ * as it and every range before it are done, so the report streams out in person order
+ * without the whole of it being held.
+ * <p>
+ * As a listener on the store, the scanner also tracks who changed since the last scan
+ * for {@link #scanChanged}: people added, married or divorced, children given a parent,
+ * and the children of anyone whose death year changed, as those are the records the
+ * built-in rules read. Rules that look further need a full {@link #scan}. The store must
+ * not change while a scan runs; scan a snapshot to run alongside writers.
+ */
+public class IntegrityScanner implements MutationListener {
+    private static final int RANGE_SIZE = 4096;
+
+    private final PersonStore store;
+    private final List<IntegrityRule> rules;
+    private final ForkJoinPool pool;
+    private final BitSet changed = new BitSet(); // guarded by this
+    private int checked;
+    private int violations;
+
+    public IntegrityScanner(PersonStore store) {
+        this(store, IntegrityRules.defaults(), ForkJoinPool.commonPool());
+    }
+
+    public IntegrityScanner(PersonStore store, List<IntegrityRule> rules, ForkJoinPool pool) {
+        this.store = store;
+        this.rules = List.copyOf(rules);
+        this.pool = pool;
+        changed.set(0, store.size());
+        if (!store.isReadOnly()) {
+            store.addMutationListener(this);
+        }
+    }
+
+    @Override
+    public synchronized void personAdded(int index) {
+        changed.set(index);
+    }
+
+    @Override
+    public synchronized void deathYearChanged(int index, int year) {
+        changed.set(index);
+        int childCount = store.childCount(index);
+        for (int k = 0; k < childCount; k++) {
+            changed.set(store.child(index, k));
+        }
+    }
+
+    @Override
+    public synchronized void linked(int parent, int child) {
+        changed.set(child);
+    }
+
+    @Override
+    public synchronized void married(int person1, int person2, int year) {
+        changed.set(person1);
+        changed.set(person2);
+    }
+
+    @Override
+    public synchronized void divorced(int person1, int person2, int year) {
+        changed.set(person1);
+        changed.set(person2);
+    }
+
+    public List<IntegrityRule> getRules() {
+        return rules;
+    }
+
+    /**
+     * Number of people changed since the last scan, whom {@link #scanChanged} would check.
+     */
+    public synchronized int getChangedCount() {
+        return changed.cardinality();
+    }
+
+    /**
+     * Checks everyone, passing each violation to sink in person order. Sink is called
+     * from pool threads, one call at a time.
+     *
+     * @return the number of violations found
+     */
+    public int scan(Consumer<IntegrityViolation> sink) {
+        return scan(null, sink);
+    }
+
+    /**
+     * Checks only the people changed since the last scan, or everyone before the first,
+     * like {@link #scan}.
+     *
+     * @return the number of violations found
+     */
+    public int scanChanged(Consumer<IntegrityViolation> sink) {
+        BitSet targets;
+        synchronized (this) {
+            targets = (BitSet) changed.clone();
+        }
+        return scan(targets, sink);
+    }
+
+    /**
+     * Collects the violations of a full scan.
+     */
+    public List<IntegrityViolation> scan() {
+        List<IntegrityViolation> found = new ArrayList<>();
+        scan(found::add);
+        return found;
+    }
+
+    /**
+     * Number of people checked by the last scan.
+     */
+    public synchronized int getCheckedCount() {
+        return checked;
+    }
+
+    public synchronized int getViolationCount() {
+        return violations;
+    }
+
+    private int scan(BitSet targets, Consumer<IntegrityViolation> sink) {
+        long start = Metrics.start();
+        int size = store.size();
+        int ranges = (size + RANGE_SIZE - 1) / RANGE_SIZE;
+        Delivery delivery = new Delivery(ranges, sink);
+        pool.submit(() -> IntStream.range(0, ranges).parallel().forEach(range -> {
+            Range checker = new Range();
+            int from = range * RANGE_SIZE;
+            int to = Math.min(size, from + RANGE_SIZE);
+            if (targets == null) {
+                for (int person = from; person < to; person++) {
+                    checker.check(person);
+                }
+            } else {
+                for (int person = targets.nextSetBit(from); person >= 0 && person < to;
+                     person = targets.nextSetBit(person + 1)) {
+                    checker.check(person);
+                }
+            }
+            delivery.complete(range, checker);
+        })).join();
+
+        synchronized (this) {
+            if (targets == null) {
+                changed.clear(0, size);
+            } else {
+                changed.andNot(targets);
+            }
+            checked = delivery.checked;
+            violations = delivery.violations;
+        }
+        Metrics.record(targets == null ? "integrity.scan" : "integrity.scanChanged", start);
+        return delivery.violations;
+    }
+
+    /**
+     * Checks the people of one range, keeping what it finds until the range can be
+     * delivered.
+     */
+    private final class Range implements IntegrityRule.Reporter {
+        final List<IntegrityViolation> found = new ArrayList<>();
+        int checked;
+        private String rule;
+
+        void check(int person) {
+            for (IntegrityRule each : rules) {
+                rule = each.name();
+                each.check(store, person, this);
+            }
+            checked++;
+        }
+
+        @Override
+        public void report(int person, String message) {
+            found.add(new IntegrityViolation(store.id(person), rule, message));
+        }
+    }
+
+    /**
+     * Passes finished ranges to the sink strictly in order.
+     */
+    private static final class Delivery {
+        private final Range[] done;
+        private final Consumer<IntegrityViolation> sink;
+        private int next;
+        int checked;
+        int violations;
+
+        Delivery(int ranges, Consumer<IntegrityViolation> sink) {
+            this.done = new Range[ranges];
+            this.sink = sink;
+        }
+
+        synchronized void complete(int index, Range range) {
+            done[index] = range;
+            while (next < done.length && done[next] != null) {
+                Range ready = done[next];
+                done[next++] = null;
+                checked += ready.checked;
+                violations += ready.found.size();
+                for (IntegrityViolation violation : ready.found) {
+                    sink.accept(violation);
+                }
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,25 @@
+package familytree.service;
+
+/**
+ * One problem found by an {@link IntegrityRule}.
+ */
+public final class IntegrityViolation {
+    private final String personId;
+    private final String rule;
+    private final String message;
+
+    public IntegrityViolation(String personId, String rule, String message) {
+        this.personId = personId;
+        this.rule = rule;
+        this.message = message;
+    }
+
+    public String getPersonId() { return personId; }
+    public String getRule() { return rule; }
+    public String getMessage() { return message; }
+
+    @Override
+    public String toString() {
+        return personId + " " + rule + ": " + message;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,148 @@
+package familytree.service;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Closed year intervals [start, end], each tagged with an int, in a treap ordered by
+ * (start, tag) where every node also keeps the largest end below it. A stabbing or
+ * overlap query descends only into subtrees whose largest end reaches the query, so it
+ * costs O(log n + k) for k matches; inserts and end changes cost O(log n) expected.
+ * Nodes live in parallel primitive arrays.
+ */
+class IntervalTree {
+    interface Visitor {
+        void visit(int tag, int start, int end);
+    }
+
+    private static final int NONE = -1;
+
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private int[] tags = new int[16];
+    private int[] maxEnds = new int[16];
+    private int[] priorities = new int[16];
+    private int[] lefts = new int[16];
+    private int[] rights = new int[16];
+    private int size;
+    private int root = NONE;
+    private final Random random = new Random(0x1D5);
+    private int[] path = new int[64];
+
+    int size() {
+        return size;
+    }
+
+    void insert(int tag, int start, int end) {
+        if (size == starts.length) grow();
+        int node = size++;
+        starts[node] = start;
+        ends[node] = end;
+        tags[node] = tag;
+        maxEnds[node] = end;
+        priorities[node] = random.nextInt();
+        lefts[node] = NONE;
+        rights[node] = NONE;
+        root = insert(root, node);
+    }
+
+    /**
+     * Changes the end of the interval stored for (start, tag).
+     *
+     * @return false if there is no such interval
+     */
+    boolean updateEnd(int tag, int start, int end) {
+        int depth = 0;
+        int node = root;
+        while (node != NONE) {
+            if (depth == path.length) path = Arrays.copyOf(path, depth * 2);
+            path[depth++] = node;
+            int order = compare(start, tag, node);
+            if (order == 0) break;
+            node = order < 0 ? lefts[node] : rights[node];
+        }
+        if (node == NONE) return false;
+        ends[node] = end;
+        for (int i = depth - 1; i >= 0; i--) {
+            update(path[i]);
+        }
+        return true;
+    }
+
+    /**
+     * Visits every interval containing year, in (start, tag) order.
+     */
+    void stab(int year, Visitor visitor) {
+        overlap(root, year, year, visitor);
+    }
+
+    /**
+     * Visits every interval sharing at least one year with [from, to], in (start, tag) order.
+     */
+    void overlap(int from, int to, Visitor visitor) {
+        overlap(root, from, to, visitor);
+    }
+
+    private void overlap(int node, int from, int to, Visitor visitor) {
+        while (node != NONE && maxEnds[node] >= from) {
+            overlap(lefts[node], from, to, visitor);
+            if (starts[node] > to) return; // everything to the right starts later still
+            if (ends[node] >= from) {
+                visitor.visit(tags[node], starts[node], ends[node]);
+            }
+            node = rights[node];
+        }
+    }
+
+    private int insert(int subtree, int node) {
+        if (subtree == NONE) return node;
+        if (compare(starts[node], tags[node], subtree) < 0) {
+            lefts[subtree] = insert(lefts[subtree], node);
+            if (priorities[lefts[subtree]] > priorities[subtree]) subtree = rotateRight(subtree);
+        } else {
+            rights[subtree] = insert(rights[subtree], node);
+            if (priorities[rights[subtree]] > priorities[subtree]) subtree = rotateLeft(subtree);
+        }
+        update(subtree);
+        return subtree;
+    }
+
+    private int rotateRight(int node) {
+        int left = lefts[node];
+        lefts[node] = rights[left];
+        rights[left] = node;
+        update(node);
+        return left;
+    }
+
+    private int rotateLeft(int node) {
+        int right = rights[node];
+        rights[node] = lefts[right];
+        lefts[right] = node;
+        update(node);
+        return right;
+    }
+
+    private void update(int node) {
+        int max = ends[node];
+        if (lefts[node] != NONE) max = Math.max(max, maxEnds[lefts[node]]);
+        if (rights[node] != NONE) max = Math.max(max, maxEnds[rights[node]]);
+        maxEnds[node] = max;
+    }
+
+    private int compare(int start, int tag, int node) {
+        int order = Integer.compare(start, starts[node]);
+        return order != 0 ? order : Integer.compare(tag, tags[node]);
+    }
+
+    private void grow() {
+        int capacity = size * 2;
+        starts = Arrays.copyOf(starts, capacity);
+        ends = Arrays.copyOf(ends, capacity);
+        tags = Arrays.copyOf(tags, capacity);
+        maxEnds = Arrays.copyOf(maxEnds, capacity);
+        priorities = Arrays.copyOf(priorities, capacity);
+        lefts = Arrays.copyOf(lefts, capacity);
+        rights = Arrays.copyOf(rights, capacity);
+    }
+}
\ No newline at end of file
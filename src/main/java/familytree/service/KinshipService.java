@@ -0,0 +1,311 @@
+package familytree.service;
+
+import familytree.model.MutationListener;
+import familytree.model.PersonStore;
+import familytree.model.ReachabilityIndex;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * Kinship and inbreeding coefficients over the parent links of a {@link PersonStore}.
+ * <p>
+ * Uses the recursive definition: a person's kinship with themselves is (1 + F) / 2,
+ * where F, their inbreeding coefficient, is the kinship of their two parents; for two
+ * different people, the one later in topological order (who cannot be an ancestor of
+ * the other) is replaced by the mean over their parents, with unknown parents counted
+ * as unrelated founders. Every pair evaluated is memoized, and the recursion runs on
+ * an explicit stack so deep pedigrees cannot overflow the thread stack.
+ * <p>
+ * The memo is a lossy hash table of primitive longs that grows with use up to a fixed
+ * number of pairs; past that, a new pair overwrites whichever shared its slot, so a
+ * memo that is too small costs recomputation, never a wrong answer.
+ * <p>
+ * Batch queries run on a {@link ForkJoinPool} and share the memo. Inbreeding for
+ * everyone is computed generation by generation, so each generation finds its
+ * ancestors' values already cached. The memo is dropped whenever a link is added.
+ * The store must not change while a query runs; query a snapshot to run alongside
+ * writers.
+ */
+public class KinshipService implements MutationListener {
+    public static final int DEFAULT_MEMO_CAPACITY = 1 << 20; // pairs, 16 bytes each
+
+    private final PersonStore store;
+    private final ForkJoinPool pool;
+    private final Memo memo;
+
+    public KinshipService(PersonStore store) {
+        this(store, ForkJoinPool.commonPool());
+    }
+
+    public KinshipService(PersonStore store, ForkJoinPool pool) {
+        this(store, pool, DEFAULT_MEMO_CAPACITY);
+    }
+
+    /**
+     * @param memoCapacity most pairs memoized at once, rounded up to a power of two
+     */
+    public KinshipService(PersonStore store, ForkJoinPool pool, int memoCapacity) {
+        if (memoCapacity < 1 || memoCapacity > 1 << 30) {
+            throw new IllegalArgumentException("Memo capacity must be between 1 and 2^30");
+        }
+        this.store = store;
+        this.pool = pool;
+        this.memo = new Memo(memoCapacity == 1 ? 1 : Integer.highestOneBit(memoCapacity - 1) << 1);
+        if (!store.isReadOnly()) {
+            store.addMutationListener(this);
+        }
+    }
+
+    @Override
+    public void linked(int parent, int child) {
+        memo.clear();
+    }
+
+    public void clearCache() {
+        memo.clear();
+    }
+
+    public int cachedPairs() {
+        return memo.size();
+    }
+
+    /**
+     * Probability that alleles drawn at random from a and b are identical by descent.
+     */
+    public double kinship(int a, int b) {
+        double cached = memo.get(key(a, b));
+        return !Double.isNaN(cached) ? cached : evaluate(a, b);
+    }
+
+    /**
+     * Inbreeding coefficient F: the kinship of the person's two parents, or 0 unless
+     * both are known.
+     */
+    public double inbreeding(int person) {
+        if (store.parentCount(person) < 2) return 0.0;
+        return kinship(store.parent(person, 0), store.parent(person, 1));
+    }
+
+    /**
+     * Coefficient of relationship, 2 * kinship scaled by both people's inbreeding;
+     * 0.5 for parent and child or full siblings in an outbred pedigree.
+     */
+    public double relationship(int a, int b) {
+        if (a == b) return 1.0;
+        double scale = Math.sqrt((1 + inbreeding(a)) * (1 + inbreeding(b)));
+        return 2 * kinship(a, b) / scale;
+    }
+
+    /**
+     * Inbreeding coefficient of every person, indexed like the store.
+     */
+    public double[] inbreedingAll() {
+        int size = store.size();
+        double[] result = new double[size];
+        int[][] generations = generations(size);
+        for (int[] generation : generations) {
+            pool.submit(() -> IntStream.range(0, generation.length).parallel()
+                    .forEach(i -> result[generation[i]] = inbreeding(generation[i]))).join();
+        }
+        return result;
+    }
+
+    /**
+     * Kinship of every pair within people: result[i][j] is the kinship of people[i]
+     * and people[j].
+     */
+    public double[][] kinshipMatrix(int[] people) {
+        int count = people.length;
+        double[][] result = new double[count][count];
+        pool.submit(() -> IntStream.range(0, count).parallel().forEach(i -> {
+            for (int j = i; j < count; j++) {
+                result[i][j] = kinship(people[i], people[j]);
+            }
+        })).join();
+        for (int i = 0; i < count; i++) {
+            for (int j = 0; j < i; j++) {
+                result[i][j] = result[j][i];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Evaluates a pair depth-first. Each frame keeps the sum of the dependencies it has
+     * collected so far, so a value evicted from the memo meanwhile is never needed again.
+     */
+    private double evaluate(int a, int b) {
+        ReachabilityIndex order = store.reachability();
+        long[] pairs = new long[16];
+        int[] next = new int[16]; // next dependency of each frame
+        double[] sums = new double[16];
+        int top = 0;
+        pairs[top++] = key(a, b);
+        double value = 0.0;
+        boolean returned = false;
+
+        while (top > 0) {
+            int frame = top - 1;
+            if (returned) {
+                sums[frame] += value;
+                returned = false;
+            }
+            long pair = pairs[frame];
+            int x = (int) (pair >>> 32);
+            int y = (int) pair;
+            if (order.order(x) < order.order(y)) {
+                int swap = x;
+                x = y;
+                y = swap;
+            }
+
+            // x's value depends on its parents' kinship, or each parent's kinship with y
+            int parentCount = store.parentCount(x);
+            int dependencies = x == y ? (parentCount == 2 ? 1 : 0) : parentCount;
+            if (next[frame] < dependencies) {
+                int slot = next[frame]++;
+                long dependency = x == y
+                        ? key(store.parent(x, 0), store.parent(x, 1))
+                        : key(store.parent(x, slot), y);
+                double cached = memo.get(dependency);
+                if (!Double.isNaN(cached)) {
+                    sums[frame] += cached;
+                } else {
+                    if (top == pairs.length) {
+                        pairs = Arrays.copyOf(pairs, top * 2);
+                        next = Arrays.copyOf(next, top * 2);
+                        sums = Arrays.copyOf(sums, top * 2);
+                    }
+                    pairs[top] = dependency;
+                    next[top] = 0;
+                    sums[top] = 0.0;
+                    top++;
+                }
+                continue;
+            }
+
+            value = x == y ? (1 + sums[frame]) / 2 : sums[frame] / 2;
+            memo.put(pair, value);
+            returned = true;
+            top--;
+        }
+        return value;
+    }
+
+    /**
+     * Groups people by generation: founders first, then everyone whose parents all
+     * belong to earlier groups.
+     */
+    private int[][] generations(int size) {
+        ReachabilityIndex order = store.reachability();
+        int[] byOrder = new int[size];
+        for (int i = 0; i < size; i++) {
+            byOrder[order.order(i)] = i;
+        }
+
+        int[] generation = new int[size];
+        int deepest = 0;
+        for (int position = 0; position < size; position++) {
+            int person = byOrder[position];
+            int parentCount = store.parentCount(person);
+            for (int slot = 0; slot < parentCount; slot++) {
+                generation[person] = Math.max(generation[person], generation[store.parent(person, slot)] + 1);
+            }
+            deepest = Math.max(deepest, generation[person]);
+        }
+
+        int[] counts = new int[deepest + 1];
+        for (int i = 0; i < size; i++) {
+            counts[generation[i]]++;
+        }
+        int[][] groups = new int[size > 0 ? deepest + 1 : 0][];
+        for (int g = 0; g < groups.length; g++) {
+            groups[g] = new int[counts[g]];
+        }
+        Arrays.fill(counts, 0);
+        for (int i = 0; i < size; i++) {
+            int g = generation[i];
+            groups[g][counts[g]++] = i;
+        }
+        return groups;
+    }
+
+    private static long key(int a, int b) {
+        return a <= b ? ((long) a << 32) | b : ((long) b << 32) | a;
+    }
+
+    /**
+     * Pair values in an open hash table of longs, one slot per pair and no probing. A
+     * slot holds {@code ~key ^ bits} next to {@code bits}, the value's raw bits, so an
+     * empty slot or one torn by a concurrent write reads as a miss rather than a wrong
+     * value. The table doubles, rehashing what it holds, while it is under capacity and
+     * three quarters full.
+     */
+    private static final class Memo {
+        private static final int INITIAL_PAIRS = 1 << 12;
+
+        private final int capacity;
+        private final AtomicInteger filled = new AtomicInteger();
+        private volatile long[] slots;
+
+        Memo(int capacity) {
+            this.capacity = capacity;
+            this.slots = new long[2 * Math.min(capacity, INITIAL_PAIRS)];
+        }
+
+        /**
+         * @return the value memoized for key, or NaN if there is none
+         */
+        double get(long key) {
+            long[] table = slots;
+            int i = slot(key, table);
+            long bits = table[i + 1];
+            return (table[i] ^ bits) == ~key ? Double.longBitsToDouble(bits) : Double.NaN;
+        }
+
+        void put(long key, double value) {
+            long[] table = slots;
+            int i = slot(key, table);
+            long bits = Double.doubleToRawLongBits(value);
+            boolean empty = table[i] == 0 && table[i + 1] == 0;
+            table[i] = ~key ^ bits;
+            table[i + 1] = bits;
+            if (empty && filled.incrementAndGet() > table.length / 8 * 3 && table.length / 2 < capacity) {
+                grow(table);
+            }
+        }
+
+        int size() {
+            return filled.get();
+        }
+
+        synchronized void clear() {
+            if (filled.get() == 0) return;
+            slots = new long[2 * Math.min(capacity, INITIAL_PAIRS)];
+            filled.set(0);
+        }
+
+        private synchronized void grow(long[] from) {
+            if (slots != from) return;
+            long[] table = new long[from.length * 2];
+            int count = 0;
+            for (int i = 0; i < from.length; i += 2) {
+                if (from[i] == 0 && from[i + 1] == 0) continue;
+                long key = ~(from[i] ^ from[i + 1]);
+                int j = slot(key, table);
+                if (table[j] == 0 && table[j + 1] == 0) count++;
+                table[j] = from[i];
+                table[j + 1] = from[i + 1];
+            }
+            filled.set(count);
+            slots = table;
+        }
+
+        private static int slot(long key, long[] table) {
+            int hash = (int) ((key * 0x9E3779B97F4A7C15L) >>> 32);
+            return (hash & (table.length / 2 - 1)) * 2;
+        }
+    }
+}
\ No newline at end of file
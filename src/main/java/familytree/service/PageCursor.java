@@ -0,0 +1,70 @@
+package familytree.service;
+
+import familytree.model.Person;
+import familytree.model.PersonStore;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Returns the result of one traversal a page at a time. The cursor holds only the
+ * paused walk, such as a depth-first stack no deeper than the generations walked, so
+ * each page continues where the previous one stopped instead of recomputing the pages
+ * before it. Strategies without an incremental walk are run once, on the first page.
+ * <p>
+ * A cursor is tied to the relationships it was opened on: once a link is added to the
+ * store, further pages throw {@link IllegalStateException} and the query has to be
+ * opened again. Cursors over a snapshot store never expire.
+ */
+public class PageCursor {
+    private final PersonStore store;
+    private final Iterator<Person> people;
+    private final int pageSize;
+    private final int links;
+    private int returned;
+
+    PageCursor(PersonStore store, Iterator<Person> people, int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be at least 1");
+        }
+        this.store = store;
+        this.people = people;
+        this.pageSize = pageSize;
+        this.links = store.linkCount();
+    }
+
+    /**
+     * The next page: pageSize people, fewer on the last page, empty once exhausted.
+     */
+    public List<Person> nextPage() {
+        checkCurrent();
+        List<Person> page = new ArrayList<>(Math.min(pageSize, 1024));
+        while (page.size() < pageSize && people.hasNext()) {
+            page.add(people.next());
+        }
+        returned += page.size();
+        return page;
+    }
+
+    public boolean hasNext() {
+        checkCurrent();
+        return people.hasNext();
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * Number of people returned by all pages so far.
+     */
+    public int getReturned() {
+        return returned;
+    }
+
+    private void checkCurrent() {
+        if (store.linkCount() != links) {
+            throw new IllegalStateException("The tree changed since this query started; run it again");
+        }
+    }
+}
\ No newline at end of file
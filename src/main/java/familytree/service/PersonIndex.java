@@ -0,0 +1,264 @@
+package familytree.service;
+
+import familytree.model.MutationListener;
+import familytree.model.Person;
+import familytree.model.PersonStore;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Secondary indexes over a {@link PersonStore}, kept up to date as people are added
+ * and their death years change.
+ * <p>
+ * Names are split into lower-case words; a sorted token index maps every word, and a
+ * second one every surname (the last word), to the people carrying it, so a prefix
+ * search is a range of the sorted keys. Birth and death years each have a
+ * {@link YearIndex} for range queries, and a count of the deceased sizes living and
+ * deceased filters.
+ * <p>
+ * {@link #find} starts from whichever condition of the query is expected to match the
+ * fewest people, and checks the remaining conditions against each of those candidates.
+ */
+public class PersonIndex implements MutationListener {
+    private final PersonStore store;
+    private final TreeMap<String, Postings> words = new TreeMap<>();
+    private final TreeMap<String, Postings> surnames = new TreeMap<>();
+    private final YearIndex births = new YearIndex();
+    private final YearIndex deaths = new YearIndex();
+    private final BitSet indexedDeaths = new BitSet();
+    private final YearIndex.Current anyBirth = (person, year) -> true;
+    private final YearIndex.Current currentDeath;
+    private int deceased;
+
+    public PersonIndex(PersonStore store) {
+        this.store = store;
+        this.currentDeath = (person, year) -> store.deathYear(person) == year;
+        for (int i = 0; i < store.size(); i++) {
+            personAdded(i);
+        }
+        if (!store.isReadOnly()) {
+            store.addMutationListener(this);
+        }
+    }
+
+    @Override
+    public synchronized void personAdded(int index) {
+        String[] tokens = tokenize(store.fullName(index));
+        for (int i = 0; i < tokens.length; i++) {
+            if (indexOf(tokens, tokens[i], i) == i) {
+                words.computeIfAbsent(tokens[i], token -> new Postings()).add(index);
+            }
+        }
+        if (tokens.length > 0) {
+            surnames.computeIfAbsent(tokens[tokens.length - 1], token -> new Postings()).add(index);
+        }
+        births.add(index, store.birthYear(index));
+        if (!store.isAlive(index)) {
+            deathYearChanged(index, store.deathYear(index));
+        }
+    }
+
+    @Override
+    public synchronized void deathYearChanged(int index, int year) {
+        if (indexedDeaths.get(index)) {
+            deaths.invalidate();
+            if (year == PersonStore.NO_YEAR) {
+                indexedDeaths.clear(index);
+                deceased--;
+            }
+        } else if (year != PersonStore.NO_YEAR) {
+            indexedDeaths.set(index);
+            deceased++;
+        }
+        if (year != PersonStore.NO_YEAR) {
+            deaths.add(index, year);
+        }
+    }
+
+    public synchronized int getDeceasedCount() {
+        return deceased;
+    }
+
+    public synchronized List<Person> find(PersonQuery query) {
+        List<PersonQuery.Condition> conditions = query.conditions();
+        int limit = query.limit();
+        List<Person> result = new ArrayList<>();
+        if (limit == 0) return result;
+
+        PersonQuery.Condition driver = null;
+        int best = store.size();
+        for (PersonQuery.Condition condition : conditions) {
+            int estimate = estimate(condition);
+            if (estimate < best || driver == null) {
+                best = estimate;
+                driver = condition;
+            }
+        }
+
+        if (driver == null) {
+            for (int i = 0; i < store.size() && result.size() < limit; i++) {
+                result.add(store.person(i));
+            }
+            return result;
+        }
+        for (int person : candidates(driver)) {
+            if (matchesAll(conditions, driver, person)) {
+                result.add(store.person(person));
+                if (result.size() == limit) break;
+            }
+        }
+        return result;
+    }
+
+    public synchronized int count(PersonQuery query) {
+        return find(query.limit(Integer.MAX_VALUE)).size();
+    }
+
+    private int estimate(PersonQuery.Condition condition) {
+        switch (condition.kind) {
+            case NAME:
+                return postingCount(prefixRange(words, condition.prefix));
+            case SURNAME:
+                return postingCount(prefixRange(surnames, condition.prefix));
+            case BORN:
+                return births.estimate(condition.from, condition.to);
+            case DIED:
+                return deaths.estimate(condition.from, condition.to);
+            case LIVING:
+                return store.size() - deceased;
+            case DECEASED:
+                return deceased;
+            default:
+                throw new IllegalArgumentException("Unknown condition: " + condition.kind);
+        }
+    }
+
+    /**
+     * People matching condition, in ascending order.
+     */
+    private int[] candidates(PersonQuery.Condition condition) {
+        switch (condition.kind) {
+            case NAME:
+                return union(prefixRange(words, condition.prefix));
+            case SURNAME:
+                return union(prefixRange(surnames, condition.prefix));
+            case BORN:
+                return births.range(condition.from, condition.to, anyBirth);
+            case DIED:
+                return deaths.range(condition.from, condition.to, currentDeath);
+            default:
+                int[] people = new int[store.size()];
+                int count = 0;
+                boolean living = condition.kind == PersonQuery.Kind.LIVING;
+                for (int i = 0; i < people.length; i++) {
+                    if (store.isAlive(i) == living) people[count++] = i;
+                }
+                return Arrays.copyOf(people, count);
+        }
+    }
+
+    private boolean matchesAll(List<PersonQuery.Condition> conditions, PersonQuery.Condition skip, int person) {
+        for (PersonQuery.Condition condition : conditions) {
+            if (condition != skip && !matches(condition, person)) return false;
+        }
+        return true;
+    }
+
+    private boolean matches(PersonQuery.Condition condition, int person) {
+        switch (condition.kind) {
+            case NAME:
+                for (String token : tokenize(store.fullName(person))) {
+                    if (token.startsWith(condition.prefix)) return true;
+                }
+                return false;
+            case SURNAME:
+                String[] tokens = tokenize(store.fullName(person));
+                return tokens.length > 0 && tokens[tokens.length - 1].startsWith(condition.prefix);
+            case BORN:
+                int born = store.birthYear(person);
+                return born >= condition.from && born <= condition.to;
+            case DIED:
+                int died = store.deathYear(person);
+                return died != PersonStore.NO_YEAR && died >= condition.from && died <= condition.to;
+            case LIVING:
+                return store.isAlive(person);
+            case DECEASED:
+                return !store.isAlive(person);
+            default:
+                throw new IllegalArgumentException("Unknown condition: " + condition.kind);
+        }
+    }
+
+    private static NavigableMap<String, Postings> prefixRange(TreeMap<String, Postings> index, String prefix) {
+        return index.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+    }
+
+    private static int postingCount(NavigableMap<String, Postings> range) {
+        int count = 0;
+        for (Postings postings : range.values()) {
+            count += postings.size;
+        }
+        return count;
+    }
+
+    private static int[] union(NavigableMap<String, Postings> range) {
+        if (range.size() == 1) {
+            Postings only = range.firstEntry().getValue();
+            return Arrays.copyOf(only.people, only.size);
+        }
+        BitSet people = new BitSet();
+        for (Postings postings : range.values()) {
+            for (int i = 0; i < postings.size; i++) {
+                people.set(postings.people[i]);
+            }
+        }
+        return people.stream().toArray();
+    }
+
+    /**
+     * Lower-case words of a name, split at every character that is not a letter or digit.
+     */
+    static String[] tokenize(String name) {
+        if (name == null) return new String[0];
+        String lower = name.toLowerCase(Locale.ROOT);
+        List<String> tokens = new ArrayList<>(4);
+        int start = -1;
+        for (int i = 0; i <= lower.length(); i++) {
+            boolean word = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+            if (word && start < 0) {
+                start = i;
+            } else if (!word && start >= 0) {
+                tokens.add(lower.substring(start, i));
+                start = -1;
+            }
+        }
+        return tokens.toArray(new String[0]);
+    }
+
+    private static int indexOf(String[] tokens, String token, int limit) {
+        for (int i = 0; i < limit; i++) {
+            if (tokens[i].equals(token)) return i;
+        }
+        return limit;
+    }
+
+    /**
+     * People carrying one token, in the order they were added, which is ascending.
+     */
+    private static final class Postings {
+        int[] people = new int[2];
+        int size;
+
+        void add(int person) {
+            if (size == people.length) {
+                people = Arrays.copyOf(people, size * 2);
+            }
+            people[size++] = person;
+        }
+    }
+}
\ No newline at end of file
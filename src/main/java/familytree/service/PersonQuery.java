@@ -0,0 +1,133 @@
+package familytree.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Immutable description of a search run by {@link PersonIndex#find}: every condition
+ * added must hold. Each method returns a new query, so a base query can be refined in
+ * several directions.
+ * <pre>
+ * PersonQuery.all().surnameStartsWith("smith").bornBetween(1850, 1870).living()
+ * </pre>
+ */
+public final class PersonQuery {
+    enum Kind { NAME, SURNAME, BORN, DIED, LIVING, DECEASED }
+
+    static final class Condition {
+        final Kind kind;
+        final String prefix;
+        final int from;
+        final int to;
+
+        Condition(Kind kind, String prefix, int from, int to) {
+            this.kind = kind;
+            this.prefix = prefix;
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+    private static final PersonQuery ALL = new PersonQuery(Collections.emptyList(), Integer.MAX_VALUE);
+
+    private final List<Condition> conditions;
+    private final int limit;
+
+    private PersonQuery(List<Condition> conditions, int limit) {
+        this.conditions = conditions;
+        this.limit = limit;
+    }
+
+    /**
+     * Matches everyone; the starting point of every query.
+     */
+    public static PersonQuery all() {
+        return ALL;
+    }
+
+    /**
+     * Some word of the full name starts with prefix, ignoring case.
+     */
+    public PersonQuery nameStartsWith(String prefix) {
+        return with(new Condition(Kind.NAME, normalize(prefix), 0, 0));
+    }
+
+    /**
+     * The last word of the full name starts with prefix, ignoring case.
+     */
+    public PersonQuery surnameStartsWith(String prefix) {
+        return with(new Condition(Kind.SURNAME, normalize(prefix), 0, 0));
+    }
+
+    /**
+     * Born within [from, to], both inclusive.
+     */
+    public PersonQuery bornBetween(int from, int to) {
+        return with(new Condition(Kind.BORN, null, from, checkRange(from, to)));
+    }
+
+    /**
+     * Died within [from, to], both inclusive.
+     */
+    public PersonQuery diedBetween(int from, int to) {
+        return with(new Condition(Kind.DIED, null, from, checkRange(from, to)));
+    }
+
+    public PersonQuery living() {
+        return with(new Condition(Kind.LIVING, null, 0, 0));
+    }
+
+    public PersonQuery deceased() {
+        return with(new Condition(Kind.DECEASED, null, 0, 0));
+    }
+
+    /**
+     * Matches people who match both queries, up to the smaller of the two limits.
+     */
+    public PersonQuery and(PersonQuery other) {
+        List<Condition> combined = new ArrayList<>(conditions);
+        combined.addAll(other.conditions);
+        return new PersonQuery(Collections.unmodifiableList(combined), Math.min(limit, other.limit));
+    }
+
+    /**
+     * Stops after count matches, the ones with the lowest store indexes.
+     */
+    public PersonQuery limit(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Limit cannot be negative");
+        }
+        return new PersonQuery(conditions, count);
+    }
+
+    List<Condition> conditions() {
+        return conditions;
+    }
+
+    int limit() {
+        return limit;
+    }
+
+    private PersonQuery with(Condition condition) {
+        List<Condition> combined = new ArrayList<>(conditions.size() + 1);
+        combined.addAll(conditions);
+        combined.add(condition);
+        return new PersonQuery(Collections.unmodifiableList(combined), limit);
+    }
+
+    private static String normalize(String prefix) {
+        if (prefix == null || prefix.trim().isEmpty()) {
+            throw new IllegalArgumentException("Name prefix cannot be empty");
+        }
+        return prefix.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static int checkRange(int from, int to) {
+        if (from > to) {
+            throw new IllegalArgumentException("Invalid year range: " + from + "-" + to);
+        }
+        return to;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,208 @@
+package familytree.service;
+
+import familytree.model.MutationListener;
+import familytree.model.Person;
+import familytree.model.PersonStore;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Bounded LRU cache of ancestor and descendant query results for one {@link PersonStore}.
+ * <p>
+ * Every person carries two epochs, bumped when they gain a parent or a child. An entry
+ * remembers the epochs of every person its walk passed through and is served only if
+ * none of them moved, so a new link invalidates exactly the entries whose subgraph it
+ * touches and a mutation costs O(1). When no link at all has been added since an entry
+ * was stored, the per-person check is skipped.
+ * <p>
+ * The capacity bounds the total number of people held across all entries; least
+ * recently used entries are evicted first.
+ */
+public class QueryCache implements MutationListener {
+    public static final int DEFAULT_CAPACITY = 100_000;
+
+    enum Kind { ANCESTORS, UNIQUE_ANCESTORS, DESCENDANTS }
+
+    private final int capacity;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private int weight;
+
+    private int[] parentEpochs;
+    private int[] childEpochs;
+    private long links;
+
+    private long hits;
+    private long misses;
+    private long invalidations;
+    private long evictions;
+
+    public QueryCache(PersonStore store, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Cache capacity must be at least 1");
+        }
+        this.capacity = capacity;
+        this.parentEpochs = new int[Math.max(16, store.size())];
+        this.childEpochs = new int[parentEpochs.length];
+    }
+
+    @Override
+    public synchronized void personAdded(int index) {
+        if (index >= parentEpochs.length) {
+            parentEpochs = Arrays.copyOf(parentEpochs, Math.max(index + 1, parentEpochs.length * 2));
+            childEpochs = Arrays.copyOf(childEpochs, parentEpochs.length);
+        }
+    }
+
+    @Override
+    public synchronized void linked(int parent, int child) {
+        childEpochs[parent]++;
+        parentEpochs[child]++;
+        links++;
+    }
+
+    /**
+     * @return a copy of the cached result, or null on a miss
+     */
+    synchronized List<Person> get(Kind kind, int person, int generations, Object variant) {
+        Key key = new Key(kind, person, generations, variant);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        if (entry.links != links && !isCurrent(entry, kind == Kind.DESCENDANTS ? childEpochs : parentEpochs)) {
+            remove(key, entry);
+            invalidations++;
+            misses++;
+            return null;
+        }
+        entry.links = links;
+        hits++;
+        return new ArrayList<>(entry.result);
+    }
+
+    synchronized void put(Kind kind, int person, int generations, Object variant, List<Person> result) {
+        int size = result.size() + 1;
+        if (size > capacity) return;
+
+        int[] epochs = kind == Kind.DESCENDANTS ? childEpochs : parentEpochs;
+        BitSet seen = new BitSet();
+        int[] nodes = new int[size];
+        int count = 0;
+        nodes[count++] = person;
+        seen.set(person);
+        for (Person member : result) {
+            int index = member.getIndex();
+            if (!seen.get(index)) {
+                seen.set(index);
+                nodes[count++] = index;
+            }
+        }
+        nodes = Arrays.copyOf(nodes, count);
+        int[] snapshot = new int[count];
+        for (int i = 0; i < count; i++) {
+            snapshot[i] = epochs[nodes[i]];
+        }
+
+        Key key = new Key(kind, person, generations, variant);
+        Entry previous = entries.remove(key);
+        if (previous != null) weight -= previous.result.size() + 1;
+        entries.put(key, new Entry(new ArrayList<>(result), nodes, snapshot, links));
+        weight += size;
+        evict();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    public synchronized int size() { return entries.size(); }
+    public synchronized long getHits() { return hits; }
+    public synchronized long getMisses() { return misses; }
+    public synchronized long getInvalidations() { return invalidations; }
+    public synchronized long getEvictions() { return evictions; }
+
+    public synchronized double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0.0 : (double) hits / lookups;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("entries=%d, people=%d/%d, hits=%d, misses=%d, hit rate=%.1f%%, invalidations=%d, evictions=%d",
+                entries.size(), weight, capacity, hits, misses, getHitRate() * 100, invalidations, evictions);
+    }
+
+    private static boolean isCurrent(Entry entry, int[] epochs) {
+        int[] nodes = entry.nodes;
+        int[] snapshot = entry.epochs;
+        for (int i = 0; i < nodes.length; i++) {
+            if (epochs[nodes[i]] != snapshot[i]) return false;
+        }
+        return true;
+    }
+
+    private void remove(Key key, Entry entry) {
+        entries.remove(key);
+        weight -= entry.result.size() + 1;
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+        while (weight > capacity && eldest.hasNext()) {
+            Entry entry = eldest.next().getValue();
+            eldest.remove();
+            weight -= entry.result.size() + 1;
+            evictions++;
+        }
+    }
+
+    private static final class Key {
+        private final Kind kind;
+        private final int person;
+        private final int generations;
+        private final Object variant;
+
+        Key(Kind kind, int person, int generations, Object variant) {
+            this.kind = kind;
+            this.person = person;
+            this.generations = generations;
+            this.variant = variant;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return kind == key.kind && person == key.person && generations == key.generations
+                    && variant == key.variant;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(kind, person, generations, System.identityHashCode(variant));
+        }
+    }
+
+    private static final class Entry {
+        final List<Person> result;
+        final int[] nodes;
+        final int[] epochs;
+        long links;
+
+        Entry(List<Person> result, int[] nodes, int[] epochs, long links) {
+            this.result = result;
+            this.nodes = nodes;
+            this.epochs = epochs;
+            this.links = links;
+        }
+    }
+}
\ No newline at end of file
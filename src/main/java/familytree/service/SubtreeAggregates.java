@@ -0,0 +1,355 @@
+package familytree.service;
+
+import familytree.model.MutationListener;
+import familytree.model.PersonStore;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Per-person descendant aggregates of a {@link PersonStore}, kept current as links are
+ * added and death years change: how many distinct descendants someone has, how many of
+ * them are living, how many generations deep their line goes and how many descendants
+ * each generation holds. A descendant reached along several lines is counted once, in
+ * the generation of their closest line.
+ * <p>
+ * A new link adds the child and everything below it to every ancestor of the parent.
+ * Unless some of those ancestors already reached part of the child's subtree, each
+ * update is a constant-time merge of the subtree's totals, so the cost is the number
+ * of ancestors plus the size of the child's subtree. Ancestors that did already reach
+ * it (pedigree collapse) are recounted with a walk of their descendants. Batched links
+ * and {@link #rebuild()} recount everyone, which costs one walk per person.
+ * <p>
+ * Counts per generation are kept for the first {@value #TRACKED_GENERATIONS}
+ * generations; deeper ones are counted by a walk when asked for.
+ */
+public class SubtreeAggregates implements MutationListener {
+    static final int TRACKED_GENERATIONS = 32;
+
+    private final PersonStore store;
+    private int[] descendants = new int[0];
+    private int[] living = new int[0];
+    private int[] depths = new int[0];
+    private int[][] generations = new int[0][];
+    private boolean[] dead = new boolean[0];
+    private int links;
+    private boolean stale;
+
+    // Walk scratch; marks compare against a stamp bumped per walk
+    private int[] marks = new int[0];
+    private int[] ancestorMarks = new int[0];
+    private int stamp;
+    private final Walk up = new Walk();
+    private final Walk down = new Walk();
+
+    public SubtreeAggregates(PersonStore store) {
+        this.store = store;
+        ensureCapacity(store.size());
+        for (int i = 0; i < store.size(); i++) {
+            dead[i] = !store.isAlive(i);
+        }
+        rebuild();
+        if (!store.isReadOnly()) {
+            store.addMutationListener(this);
+        }
+    }
+
+    @Override
+    public synchronized void personAdded(int index) {
+        ensureCapacity(index + 1);
+        dead[index] = !store.isAlive(index);
+    }
+
+    @Override
+    public synchronized void deathYearChanged(int index, int year) {
+        boolean nowDead = year != PersonStore.NO_YEAR;
+        if (dead[index] == nowDead) return;
+        dead[index] = nowDead;
+        if (stale) return;
+
+        walkUp(index, false);
+        int delta = nowDead ? -1 : 1;
+        for (int i = 1; i < up.size; i++) {
+            living[up.nodes[i]] += delta;
+        }
+    }
+
+    @Override
+    public synchronized void linked(int parent, int child) {
+        // Batch links are all in place before the first one is reported, so the state
+        // before this link cannot be reconstructed; recount on the next query instead
+        boolean single = store.linkCount() == links + 1;
+        links = store.linkCount();
+        if (stale || !single) {
+            stale = true;
+            return;
+        }
+
+        walkUp(parent, true);
+        walkDown(child);
+        if (reachesSubtreeWithoutLink(parent, child)) {
+            for (int i = 0; i < up.size; i++) {
+                recount(up.nodes[i]);
+            }
+            return;
+        }
+
+        int count = down.size;
+        int livingCount = 0;
+        int deepest = 0;
+        int[] histogram = new int[Math.min(TRACKED_GENERATIONS, maxDepth(down) + 1)];
+        for (int i = 0; i < down.size; i++) {
+            int node = down.nodes[i];
+            int depth = down.depths[i];
+            if (!dead[node]) livingCount++;
+            deepest = Math.max(deepest, depth);
+            if (depth < histogram.length) histogram[depth]++;
+        }
+        for (int i = 0; i < up.size; i++) {
+            int ancestor = up.nodes[i];
+            int offset = up.depths[i]; // the child is in generation offset + 1
+            descendants[ancestor] += count;
+            living[ancestor] += livingCount;
+            depths[ancestor] = Math.max(depths[ancestor], offset + 1 + deepest);
+            int tracked = Math.min(TRACKED_GENERATIONS, depths[ancestor]);
+            int[] counts = generations[ancestor];
+            if (counts == null || counts.length < tracked) {
+                counts = generations[ancestor] = counts == null ? new int[tracked] : Arrays.copyOf(counts, tracked);
+            }
+            for (int d = 0; d < histogram.length && offset + d < TRACKED_GENERATIONS; d++) {
+                counts[offset + d] += histogram[d];
+            }
+        }
+    }
+
+    public synchronized int descendantCount(int person) {
+        refresh();
+        return descendants[person];
+    }
+
+    public synchronized int livingDescendantCount(int person) {
+        refresh();
+        return living[person];
+    }
+
+    /**
+     * Number of generations below person: 0 without children, 1 with children but no
+     * grandchildren, and so on.
+     */
+    public synchronized int depth(int person) {
+        refresh();
+        return depths[person];
+    }
+
+    /**
+     * Number of descendants in a generation: 1 for children, 2 for grandchildren.
+     */
+    public synchronized int generationCount(int person, int generation) {
+        if (generation < 1) {
+            throw new IllegalArgumentException("Generation must be at least 1");
+        }
+        refresh();
+        if (generation > depths[person]) return 0;
+        if (generation <= TRACKED_GENERATIONS) return generations[person][generation - 1];
+
+        walkDown(person);
+        int count = 0;
+        for (int i = 0; i < down.size; i++) {
+            if (down.depths[i] == generation) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Descendant counts for generations 1 to {@link #depth(int)}.
+     */
+    public synchronized int[] generationCounts(int person) {
+        refresh();
+        int depth = depths[person];
+        int[] counts = new int[depth];
+        if (depth == 0) return counts;
+        int[] tracked = generations[person];
+        System.arraycopy(tracked, 0, counts, 0, Math.min(depth, tracked.length));
+        if (depth > TRACKED_GENERATIONS) {
+            walkDown(person);
+            for (int i = 1; i < down.size; i++) {
+                int generation = down.depths[i];
+                if (generation > TRACKED_GENERATIONS) counts[generation - 1]++;
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Recounts every aggregate from scratch with one walk per person.
+     */
+    public synchronized void rebuild() {
+        links = store.linkCount();
+        stale = false;
+        for (int i = 0; i < store.size(); i++) {
+            recount(i);
+        }
+    }
+
+    /**
+     * Recounts every aggregate without changing the maintained values and reports the
+     * people whose values differ; empty when the incremental updates are exact.
+     */
+    public synchronized List<String> verify() {
+        refresh();
+        List<String> mismatches = new ArrayList<>();
+        int[] expected = new int[TRACKED_GENERATIONS];
+        for (int person = 0; person < store.size(); person++) {
+            walkDown(person);
+            int livingCount = 0;
+            int deepest = 0;
+            Arrays.fill(expected, 0);
+            for (int i = 1; i < down.size; i++) {
+                if (store.isAlive(down.nodes[i])) livingCount++;
+                deepest = Math.max(deepest, down.depths[i]);
+                if (down.depths[i] <= TRACKED_GENERATIONS) expected[down.depths[i] - 1]++;
+            }
+            int tracked = Math.min(deepest, TRACKED_GENERATIONS);
+            boolean countsMatch = tracked == 0 || (generations[person] != null
+                    && Arrays.equals(generations[person], 0, tracked, expected, 0, tracked));
+            if (descendants[person] != down.size - 1 || living[person] != livingCount
+                    || depths[person] != deepest || !countsMatch) {
+                mismatches.add(store.id(person));
+            }
+        }
+        return mismatches;
+    }
+
+    private void refresh() {
+        if (stale || links != store.linkCount()) rebuild();
+    }
+
+    private void recount(int person) {
+        walkDown(person);
+        int livingCount = 0;
+        int deepest = maxDepth(down);
+        int[] counts = deepest == 0 ? null : new int[Math.min(deepest, TRACKED_GENERATIONS)];
+        for (int i = 1; i < down.size; i++) {
+            if (!dead[down.nodes[i]]) livingCount++;
+            if (down.depths[i] <= TRACKED_GENERATIONS) counts[down.depths[i] - 1]++;
+        }
+        descendants[person] = down.size - 1;
+        living[person] = livingCount;
+        depths[person] = deepest;
+        generations[person] = counts;
+    }
+
+    /**
+     * Whether some ancestor of the parent (collected by the last {@link #walkUp}) reaches
+     * someone in the child's subtree (collected by the last {@link #walkDown}) along a
+     * path that does not use the new link. Walks upward from the whole subtree.
+     */
+    private boolean reachesSubtreeWithoutLink(int parent, int child) {
+        int inSubtree = stamp;
+        int[] pending = new int[16];
+        int count = 0;
+        for (int i = 0; i < down.size; i++) {
+            int node = down.nodes[i];
+            int parentCount = store.parentCount(node);
+            for (int slot = 0; slot < parentCount; slot++) {
+                int above = store.parent(node, slot);
+                if (node == child && above == parent) continue;
+                if (marks[above] == inSubtree) continue;
+                if (ancestorMarks[above] == up.stamp) return true;
+                marks[above] = inSubtree;
+                if (count == pending.length) pending = Arrays.copyOf(pending, count * 2);
+                pending[count++] = above;
+            }
+        }
+        while (count > 0) {
+            int node = pending[--count];
+            int parentCount = store.parentCount(node);
+            for (int slot = 0; slot < parentCount; slot++) {
+                int above = store.parent(node, slot);
+                if (marks[above] == inSubtree) continue;
+                if (ancestorMarks[above] == up.stamp) return true;
+                marks[above] = inSubtree;
+                if (count == pending.length) pending = Arrays.copyOf(pending, count * 2);
+                pending[count++] = above;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Breadth-first walk from person over parent links, person first at depth 0; when
+     * markAncestors is set, everyone reached is also marked in ancestorMarks.
+     */
+    private void walkUp(int person, boolean markAncestors) {
+        walk(person, up, false);
+        if (markAncestors) {
+            for (int i = 0; i < up.size; i++) {
+                ancestorMarks[up.nodes[i]] = up.stamp;
+            }
+        }
+    }
+
+    /**
+     * Breadth-first walk from person over child links, person first at depth 0. Each
+     * descendant is listed once, at their smallest depth.
+     */
+    private void walkDown(int person) {
+        walk(person, down, true);
+    }
+
+    private void walk(int person, Walk walk, boolean downward) {
+        int current = ++stamp;
+        walk.stamp = current;
+        walk.size = 0;
+        walk.add(person, 0);
+        marks[person] = current;
+        for (int head = 0; head < walk.size; head++) {
+            int node = walk.nodes[head];
+            int depth = walk.depths[head] + 1;
+            int count = downward ? store.childCount(node) : store.parentCount(node);
+            for (int k = 0; k < count; k++) {
+                int next = downward ? store.child(node, k) : store.parent(node, k);
+                if (marks[next] != current) {
+                    marks[next] = current;
+                    walk.add(next, depth);
+                }
+            }
+        }
+    }
+
+    private static int maxDepth(Walk walk) {
+        return walk.size == 0 ? 0 : walk.depths[walk.size - 1];
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= descendants.length) return;
+        int capacity = Math.max(required, Math.max(16, descendants.length * 2));
+        descendants = Arrays.copyOf(descendants, capacity);
+        living = Arrays.copyOf(living, capacity);
+        depths = Arrays.copyOf(depths, capacity);
+        generations = Arrays.copyOf(generations, capacity);
+        dead = Arrays.copyOf(dead, capacity);
+        marks = Arrays.copyOf(marks, capacity);
+        ancestorMarks = Arrays.copyOf(ancestorMarks, capacity);
+    }
+
+    /**
+     * People reached by a breadth-first walk, in the order reached, with their depths.
+     */
+    private static final class Walk {
+        int[] nodes = new int[16];
+        int[] depths = new int[16];
+        int size;
+        int stamp;
+
+        void add(int node, int depth) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+                depths = Arrays.copyOf(depths, size * 2);
+            }
+            nodes[size] = node;
+            depths[size] = depth;
+            size++;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,154 @@
+package familytree.service;
+
+import familytree.model.FamilyUnits;
+import familytree.model.MutationListener;
+import familytree.model.Person;
+import familytree.model.PersonStore;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Interval indexes over the lifespans and marriages of a {@link PersonStore}, kept up
+ * to date as people are added, die, marry and divorce, for point-in-time and
+ * range-overlap questions in O(log n + k).
+ * <p>
+ * A lifespan runs from the birth year to the death year, both inclusive, and is open
+ * while the person is living. A marriage runs from its year to the divorce year, or is
+ * open while it lasts; a divorce without a recorded year ends it in the year it began.
+ * A marriage also ends with the death of either spouse, which queries check against
+ * the lifespans.
+ */
+public class TemporalIndex implements MutationListener {
+    private static final int OPEN = Integer.MAX_VALUE;
+
+    private final PersonStore store;
+    private final IntervalTree lifespans = new IntervalTree();
+    private final IntervalTree marriages = new IntervalTree(); // tagged by event log position
+    private int loggedEvents;
+
+    public TemporalIndex(PersonStore store) {
+        this.store = store;
+        for (int i = 0; i < store.size(); i++) {
+            personAdded(i);
+        }
+        catchUpMarriages();
+        if (!store.isReadOnly()) {
+            store.addMutationListener(this);
+        }
+    }
+
+    @Override
+    public synchronized void personAdded(int index) {
+        int death = store.deathYear(index);
+        lifespans.insert(index, store.birthYear(index), death == PersonStore.NO_YEAR ? OPEN : death);
+    }
+
+    @Override
+    public synchronized void deathYearChanged(int index, int year) {
+        lifespans.updateEnd(index, store.birthYear(index), year == PersonStore.NO_YEAR ? OPEN : year);
+    }
+
+    @Override
+    public synchronized void married(int person1, int person2, int year) {
+        catchUpMarriages();
+    }
+
+    @Override
+    public synchronized void divorced(int person1, int person2, int year) {
+        catchUpMarriages();
+    }
+
+    /**
+     * People living at some point of year, in ascending order.
+     */
+    public synchronized List<Person> aliveIn(int year) {
+        return aliveBetween(year, year);
+    }
+
+    /**
+     * People whose lifespan shares at least one year with [from, to], in ascending order.
+     */
+    public synchronized List<Person> aliveBetween(int from, int to) {
+        if (from > to) {
+            throw new IllegalArgumentException("Invalid year range: " + from + "-" + to);
+        }
+        Matches matches = new Matches();
+        lifespans.overlap(from, to, (person, start, end) -> matches.add(person));
+        return matches.toPeople();
+    }
+
+    /**
+     * People married at some point of year, in ascending order.
+     */
+    public synchronized List<Person> marriedIn(int year) {
+        FamilyUnits families = store.families();
+        Matches matches = new Matches();
+        marriages.stab(year, (event, start, end) -> {
+            int unit = families.loggedUnit(event);
+            int first = families.partner(unit, 0);
+            int second = families.partner(unit, 1);
+            if (outlives(first, year) && outlives(second, year)) {
+                matches.add(first);
+                matches.add(second);
+            }
+        });
+        return matches.toPeople();
+    }
+
+    private boolean outlives(int person, int year) {
+        int death = store.deathYear(person);
+        return death == PersonStore.NO_YEAR || death >= year;
+    }
+
+    /**
+     * Indexes marriages and divorces logged since the last call, pairing each divorce
+     * with the marriage it ends.
+     */
+    private void catchUpMarriages() {
+        FamilyUnits families = store.families();
+        for (; loggedEvents < families.eventLogSize(); loggedEvents++) {
+            int unit = families.loggedUnit(loggedEvents);
+            int year = families.loggedYear(loggedEvents);
+            if (families.loggedKind(loggedEvents) == FamilyUnits.MARRIED) {
+                marriages.insert(loggedEvents, year, OPEN);
+                continue;
+            }
+            int marriage = previousMarriage(families, unit, loggedEvents);
+            int start = families.loggedYear(marriage);
+            marriages.updateEnd(marriage, start, year == PersonStore.NO_YEAR ? start : Math.max(start, year));
+        }
+    }
+
+    private static int previousMarriage(FamilyUnits families, int unit, int divorce) {
+        for (int k = families.eventCount(unit) - 1; k >= 0; k--) {
+            int event = families.eventOrder(unit, k);
+            if (event < divorce && families.eventKind(unit, k) == FamilyUnits.MARRIED) return event;
+        }
+        throw new IllegalStateException("Divorce without a marriage in the event log");
+    }
+
+    /**
+     * People found by a query, returned sorted and each once.
+     */
+    private final class Matches {
+        private int[] people = new int[16];
+        private int size;
+
+        void add(int person) {
+            if (size == people.length) {
+                people = Arrays.copyOf(people, size * 2);
+            }
+            people[size++] = person;
+        }
+
+        List<Person> toPeople() {
+            Arrays.sort(people, 0, size);
+            List<Person> result = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                if (i == 0 || people[i] != people[i - 1]) result.add(store.person(people[i]));
+            }
+            return result;
+        }
+    }
+}
\ No newline at end of file
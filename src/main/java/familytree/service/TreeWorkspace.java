@@ -0,0 +1,371 @@
+package familytree.service;
+
+import familytree.io.TreeSnapshot;
+import familytree.metrics.Metrics;
+import familytree.model.MutationListener;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Many named family trees kept under one heap budget. Trees live in one of two tiers:
+ * resident on the heap, or spilled to a {@link TreeSnapshot} file in the workspace
+ * directory. A spilled tree is loaded again the first time it is used.
+ * <p>
+ * When the resident trees outgrow the budget, the coldest are spilled first, ranked by
+ * GreedyDual-Size-Frequency: a tree's priority is the workspace clock at its last use
+ * plus its use count divided by its size, and the clock advances to the priority of
+ * each evicted tree. Trees used often stay resident, large trees have to earn their
+ * place, and trees nobody touches age out as the clock moves past them. A tree is only
+ * written out if it changed since it was last loaded or saved.
+ * <p>
+ * Trees are reached through {@link #apply} and {@link #accept}, which keep the tree
+ * resident for the duration of the call. Callers must not hold on to the tree beyond
+ * it, as an evicted instance is no longer the workspace's copy. The workspace itself is
+ * thread-safe, but one tree must not be used by several threads at once. Loads and
+ * spills run under the workspace lock.
+ */
+public class TreeWorkspace implements Closeable {
+    private static final String EXTENSION = ".ftsn";
+
+    private final Path directory;
+    private final long budgetBytes;
+    private final Map<String, Slot> slots = new HashMap<>();
+    private final TreeSet<Slot> resident = new TreeSet<>((a, b) -> a.priority != b.priority
+            ? Double.compare(a.priority, b.priority) : Long.compare(a.sequence, b.sequence));
+    private long residentBytes;
+    private double clock;
+    private long sequence;
+
+    private long hits;
+    private long loads;
+    private long evictions;
+    private long spills;
+    private long spilledBytes;
+    private long spillFailures;
+    private IOException lastSpillFailure;
+
+    /**
+     * Opens a workspace over directory, creating it if needed; trees saved there by an
+     * earlier workspace are available, spilled.
+     */
+    public TreeWorkspace(Path directory, long budgetBytes) throws IOException {
+        if (budgetBytes < 1) {
+            throw new IllegalArgumentException("Memory budget must be at least 1 byte");
+        }
+        this.directory = Files.createDirectories(directory);
+        this.budgetBytes = budgetBytes;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+            for (Path file : files) {
+                String fileName = file.getFileName().toString();
+                String name = fileName.substring(0, fileName.length() - EXTENSION.length());
+                if (isValidName(name)) {
+                    slots.put(name, new Slot(name, true));
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds a new empty tree.
+     */
+    public synchronized void create(String name) throws IOException {
+        put(name, new FamilyTree());
+    }
+
+    /**
+     * Adds an existing tree, which the workspace owns from then on.
+     */
+    public synchronized void put(String name, FamilyTree tree) throws IOException {
+        checkName(name);
+        if (slots.containsKey(name)) {
+            throw new IllegalArgumentException("Tree already exists: " + name);
+        }
+        Slot slot = new Slot(name, false);
+        slots.put(name, slot);
+        slot.attach(tree);
+        slot.dirty = true;
+        touch(slot);
+        enforceBudget();
+    }
+
+    /**
+     * Runs action on the named tree, loading it first if it was spilled, and returns its
+     * result.
+     */
+    public <T> T apply(String name, Function<FamilyTree, T> action) throws IOException {
+        Slot slot;
+        FamilyTree tree;
+        synchronized (this) {
+            slot = require(name);
+            tree = checkOut(slot);
+        }
+        try {
+            return action.apply(tree);
+        } finally {
+            synchronized (this) {
+                checkIn(slot);
+            }
+        }
+    }
+
+    public void accept(String name, Consumer<FamilyTree> action) throws IOException {
+        apply(name, tree -> {
+            action.accept(tree);
+            return null;
+        });
+    }
+
+    public synchronized boolean contains(String name) {
+        return slots.containsKey(name);
+    }
+
+    public synchronized boolean isResident(String name) {
+        return require(name).tree != null;
+    }
+
+    public synchronized List<String> names() {
+        List<String> names = new ArrayList<>(slots.keySet());
+        Collections.sort(names);
+        return names;
+    }
+
+    /**
+     * Drops the named tree from memory and disk.
+     */
+    public synchronized void remove(String name) throws IOException {
+        Slot slot = require(name);
+        if (slot.pins > 0) {
+            throw new IllegalStateException("Tree is in use: " + name);
+        }
+        if (slot.tree != null) {
+            detach(slot);
+        }
+        slots.remove(name);
+        Files.deleteIfExists(file(name));
+    }
+
+    /**
+     * Saves every resident tree that changed since it was last loaded or saved, leaving
+     * it resident.
+     */
+    public synchronized void flush() throws IOException {
+        for (Slot slot : resident) {
+            if (slot.dirty && slot.pins == 0) {
+                save(slot);
+            }
+        }
+    }
+
+    /**
+     * Saves every changed tree; the workspace must not be used afterwards.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        flush();
+        for (Slot slot : new ArrayList<>(resident)) {
+            if (slot.pins == 0) detach(slot);
+        }
+    }
+
+    public long getBudgetBytes() { return budgetBytes; }
+    public synchronized int getTreeCount() { return slots.size(); }
+    public synchronized int getResidentCount() { return resident.size(); }
+    public synchronized long getResidentBytes() { return residentBytes; }
+    public synchronized long getHits() { return hits; }
+    public synchronized long getLoads() { return loads; }
+    public synchronized long getEvictions() { return evictions; }
+    public synchronized long getSpills() { return spills; }
+    public synchronized long getSpilledBytes() { return spilledBytes; }
+    public synchronized long getSpillFailures() { return spillFailures; }
+
+    /**
+     * Why the latest spill on checking a tree out or in failed, or null if none has.
+     */
+    public synchronized IOException getLastSpillFailure() { return lastSpillFailure; }
+
+    public synchronized double getHitRate() {
+        long uses = hits + loads;
+        return uses == 0 ? 0.0 : (double) hits / uses;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("trees=%d, resident=%d, bytes=%d/%d, hits=%d, loads=%d, hit rate=%.1f%%, "
+                        + "evictions=%d, spills=%d, spilled bytes=%d, spill failures=%d",
+                slots.size(), resident.size(), residentBytes, budgetBytes, hits, loads, getHitRate() * 100,
+                evictions, spills, spilledBytes, spillFailures);
+    }
+
+    private FamilyTree checkOut(Slot slot) throws IOException {
+        if (slot.tree != null) {
+            hits++;
+        } else {
+            long start = Metrics.start();
+            FamilyTree tree = TreeSnapshot.load(file(slot.name));
+            Metrics.record("workspace.load", start);
+            loads++;
+            slot.attach(tree);
+            slot.dirty = false;
+        }
+        slot.pins++;
+        slot.uses++;
+        touch(slot);
+        spillWithinBudget();
+        return slot.tree;
+    }
+
+    /**
+     * Releases slot after a call. Runs in apply's finally, so it never throws over the
+     * caller's result or exception: a spill that fails here is only counted, and its
+     * tree stays resident, over budget, until a later call spills it. checkOut treats a
+     * failed spill of another tree the same way.
+     */
+    private void checkIn(Slot slot) {
+        slot.pins--;
+        // The tree may have grown during the call
+        residentBytes -= slot.bytes;
+        slot.bytes = slot.tree.getStore().estimateBytes();
+        residentBytes += slot.bytes;
+        spillWithinBudget();
+    }
+
+    /**
+     * Like enforceBudget, but a failed spill is only counted, so that a slot pinned by
+     * checkOut is always released again and nothing is thrown over a caller's result.
+     */
+    private void spillWithinBudget() {
+        try {
+            enforceBudget();
+        } catch (IOException e) {
+            spillFailures++;
+            lastSpillFailure = e;
+        }
+    }
+
+    /**
+     * Moves slot to its new priority after a use.
+     */
+    private void touch(Slot slot) {
+        resident.remove(slot);
+        slot.priority = clock + slot.uses / Math.max(1.0, slot.bytes / 1024.0);
+        slot.sequence = sequence++;
+        resident.add(slot);
+    }
+
+    private void enforceBudget() throws IOException {
+        while (residentBytes > budgetBytes) {
+            Slot victim = null;
+            for (Slot candidate : resident) {
+                if (candidate.pins == 0) {
+                    victim = candidate;
+                    break;
+                }
+            }
+            if (victim == null) return; // everything left is in use
+            clock = victim.priority;
+            if (victim.dirty) {
+                save(victim);
+            }
+            detach(victim);
+            evictions++;
+        }
+    }
+
+    private void save(Slot slot) throws IOException {
+        long start = Metrics.start();
+        Path file = file(slot.name);
+        TreeSnapshot.save(slot.tree, file);
+        Metrics.record("workspace.spill", start);
+        slot.dirty = false;
+        spills++;
+        spilledBytes += Files.size(file);
+    }
+
+    private void detach(Slot slot) {
+        resident.remove(slot);
+        residentBytes -= slot.bytes;
+        slot.tree.getStore().removeMutationListener(slot);
+        slot.tree = null;
+        slot.bytes = 0;
+    }
+
+    private Slot require(String name) {
+        Slot slot = slots.get(name);
+        if (slot == null) {
+            throw new IllegalArgumentException("Unknown tree: " + name);
+        }
+        return slot;
+    }
+
+    private Path file(String name) {
+        return directory.resolve(name + EXTENSION);
+    }
+
+    private static void checkName(String name) {
+        if (!isValidName(name)) {
+            throw new IllegalArgumentException("Tree names may only use letters, digits, '-' and '_': " + name);
+        }
+    }
+
+    private static boolean isValidName(String name) {
+        if (name == null || name.isEmpty()) return false;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (!(c < 0x80 && Character.isLetterOrDigit(c)) && c != '-' && c != '_') return false;
+        }
+        return true;
+    }
+
+    /**
+     * Bookkeeping for one tree; as a listener on a resident tree's store it notices
+     * changes that have to be saved before the tree can be dropped.
+     */
+    private final class Slot implements MutationListener {
+        final String name;
+        FamilyTree tree;
+        long bytes;
+        int uses;
+        int pins;
+        double priority;
+        long sequence;
+        volatile boolean dirty;
+
+        Slot(String name, boolean spilled) {
+            this.name = name;
+            this.dirty = !spilled;
+        }
+
+        void attach(FamilyTree loaded) {
+            tree = loaded;
+            bytes = loaded.getStore().estimateBytes();
+            residentBytes += bytes;
+            loaded.getStore().addMutationListener(this);
+        }
+
+        @Override
+        public void personAdded(int index) { dirty = true; }
+
+        @Override
+        public void deathYearChanged(int index, int year) { dirty = true; }
+
+        @Override
+        public void linked(int parent, int child) { dirty = true; }
+
+        @Override
+        public void married(int person1, int person2, int year) { dirty = true; }
+
+        @Override
+        public void divorced(int person1, int person2, int year) { dirty = true; }
+    }
+}
\ No newline at end of file
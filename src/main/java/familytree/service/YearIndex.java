@@ -0,0 +1,113 @@
+package familytree.service;
+
+import java.util.Arrays;
+
+/**
+ * People sorted by a year, as one primitive array of packed (year, person) pairs.
+ * <p>
+ * New pairs go to an unsorted tail that is sorted and merged into the main run on the
+ * next query, so inserts cost O(1) and a burst of inserts is merged once. A person's
+ * year may change; the old pair then stays behind as a stale entry that queries skip
+ * (the caller says which pairs are current), and is dropped by the next merge once
+ * stale entries make up half the index.
+ */
+class YearIndex {
+    interface Current {
+        boolean test(int person, int year);
+    }
+
+    private long[] entries = new long[16]; // year in the high half, person in the low half
+    private int sorted;
+    private int size;
+    private int stale;
+
+    void add(int person, int year) {
+        if (size == entries.length) {
+            entries = Arrays.copyOf(entries, size * 2);
+        }
+        entries[size++] = pack(person, year);
+    }
+
+    /**
+     * Notes that one entry added earlier is no longer current.
+     */
+    void invalidate() {
+        stale++;
+    }
+
+    /**
+     * Number of entries with a year within [from, to], stale ones included.
+     */
+    int estimate(int from, int to) {
+        merge(null);
+        return lowerBound(to, true) - lowerBound(from, false);
+    }
+
+    /**
+     * People whose current year lies within [from, to], in ascending order and each once.
+     */
+    int[] range(int from, int to, Current current) {
+        merge(current);
+        int start = lowerBound(from, false);
+        int end = lowerBound(to, true);
+        int[] people = new int[end - start];
+        int count = 0;
+        for (int i = start; i < end; i++) {
+            int person = (int) entries[i];
+            if (current.test(person, (int) (entries[i] >> 32))) {
+                people[count++] = person;
+            }
+        }
+        Arrays.sort(people, 0, count);
+        // A year changed away and back again leaves two current entries
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || people[distinct - 1] != people[i]) {
+                people[distinct++] = people[i];
+            }
+        }
+        return distinct == people.length ? people : Arrays.copyOf(people, distinct);
+    }
+
+    private void merge(Current current) {
+        boolean compact = current != null && stale * 2 > size;
+        if (sorted == size && !compact) return;
+        Arrays.sort(entries, sorted, size);
+        long[] merged = new long[Math.max(16, size)];
+        int count = 0;
+        int left = 0;
+        int right = sorted;
+        while (left < sorted || right < size) {
+            long next = right >= size || (left < sorted && entries[left] <= entries[right])
+                    ? entries[left++] : entries[right++];
+            if (!compact || current.test((int) next, (int) (next >> 32))) {
+                merged[count++] = next;
+            }
+        }
+        if (compact) stale = 0;
+        entries = merged;
+        sorted = size = count;
+    }
+
+    /**
+     * First position whose year is at least year, or above it if inclusive.
+     */
+    private int lowerBound(int year, boolean inclusive) {
+        long key = inclusive ? (year == Integer.MAX_VALUE ? Long.MAX_VALUE : pack(0, year + 1)) : pack(0, year);
+        int low = 0;
+        int high = sorted;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (entries[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static long pack(int person, int year) {
+        return ((long) year << 32) | (person & 0xFFFFFFFFL);
+    }
+}
\ No newline at end of file
@@ -1,8 +1,38 @@
 package familytree;
 
+import familytree.cli.CLI;
+import familytree.io.CsvImporter;
+import familytree.io.GedcomImporter;
+import familytree.io.MutationJournal;
+import familytree.io.TreeExporter;
+import familytree.metrics.LatencyHistogram;
+import familytree.metrics.Metrics;
 import familytree.model.Gender;
+import familytree.model.IdAllocator;
+import familytree.model.Marriage;
+import familytree.model.MutationListener;
 import familytree.model.Person;
+import familytree.model.PersonStore;
+import familytree.pattern.BFSTraversal;
+import familytree.pattern.DFSTraversal;
+import familytree.pattern.ParallelDFSTraversal;
+import familytree.server.FamilyTreeServer;
+import familytree.server.LoadGenerator;
+import familytree.service.BulkImport;
+import familytree.service.BulkImportException;
+import familytree.service.ConcurrentFamilyTree;
 import familytree.service.FamilyTree;
+import familytree.service.IntegrityScanner;
+import familytree.service.KinshipService;
+import familytree.service.PageCursor;
+import familytree.service.PersonQuery;
+import familytree.service.QueryCache;
+import familytree.service.TreeWorkspace;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 public class TestRunner {
     public static void main(String[] args) {
@@ -89,6 +119,1237 @@ public class TestRunner {
             testsFailed++;
         }
 
+        // Test 5: Store Growth
+        try {
+            Person root = familyTree.addPerson("Root", Gender.FEMALE, 1900, null);
+            Person previous = root;
+            for (int i = 0; i < 100; i++) {
+                Person next = familyTree.addPerson("Gen" + i, Gender.MALE, 1901 + i, null);
+                familyTree.addParentChildRelationship(previous.getId(), next.getId());
+                if (i % 2 == 0) {
+                    Person sibling = familyTree.addPerson("Sib" + i, Gender.FEMALE, 1901 + i, null);
+                    familyTree.addParentChildRelationship(previous.getId(), sibling.getId());
+                }
+                previous = next;
+            }
+
+            if (familyTree.getPerson(previous.getId()) == previous
+                    && root.getChildren().size() == 2
+                    && root.getChildren().get(0).getFullName().equals("Gen0")
+                    && previous.getAncestors().size() == 100) {
+                System.out.println("✅ testStoreGrowth PASSED");
+                testsPassed++;
+            } else {
+                System.out.println("❌ testStoreGrowth FAILED");
+                testsFailed++;
+            }
+        } catch (Exception e) {
+            System.out.println("❌ testStoreGrowth FAILED with exception: " + e.getMessage());
+            testsFailed++;
+        }
+
+        // Test 6: Ancestor Index With Cousin Marriage
+        try {
+            Person grandpa = familyTree.addPerson("Grandpa", Gender.MALE, 1900, null);
+            Person uncle = familyTree.addPerson("Uncle", Gender.MALE, 1925, null);
+            Person aunt = familyTree.addPerson("Aunt", Gender.FEMALE, 1927, null);
+            Person cousin1 = familyTree.addPerson("Cousin1", Gender.MALE, 1950, null);
+            Person cousin2 = familyTree.addPerson("Cousin2", Gender.FEMALE, 1952, null);
+            Person child = familyTree.addPerson("Inbred Child", Gender.FEMALE, 1975, null);
+
+            // Inserted bottom-up so the index has to reorder
+            familyTree.addParentChildRelationship(cousin1.getId(), child.getId());
+            familyTree.addParentChildRelationship(cousin2.getId(), child.getId());
+            familyTree.addParentChildRelationship(uncle.getId(), cousin1.getId());
+            familyTree.addParentChildRelationship(aunt.getId(), cousin2.getId());
+            familyTree.addParentChildRelationship(grandpa.getId(), uncle.getId());
+            familyTree.addParentChildRelationship(grandpa.getId(), aunt.getId());
+
+            boolean cycleRejected = false;
+            try {
+                familyTree.addParentChildRelationship(child.getId(), grandpa.getId());
+            } catch (IllegalArgumentException e) {
+                cycleRejected = true;
+            }
+
+            if (familyTree.isAncestor(grandpa.getId(), child.getId())
+                    && !familyTree.isAncestor(child.getId(), grandpa.getId())
+                    && !familyTree.isAncestor(uncle.getId(), cousin2.getId())
+                    && familyTree.getStore().reachability().searchVisits(grandpa.getIndex(), child.getIndex()) > 0
+                    && familyTree.getStore().reachability().searchVisits(child.getIndex(), grandpa.getIndex()) == 0
+                    && cycleRejected) {
+                System.out.println("✅ testIsAncestor PASSED");
+                testsPassed++;
+            } else {
+                System.out.println("❌ testIsAncestor FAILED");
+                testsFailed++;
+            }
+        } catch (Exception e) {
+            System.out.println("❌ testIsAncestor FAILED with exception: " + e.getMessage());
+            testsFailed++;
+        }
+
+        // Test 7: Streaming Traversal Matches Eager Traversal
+        try {
+            Person founder = familyTree.getPerson("P001");
+            Person grandpa = familyTree.addPerson("Streaming Founder", Gender.MALE, 1850, null);
+            familyTree.addParentChildRelationship(grandpa.getId(), founder.getId());
+            familyTree.addParentChildRelationship(grandpa.getId(), familyTree.getPerson("P002").getId());
+
+            boolean matches = true;
+            for (int depth = -1; depth <= 3; depth++) {
+                List<Person> dfs = new DFSTraversal().traverse(grandpa, depth);
+                List<Person> bfs = new BFSTraversal().traverse(grandpa, depth);
+                matches &= dfs.equals(new DFSTraversal().stream(grandpa, depth).collect(Collectors.toList()));
+                matches &= bfs.equals(new BFSTraversal().stream(grandpa, depth).collect(Collectors.toList()));
+            }
+            List<Person> firstTwo = familyTree.streamDescendants(grandpa.getId(), 10).limit(2).collect(Collectors.toList());
+
+            if (matches && firstTwo.size() == 2 && firstTwo.get(1) == founder) {
+                System.out.println("✅ testStreamingTraversal PASSED");
+                testsPassed++;
+            } else {
+                System.out.println("❌ testStreamingTraversal FAILED");
+                testsFailed++;
+            }
+        } catch (Exception e) {
+            System.out.println("❌ testStreamingTraversal FAILED with exception: " + e.getMessage());
+            testsFailed++;
+        }
+
+        // Test 8: Unique Traversal Over Shared Descendants
+        try {
+            FamilyTree dag = new FamilyTree();
+            Person top = dag.addPerson("Top", Gender.MALE, 1800, null);
+            Person left = dag.addPerson("Left", Gender.MALE, 1830, null);
+            Person right = dag.addPerson("Right", Gender.FEMALE, 1832, null);
+            Person bottom = dag.addPerson("Bottom", Gender.MALE, 1860, null);
+            Person leaf = dag.addPerson("Leaf", Gender.FEMALE, 1890, null);
+            dag.addParentChildRelationship(top.getId(), left.getId());
+            dag.addParentChildRelationship(top.getId(), right.getId());
+            dag.addParentChildRelationship(left.getId(), bottom.getId());
+            dag.addParentChildRelationship(right.getId(), bottom.getId());
+            dag.addParentChildRelationship(bottom.getId(), leaf.getId());
+
+            List<Person> allPaths = new DFSTraversal().traverse(top, 10);
+            List<Person> uniqueDfs = new DFSTraversal(true).traverse(top, 10);
+            List<Person> uniqueBfs = new BFSTraversal(true).traverse(top, 10);
+            List<Person> ancestors = dag.getAncestors(leaf.getId(), 10, true);
+
+            if (allPaths.size() == 7 && uniqueDfs.size() == 5 && uniqueBfs.size() == 5
+                    && ancestors.size() == 4 && ancestors.get(0) == bottom && ancestors.get(3) == top) {
+                System.out.println("✅ testUniqueTraversal PASSED");
+                testsPassed++;
+            } else {
+                System.out.println("❌ testUniqueTraversal FAILED");
+                testsFailed++;
+            }
+        } catch (Exception e) {
+            System.out.println("❌ testUniqueTraversal FAILED with exception: " + e.getMessage());
+            testsFailed++;
+        }
+
+        // Test 9: Bulk Import Reports Every Violation
+        try {
+            FamilyTree bulkTree = new FamilyTree();
+            BulkImport bulk = bulkTree.beginBulkImport();
+            String a = bulk.addPerson("A", Gender.MALE, 1900, null);
+            String b = bulk.addPerson("B", Gender.FEMALE, 1920, null);
+            String c = bulk.addPerson("C", Gender.MALE, 1940, null);
+            String d = bulk.addPerson("D", Gender.MALE, 1941, null);
+            bulk.addParentChildRelationship(a, b);
+            bulk.addParentChildRelationship(b, c);
+            bulk.addParentChildRelationship(c, a); // closes a cycle
+            bulk.addParentChildRelationship(d, b);
+            bulk.addParentChildRelationship(c, b); // third parent of b
+
+            int violations = 0;
+            try {
+                bulk.commit();
+            } catch (BulkImportException e) {
+                violations = e.getViolations().size();
+            }
+            int sizeAfterRejection = bulkTree.size();
+
+            BulkImport valid = bulkTree.beginBulkImport();
+            a = valid.addPerson("A", Gender.MALE, 1900, null);
+            b = valid.addPerson("B", Gender.FEMALE, 1920, null);
+            c = valid.addPerson("C", Gender.MALE, 1940, null);
+            d = valid.addPerson("D", Gender.MALE, 1941, null);
+            valid.addParentChildRelationship(a, b);
+            valid.addParentChildRelationship(d, b);
+            valid.addParentChildRelationship(b, c);
+            valid.commit();
+
+            if (violations >= 2 && sizeAfterRejection == 0 && bulkTree.size() == 4
+                    && bulkTree.getPerson(a).getChildren().size() == 1
+                    && bulkTree.getPerson(b).getParents().size() == 2
+                    && bulkTree.isAncestor(a, c) && valid.getPeopleAdded() == 4
+                    && valid.getRelationshipsAdded() == 3) {
+                System.out.println("✅ testBulkImport PASSED");
+                testsPassed++;
+            } else {
+                System.out.println("❌ testBulkImport FAILED");
+                testsFailed++;
+            }
+        } catch (Exception e) {
+            System.out.println("❌ testBulkImport FAILED with exception: " + e.getMessage());
+            testsFailed++;
+        }
+
+        // Test 10: Snapshot Round Trip
+        try {
+            Path snapshot = Files.createTempFile("familytree", ".snapshot");
+            familyTree.save(snapshot);
+            FamilyTree loaded = FamilyTree.load(snapshot);
+
+            byte[] bytes = Files.readAllBytes(snapshot);
+            bytes[bytes.length - 1] ^= 1;
+            Files.write(snapshot, bytes);
+            boolean corruptionRejected = false;
+            try {
+                FamilyTree.load(snapshot);
+            } catch (java.io.IOException e) {
+                corruptionRejected = true;
+            }
+            Files.delete(snapshot);
+
+            // An ID with an unpaired surrogate is written as '?' without shifting the string table
+            FamilyTree odd = new FamilyTree();
+            odd.getStore().add("X\uD800", "Odd Id", Gender.OTHER, 1900, false);
+            odd.getStore().add("Y", "After Odd", Gender.OTHER, 1901, false);
+            Path oddSnapshot = Files.createTempFile("familytree", ".snapshot");
+            odd.save(oddSnapshot);
+            FamilyTree oddLoaded = FamilyTree.load(oddSnapshot);
+            Files.delete(oddSnapshot);
+            boolean malformedId = oddLoaded.getStore().id(0).equals("X?")
+                    && oddLoaded.getPerson("Y").getFullName().equals("After Odd");
+
+            // A save that fails removes its temporary file
+            Path blocked = Files.createTempDirectory("familytree-blocked");
+            Path occupant = Files.createFile(blocked.resolve("occupant"));
+            boolean tempRemoved = false;
+            try {
+                familyTree.save(blocked);
+            } catch (java.io.IOException e) {
+                tempRemoved = !Files.exists(blocked.resolveSibling(blocked.getFileName() + ".tmp"));
+            }
+            Files.delete(occupant);
+            Files.delete(blocked);
+
+            Person original = familyTree.getPerson("P001");
+            Person copy = loaded.getPerson("P001");
+            if (loaded.size() == familyTree.size()
+                    && copy.getFullName().equals(original.getFullName())
+                    && copy.getChildren().equals(original.getChildren())
+                    && loaded.getPerson("P008").getSpouse().getId().equals("P009")
+                    && loaded.getDescendants("P001", 100).equals(familyTree.getDescendants("P001", 100))
+                    && corruptionRejected && malformedId && tempRemoved) {
+                System.out.println("✅ testSnapshotRoundTrip PASSED");
+                testsPassed++;
+            } else {
+                System.out.println("❌ testSnapshotRoundTrip FAILED");
+                testsFailed++;
+            }
+        } catch (Exception e) {
+            System.out.println("❌ testSnapshotRoundTrip FAILED with exception: " + e.getMessage());
+            testsFailed++;
+        }
+
+        // Test 11: Journal Replay
+        try {
+            Path directory = Files.createTempDirectory("familytree-journal");
+            MutationJournal journal = MutationJournal.open(directory);
+            FamilyTree journaled = journal.getFamilyTree();
+            Person father = journaled.addPerson("Journal Father", Gender.MALE, 1950, null);
+            Person mother = journaled.addPerson("Journal Mother", Gender.FEMALE, 1952, null);
+            Person son = journaled.addPerson("Journal Son", Gender.MALE, 2015, null);
+            journaled.addParentChildRelationship(father.getId(), son.getId());
+            journaled.addParentChildRelationship(mother.getId(), son.getId());
+            journaled.marry(father.getId(), mother.getId(), 1975);
+            journal.close();
+
+            journal = MutationJournal.open(directory);
+            boolean replayed = journal.getFamilyTree().size() == 3
+                    && journal.getFamilyTree().getPerson(son.getId()).getParents().size() == 2
+                    && journal.getFamilyTree().getSpouse(father.getId()).getId().equals(mother.getId());
+            journal.compact();
+            Person daughter = journal.getFamilyTree().addPerson("Journal Daughter", Gender.FEMALE, 1980, null);
+            journal.getFamilyTree().addParentChildRelationship(mother.getId(), daughter.getId());
+            journal.close();
+
+            journal = MutationJournal.open(directory);
+            FamilyTree recovered = journal.getFamilyTree();
+            boolean compacted = recovered.size() == 4
+                    && recovered.getChildren(mother.getId()).size() == 2
+                    && recovered.getSpouse(mother.getId()).getId().equals(father.getId());
+
+            // A listener that can no longer record changes refuses them before they apply
+            MutationListener refusing = new MutationListener() {
+                @Override
+                public void beforeChange() {
+                    throw new IllegalStateException("Journal failed");
+                }
+            };
+            recovered.getStore().addMutationListener(refusing);
+            int refusals = 0;
+            try {
+                recovered.addPerson("Refused", Gender.MALE, 1990, null);
+            } catch (IllegalStateException e) {
+                refusals++;
+            }
+            try {
+                recovered.divorce(father.getId(), null);
+            } catch (IllegalStateException e) {
+                refusals++;
+            }
+            recovered.getStore().removeMutationListener(refusing);
+            boolean refused = refusals == 2 && recovered.size() == 4
+                    && recovered.getSpouse(father.getId()) != null;
+            journal.close();
+            try (java.util.stream.Stream<Path> files = Files.list(directory)) {
+                files.forEach(file -> file.toFile().delete());
+            }
+            Files.delete(directory);
+
+            if (replayed && compacted && refused) {
+                System.out.println("✅ testJournalReplay PASSED");
+                testsPassed++;
+            } else {
+                System.out.println("❌ testJournalReplay FAILED");
+                testsFailed++;
+            }
+        } catch (Exception e) {
+            System.out.println("❌ testJournalReplay FAILED with exception: " + e.getMessage());
+            testsFailed++;
+        }
+
+        // Test 12: Snapshot Isolation
+        try {
+            ConcurrentFamilyTree concurrent = new ConcurrentFamilyTree();
+            String rootId = concurrent.addPerson("Concurrent Root", Gender.FEMALE, 1900, null);
+            concurrent.publish();
+            FamilyTree before = concurrent.snapshot();
+            concurrent.update(tree -> {
+                Person child = tree.addPerson("Concurrent Child", Gender.MALE, 1930, null);
+                tree.addParentChildRelationship(rootId, child.getId());
+            });
+            FamilyTree after = concurrent.snapshot();
+
+            long published = concurrent.version();
+            for (int i = 0; i < 100; i++) {
+                concurrent.addPerson("Single Edit " + i, Gender.OTHER, 1950, null);
+            }
+            boolean deferred = concurrent.version() == published && concurrent.size() == 2;
+            concurrent.publish();
+            deferred &= concurrent.version() == published + 1 && concurrent.size() == 102;
+            concurrent.publish(); // nothing pending
+            deferred &= concurrent.version() == published + 1;
+
+            boolean readOnly = false;
+            try {
+                after.addPerson("Rejected", Gender.MALE, 1950, null);
+            } catch (UnsupportedOperationException e) {
+                readOnly = true;
+            }
+
+            if (before.size() == 1 && before.getChildren(rootId).isEmpty()
+                    && after.size() == 2 && after.getDescendants(rootId, 1).size() == 2
+                    && published == 3 && deferred && readOnly) {
+                System.out.println("✅ testSnapshotIsolation PASSED");
+                testsPassed++;
+            } else {
+                System.out.println("❌ testSnapshotIsolation FAILED");
+                testsFailed++;
+            }
+        } catch (Exception e) {
+            System.out.println("❌ testSnapshotIsolation FAILED with exception: " + e.getMessage());
+            testsFailed++;
+        }
+
+        // Test 13: Kinship and Inbreeding
+        try {
+            FamilyTree pedigree = new FamilyTree();
+            Person father = pedigree.addPerson("Kin Father", Gender.MALE, 1900, null);
+            Person mother = pedigree.addPerson("Kin Mother", Gender.FEMALE, 1902, null);
+            Person brother = pedigree.addPerson("Kin Brother", Gender.MALE, 1925, null);
+            Person sister = pedigree.addPerson("Kin Sister", Gender.FEMALE, 1927, null);
+            for (Person sibling : List.of(brother, sister)) {
+                pedigree.addParentChildRelationship(father.getId(), sibling.getId());
+                pedigree.addParentChildRelationship(mother.getId(), sibling.getId());
+            }
+            Person inbred = pedigree.addPerson("Kin Child", Gender.MALE, 1950, null);
+            pedigree.addParentChildRelationship(brother.getId(), inbred.getId());
+            pedigree.addParentChildRelationship(sister.getId(), inbred.getId());
+
+            KinshipService kinship = pedigree.getKinshipService();
+            double[] coefficients = kinship.inbreedingAll();
+            double[][] matrix = kinship.kinshipMatrix(new int[] {father.getIndex(), brother.getIndex(), sister.getIndex()});
+            // A memo too small for the pedigree only costs recomputation
+            KinshipService tiny = new KinshipService(pedigree.getStore(),
+                    java.util.concurrent.ForkJoinPool.commonPool(), 2);
+            boolean bounded = java.util.Arrays.equals(tiny.inbreedingAll(), coefficients)
+                    && tiny.kinship(brother.getIndex(), sister.getIndex()) == 0.25 && tiny.cachedPairs() <= 2
+                    && pedigree.getKinshipService() == kinship;
+            if (bounded && kinship.kinship(brother.getIndex(), sister.getIndex()) == 0.25
+                    && kinship.relationship(father.getIndex(), brother.getIndex()) == 0.5
+                    && coefficients[inbred.getIndex()] == 0.25 && coefficients[brother.getIndex()] == 0.0
+                    && matrix[0][0] == 0.5 && matrix[1][2] == 0.25 && matrix[2][1] == 0.25) {
+                System.out.println("✅ testKinship PASSED");
+                testsPassed++;
+            } else {
+                System.out.println("❌ testKinship FAILED");
+                testsFailed++;
+            }
+        } catch (Exception e) {
+            System.out.println("❌ testKinship FAILED with exception: " + e.getMessage());
+            testsFailed++;
+        }
+
+        // Test 14: Query Cache Invalidation
+        try {
+            FamilyTree cachedTree = new FamilyTree();
+            cachedTree.enableQueryCache(1000);
+            Person patriarch = cachedTree.addPerson("Cache Patriarch", Gender.MALE, 1900, null);
+            Person heir = cachedTree.addPerson("Cache Heir", Gender.MALE, 1930, null);
+            Person stranger = cachedTree.addPerson("Cache Stranger", Gender.FEMALE, 1930, null);
+            Person strangerChild = cachedTree.addPerson("Cache Stranger Child", Gender.FEMALE, 1960, null);
+            cachedTree.addParentChildRelationship(patriarch.getId(), heir.getId());
+
+            cachedTree.getDescendants(patriarch.getId(), 5);
+            cachedTree.getDescendants(patriarch.getId(), 5);
+            cachedTree.addParentChildRelationship(stranger.getId(), strangerChild.getId());
+            boolean untouchedHit = cachedTree.getDescendants(patriarch.getId(), 5).size() == 2;
+            Person grandchild = cachedTree.addPerson("Cache Grandchild", Gender.FEMALE, 1960, null);
+            cachedTree.addParentChildRelationship(heir.getId(), grandchild.getId());
+            List<Person> refreshed = cachedTree.getDescendants(patriarch.getId(), 5);
+
+            QueryCache cache = cachedTree.getQueryCache();
+            if (untouchedHit && refreshed.size() == 3 && refreshed.contains(grandchild)
+                    && cache.getHits() == 2 && cache.getMisses() == 2 && cache.getInvalidations() == 1) {
+                System.out.println("✅ testQueryCache PASSED");
+                testsPassed++;
+            } else {
+                System.out.println("❌ testQueryCache FAILED");
+                testsFailed++;
+            }
+        } catch (Exception e) {
+            System.out.println("❌ testQueryCache FAILED with exception: " + e.getMessage());
+            testsFailed++;
+        }
+
+        // Test 15: Latency Histograms
+        try {
+            LatencyHistogram histogram = new LatencyHistogram();
+            for (long nanos = 1; nanos <= 1_000_000; nanos++) {
+                histogram.record(nanos);
+            }
+            long median = histogram.getValueAtPercentile(50);
+            long p99 = histogram.getValueAtPercentile(99);
+
+            familyTree.getAncestors("P001", 1);
+            boolean quietWhenOff = !Metrics.snapshot().containsKey("getAncestors");
+            Metrics.setEnabled(true);
+            familyTree.getAncestors("P001", 1);
+            familyTree.getDescendants("P001", 1);
+            familyTree.getChildren("P001");
+            familyTree.getSpouse("P001");
+            FamilyTree couple = new FamilyTree();
+            String husband = couple.addPerson("Timed Husband", Gender.MALE, 1950, null).getId();
+            String wife = couple.addPerson("Timed Wife", Gender.FEMALE, 1952, null).getId();
+            couple.marry(husband, wife, 1975);
+            couple.divorce(husband, 1990);
+            couple.getMarriageHistory(husband);
+            couple.getFullSiblings(wife);
+            couple.getAliveIn(1980);
+            couple.openDescendants(husband, 2, 10);
+            Metrics.setEnabled(false);
+            long recorded = Metrics.histogram("getAncestors").getCount();
+            boolean traversalTimed = Metrics.histogram("traverse.DFSTraversal").getCount() == 1;
+            boolean relationsTimed = Metrics.histogram("getChildren").getCount() == 1
+                    && Metrics.histogram("getSpouse").getCount() == 1
+                    && Metrics.histogram("marry").getCount() == 1
+                    && Metrics.histogram("divorce").getCount() == 1
+                    && Metrics.histogram("getMarriageHistory").getCount() == 1
+                    && Metrics.histogram("getFullSiblings").getCount() == 1
+                    && Metrics.histogram("getAliveIn").getCount() == 1
+                    && Metrics.histogram("openDescendants").getCount() == 1;
+            // Commands the CLI does not know share one histogram
+            new CLI(new java.io.StringReader("STATS ON\nFROB\nWIBBLE 1\nPAGE_SIZE 5\nSTATS OFF\n"),
+                    new java.io.StringWriter(), CLI.Format.TSV).start();
+            Map<String, LatencyHistogram> commands = Metrics.snapshot();
+            boolean commandsTimed = commands.get("command.unknown").getCount() == 2
+                    && commands.containsKey("command.PAGE_SIZE") && !commands.containsKey("command.FROB");
+            Metrics.reset();
+
+            if (histogram.getCount() == 1_000_000 && histogram.getMax() == 1_000_000
+                    && Math.abs(median - 500_000) <= 500_000 / 64 && Math.abs(p99 - 990_000) <= 990_000 / 64
+                    && quietWhenOff && recorded == 1 && traversalTimed && relationsTimed && commandsTimed) {
+                System.out.println("✅ testLatencyHistograms PASSED");
+                testsPassed++;
+            } else {
+                System.out.println("❌ testLatencyHistograms FAILED");
+                testsFailed++;
+            }
+        } catch (Exception e) {
+            System.out.println("❌ testLatencyHistograms FAILED with exception: " + e.getMessage());
+            testsFailed++;
+        }
+
+        // Test 16: Batch Mode
+        try {
+            String script = "ADD_PERSON \"Batch Parent\" MALE 1950\n"
+                    + "# comments and blank lines are skipped\n\n"
+                    + "BOGUS\n";
+            java.io.StringWriter output = new java.io.StringWriter();
+            new CLI(new java.io.StringReader(script), output, CLI.Format.TSV).start();
+            String[] lines = output.toString().split("\n");
+
+            if (lines.length == 2 && lines[0].matches("OK\tP\\d+")
+                    && lines[1].equals("ERR\tUnknown command: BOGUS")) {
+                System.out.println("✅ testBatchMode PASSED");
+                testsPassed++;
+            } else {
+                System.out.println("❌ testBatchMode FAILED");
+                testsFailed++;
+            }
+        } catch (Exception e) {
+            System.out.println("❌ testBatchMode FAILED with exception: " + e.getMessage());
+            testsFailed++;
+        }
+
+        // Test 17: Server Mode
+        try (FamilyTreeServer server = new FamilyTreeServer(new FamilyTree(),
+                new java.net.InetSocketAddress(java.net.InetAddress.getLoopbackAddress(), 0), CLI.Format.TSV)) {
+            server.start();
+            LoadGenerator generator = new LoadGenerator("localhost", server.getPort());
+            generator.seed(200);
+            LoadGenerator.Result result = generator.run(4, 2000, 16);
+
+            String reply;
+            String refusals;
+            try (java.net.Socket socket = new java.net.Socket("localhost", server.getPort())) {
+                socket.getOutputStream().write(("LOAD tree.ser\nSAVE tree.ser\nIMPORT CSV people.csv\nEXPORT DOT tree.dot\n"
+                        + "SET_TRAVERSAL BFS\nCACHE ON\nSTATS ON\nEXIT\n").getBytes(java.nio.charset.StandardCharsets.UTF_8));
+                java.io.BufferedReader replies = new java.io.BufferedReader(new java.io.InputStreamReader(
+                        socket.getInputStream(), java.nio.charset.StandardCharsets.UTF_8));
+                reply = replies.readLine();
+                refusals = replies.readLine() + "|" + replies.readLine() + "|" + replies.readLine()
+                        + "|" + replies.readLine() + "|" + replies.readLine() + "|" + replies.readLine();
+            }
+
+            // A session whose client stops reading must not hold the shared lock
+            FamilyTree wideTree = new FamilyTree();
+            BulkImport wide = wideTree.beginBulkImport();
+            String founder = wide.addPerson("Wide Founder", Gender.MALE, 1800, null);
+            for (int i = 0; i < 3000; i++) {
+                wide.addParentChildRelationship(founder, wide.addPerson("Wide Child " + i, Gender.OTHER, 1830, null));
+            }
+            wide.commit();
+            java.util.concurrent.locks.ReentrantReadWriteLock shared = new java.util.concurrent.locks.ReentrantReadWriteLock();
+            java.util.concurrent.CountDownLatch writing = new java.util.concurrent.CountDownLatch(1);
+            java.util.concurrent.CountDownLatch release = new java.util.concurrent.CountDownLatch(1);
+            java.io.Writer stalled = new java.io.Writer() {
+                @Override
+                public void write(char[] buffer, int offset, int length) {
+                    writing.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+
+                @Override
+                public void flush() {
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+            Thread session = new Thread(() -> new CLI(wideTree, shared,
+                    new java.io.StringReader("DESCENDANTS " + founder + " 1\n"), stalled, CLI.Format.TSV).start());
+            session.start();
+            boolean unblocked = writing.await(5, java.util.concurrent.TimeUnit.SECONDS)
+                    && shared.writeLock().tryLock(5, java.util.concurrent.TimeUnit.SECONDS);
+            if (unblocked) shared.writeLock().unlock();
+            release.countDown();
+            session.join();
+
+            if (result.replies == 2000 && result.errors == 0 && server.getConnectionCount() == 6
+                    && server.getFamilyTree().size() > 200
+                    && "ERR\tLOAD is not available on a shared tree".equals(reply)
+                    && refusals.equals("ERR\tSAVE is not available on a shared tree"
+                            + "|ERR\tIMPORT is not available on a shared tree"
+                            + "|ERR\tEXPORT is not available on a shared tree"
+                            + "|ERR\tSET_TRAVERSAL is not available on a shared tree"
+                            + "|ERR\tCACHE is not available on a shared tree"
+                            + "|ERR\tSTATS is not available on a shared tree")
+                    && unblocked) {
+                System.out.println("✅ testServerMode PASSED");
+                testsPassed++;
+            } else {
+                System.out.println("❌ testServerMode FAILED");
+                testsFailed++;
+            }
+        } catch (Exception e) {
+            System.out.println("❌ testServerMode FAILED with exception: " + e.getMessage());
+            testsFailed++;
+        }
+
+        // Test 18: ID Allocation
+        try {
+            FamilyTree first = new FamilyTree();
+            FamilyTree second = new FamilyTree();
+            first.addPerson("First", Gender.MALE, 1950, null);
+            Person other = second.addPerson("Other", Gender.FEMALE, 1950, null);
+
+            IdAllocator allocator = new IdAllocator();
+            long[] numbers = new long[4 * 1000];
+            Thread[] threads = new Thread[4];
+            for (int t = 0; t < threads.length; t++) {
+                int offset = t * 1000;
+                threads[t] = new Thread(() -> {
+                    for (int i = 0; i < 1000; i++) numbers[offset + i] = allocator.allocate();
+                });
+                threads[t].start();
+            }
+            for (Thread thread : threads) thread.join();
+            boolean unique = java.util.Arrays.stream(numbers).distinct().count() == numbers.length
+                    && allocator.peek() == numbers.length + 1;
+
+            BulkImport batch = second.beginBulkImport();
+            batch.reserveIds(2);
+            String reserved = batch.addPerson("Reserved", Gender.MALE, 1960, null);
+            batch.commit();
+            second.getStore().add("P1500", "Imported", Gender.FEMALE, 1970, false);
+            second.getStore().add("legacy-7", "Legacy", Gender.MALE, 1970, false);
+            Person next = second.addPerson("Next", Gender.MALE, 1990, null);
+
+            if (unique && other.getId().equals("P001") && reserved.equals("P002")
+                    && next.getId().equals("P1501") && IdAllocator.format(12345).equals("P12345")
+                    && IdAllocator.parse("P042") == 42 && IdAllocator.parse("P0042") == IdAllocator.NOT_AN_ID
+                    && IdAllocator.parse("legacy-7") == IdAllocator.NOT_AN_ID
+                    && second.getStore().indexOf(1500L) == second.getPerson("P1500").getIndex()
+                    && second.getPerson("legacy-7").getFullName().equals("Legacy")
+                    && !second.personExists("P0001")) {
+                System.out.println("✅ testIdAllocation PASSED");
+                testsPassed++;
+            } else {
+                System.out.println("❌ testIdAllocation FAILED");
+                testsFailed++;
+            }
+        } catch (Exception e) {
+            System.out.println("❌ testIdAllocation FAILED with exception: " + e.getMessage());
+            testsFailed++;
+        }
+
+        // Test 19: Secondary Indexes
+        try {
+            FamilyTree indexed = new FamilyTree();
+            Person john = indexed.addPerson("John Smith", Gender.MALE, 1850, 1910);
+            indexed.getPersonIndex();
+            Person mary = indexed.addPerson("Mary Smith-Jones", Gender.FEMALE, 1862, null);
+            Person anna = indexed.addPerson("Anna Smithers", Gender.FEMALE, 1871, null);
+            indexed.addPerson("Peter Jones", Gender.MALE, 1860, null);
+            mary.setDeathYear(1930);
+
+            PersonQuery smiths = PersonQuery.all().nameStartsWith("smith");
+            java.io.StringWriter output = new java.io.StringWriter();
+            // On a shared tree only the first FIND takes the write lock, to build the index
+            int[] writeLocks = {0};
+            java.util.concurrent.locks.ReentrantReadWriteLock counting = new java.util.concurrent.locks.ReentrantReadWriteLock() {
+                @Override
+                public WriteLock writeLock() {
+                    writeLocks[0]++;
+                    return super.writeLock();
+                }
+            };
+            new CLI(indexed, counting, new java.io.StringReader("FIND SURNAME jones BORN 1850-1870 DECEASED\n"
+                    + "FIND NAME nobody\n"), output, CLI.Format.TSV).start();
+
+            if (indexed.find(smiths).equals(List.of(john, mary, anna))
+                    && indexed.find(smiths.bornBetween(1850, 1870)).equals(List.of(john, mary))
+                    && indexed.find(PersonQuery.all().surnameStartsWith("SMITH").living()).equals(List.of(anna))
+                    && indexed.find(PersonQuery.all().diedBetween(1900, 1920)).equals(List.of(john))
+                    && indexed.find(smiths.and(PersonQuery.all().deceased()).limit(1)).equals(List.of(john))
+                    && output.toString().startsWith("PERSON\t" + mary.getId() + "\t")
+                    && output.toString().endsWith("END\tFound\t1\nEND\tFound\t0\n") && writeLocks[0] == 1) {
+                System.out.println("✅ testSecondaryIndexes PASSED");
+                testsPassed++;
+            } else {
+                System.out.println("❌ testSecondaryIndexes FAILED");
+                testsFailed++;
+            }
+        } catch (Exception e) {
+            System.out.println("❌ testSecondaryIndexes FAILED with exception: " + e.getMessage());
+            testsFailed++;
+        }
+
+        // Test 20: Subtree Aggregates
+        try {
+            FamilyTree aggregated = new FamilyTree();
+            Person founder = aggregated.addPerson("Founder", Gender.MALE, 1900, null);
+            aggregated.getSubtreeAggregates();
+            Person son = aggregated.addPerson("Son", Gender.MALE, 1925, null);
+            Person daughter = aggregated.addPerson("Daughter", Gender.FEMALE, 1927, null);
+            Person grandchild = aggregated.addPerson("Grandchild", Gender.MALE, 1950, null);
+            aggregated.addParentChildRelationship(founder.getId(), son.getId());
+            aggregated.addParentChildRelationship(founder.getId(), daughter.getId());
+            aggregated.addParentChildRelationship(son.getId(), grandchild.getId());
+            // Reached through both children, but counted once
+            aggregated.addParentChildRelationship(daughter.getId(), grandchild.getId());
+            grandchild.setDeathYear(2000);
+
+            BulkImport batch = aggregated.beginBulkImport();
+            String greatGrandchild = batch.addPerson("Great-grandchild", Gender.FEMALE, 1975, null);
+            batch.addParentChildRelationship(grandchild.getId(), greatGrandchild);
+            batch.commit();
+
+            java.io.StringWriter output = new java.io.StringWriter();
+            new CLI(aggregated, new java.util.concurrent.locks.ReentrantReadWriteLock(),
+                    new java.io.StringReader("SUBTREE " + founder.getId() + "\n"), output, CLI.Format.TEXT).start();
+
+            if (aggregated.getDescendantCount(founder.getId()) == 4
+                    && aggregated.getLivingDescendantCount(founder.getId()) == 3
+                    && java.util.Arrays.equals(aggregated.getGenerationCounts(founder.getId()), new int[] {2, 1, 1})
+                    && aggregated.getDescendantCount(daughter.getId()) == 2
+                    && aggregated.getSubtreeAggregates().verify().isEmpty()
+                    && output.toString().equals(founder.getId() + ": 4 descendants, 3 living, 3 generations (2, 1, 1)\n")) {
+                System.out.println("✅ testSubtreeAggregates PASSED");
+                testsPassed++;
+            } else {
+                System.out.println("❌ testSubtreeAggregates FAILED");
+                testsFailed++;
+            }
+        } catch (Exception e) {
+            System.out.println("❌ testSubtreeAggregates FAILED with exception: " + e.getMessage());
+            testsFailed++;
+        }
+
+        // Test 21: Family Units
+        try {
+            FamilyTree families = new FamilyTree();
+            Person mother = families.addPerson("Mother", Gender.FEMALE, 1965, null);
+            Person firstHusband = families.addPerson("First Husband", Gender.MALE, 1963, null);
+            Person secondHusband = families.addPerson("Second Husband", Gender.MALE, 1960, null);
+            Person elder = families.addPerson("Elder", Gender.FEMALE, 1991, null);
+            Person younger = families.addPerson("Younger", Gender.MALE, 1994, null);
+            Person stepChild = families.addPerson("Later Child", Gender.MALE, 2005, null);
+            Person otherChild = families.addPerson("Other Child", Gender.FEMALE, 2002, null);
+            families.marry(mother.getId(), firstHusband.getId(), 1990);
+            for (Person child : List.of(elder, younger)) {
+                families.addParentChildRelationship(mother.getId(), child.getId());
+                families.addParentChildRelationship(firstHusband.getId(), child.getId());
+            }
+            families.divorce(mother.getId(), 2000);
+            families.marry(mother.getId(), secondHusband.getId(), 2003);
+            families.addParentChildRelationship(mother.getId(), stepChild.getId());
+            families.addParentChildRelationship(secondHusband.getId(), stepChild.getId());
+            families.addParentChildRelationship(firstHusband.getId(), otherChild.getId());
+
+            Path snapshot = Files.createTempFile("family-units", ".ftsn");
+            families.save(snapshot);
+            FamilyTree reloaded = FamilyTree.load(snapshot);
+            Files.deleteIfExists(snapshot);
+
+            java.io.StringWriter output = new java.io.StringWriter();
+            new CLI(reloaded, new java.util.concurrent.locks.ReentrantReadWriteLock(),
+                    new java.io.StringReader("MARRIAGES " + mother.getId() + "\n"), output, CLI.Format.TEXT).start();
+            String history = "Marriages: " + firstHusband.getId() + ": married 1990, divorced 2000; "
+                    + secondHusband.getId() + ": married 2003\n";
+
+            if (families.getFullSiblings(elder.getId()).equals(List.of(younger))
+                    && families.getHalfSiblings(elder.getId()).equals(List.of(stepChild, otherChild))
+                    && families.getSiblings(elder.getId()).equals(List.of(younger, stepChild, otherChild))
+                    && families.getCoParents(mother.getId()).equals(List.of(firstHusband, secondHusband))
+                    && families.getMarriageHistory(firstHusband.getId()).get(0).getDivorceYear() == 2000
+                    && reloaded.getMarriageHistory(mother.getId()).size() == 2
+                    && reloaded.getHalfSiblings(elder.getId()).equals(List.of(stepChild, otherChild))
+                    && output.toString().equals(history)) {
+                System.out.println("✅ testFamilyUnits PASSED");
+                testsPassed++;
+            } else {
+                System.out.println("❌ testFamilyUnits FAILED");
+                testsFailed++;
+            }
+        } catch (Exception e) {
+            System.out.println("❌ testFamilyUnits FAILED with exception: " + e.getMessage());
+            testsFailed++;
+        }
+
+        // Test 22: Paged Results
+        try {
+            FamilyTree paged = new FamilyTree();
+            Person root = paged.addPerson("Paged Root", Gender.MALE, 1900, null);
+            for (int i = 0; i < 4; i++) {
+                Person child = paged.addPerson("Paged Child " + i, Gender.FEMALE, 1930, null);
+                paged.addParentChildRelationship(root.getId(), child.getId());
+                for (int k = 0; k < 3; k++) {
+                    Person grandchild = paged.addPerson("Paged Grandchild " + i + k, Gender.MALE, 1960, null);
+                    paged.addParentChildRelationship(child.getId(), grandchild.getId());
+                }
+            }
+            String leaf = paged.getDescendants(root.getId(), 2).get(2).getId();
+
+            List<Person> pages = new java.util.ArrayList<>();
+            PageCursor cursor = paged.openDescendants(root.getId(), 2, 5);
+            int pageCount = 0;
+            while (cursor.hasNext()) {
+                pages.addAll(cursor.nextPage());
+                pageCount++;
+            }
+            List<Person> ancestorPages = new java.util.ArrayList<>();
+            PageCursor ancestors = paged.openAncestors(leaf, 3, true, 1);
+            while (ancestors.hasNext()) {
+                ancestorPages.addAll(ancestors.nextPage());
+            }
+            PageCursor stale = paged.openDescendants(root.getId(), 2, 5);
+            stale.nextPage();
+            paged.addParentChildRelationship(leaf, paged.addPerson("Late", Gender.MALE, 1990, null).getId());
+            boolean expired = false;
+            try {
+                stale.nextPage();
+            } catch (IllegalStateException e) {
+                expired = true;
+            }
+
+            java.io.StringWriter output = new java.io.StringWriter();
+            new CLI(paged, new java.util.concurrent.locks.ReentrantReadWriteLock(),
+                    new java.io.StringReader("PAGE_SIZE 3\nDESCENDANTS " + root.getId() + " 1\nNEXT\nNEXT\n"),
+                    output, CLI.Format.TSV).start();
+            List<String> records = output.toString().lines()
+                    .filter(line -> !line.startsWith("PERSON")).collect(Collectors.toList());
+
+            if (pages.equals(paged.getDescendants(root.getId(), 2)) && pageCount == 4
+                    && ancestorPages.equals(paged.getAncestors(leaf, 3, true))
+                    && expired
+                    && records.equals(List.of("OK", "MORE\tDescendants\t3", "END\tDescendants\t2",
+                            "ERR\tNo paged result to continue"))) {
+                System.out.println("✅ testPagedResults PASSED");
+                testsPassed++;
+            } else {
+                System.out.println("❌ testPagedResults FAILED");
+                testsFailed++;
+            }
+        } catch (Exception e) {
+            System.out.println("❌ testPagedResults FAILED with exception: " + e.getMessage());
+            testsFailed++;
+        }
+
+        // Test 23: Tree Workspace
+        try {
+            Path directory = Files.createTempDirectory("familytree-workspace");
+            TreeWorkspace workspace = new TreeWorkspace(directory, 100_000);
+            for (String name : List.of("alpha", "beta", "gamma")) {
+                workspace.create(name);
+                workspace.accept(name, tree -> {
+                    for (int i = 0; i < 200; i++) {
+                        tree.addPerson(name + " " + i, Gender.OTHER, 1900 + i, null);
+                    }
+                });
+            }
+            boolean bounded = workspace.getResidentBytes() <= workspace.getBudgetBytes()
+                    && workspace.getResidentCount() < 3 && workspace.getEvictions() > 0;
+            int alphaSize = workspace.apply("alpha", FamilyTree::size);
+            workspace.accept("beta", tree -> tree.marry(tree.getStore().id(0), tree.getStore().id(1), 1950));
+            long loads = workspace.getLoads();
+            workspace.close();
+
+            TreeWorkspace reopened = new TreeWorkspace(directory, 100_000);
+            boolean married = reopened.apply("beta", tree -> tree.getStore().person(0).getSpouse() != null);
+            boolean listed = reopened.names().equals(List.of("alpha", "beta", "gamma"))
+                    && !reopened.isResident("gamma");
+            reopened.remove("gamma");
+            reopened.close();
+
+            // A spill that fails around a call neither masks the call's exception nor drops the tree
+            TreeWorkspace failing = new TreeWorkspace(directory, 100_000);
+            failing.create("stuck");
+            Path blocker = Files.createDirectory(directory.resolve("stuck.ftsn"));
+            String thrown = null;
+            try {
+                failing.accept("stuck", tree -> {
+                    for (int i = 0; i < 1000; i++) {
+                        tree.addPerson("Stuck " + i, Gender.OTHER, 1900, null);
+                    }
+                    throw new IllegalArgumentException("action failed");
+                });
+            } catch (IllegalArgumentException e) {
+                thrown = e.getMessage();
+            }
+            boolean kept = "action failed".equals(thrown) && failing.getSpillFailures() == 1
+                    && failing.getLastSpillFailure() != null && failing.isResident("stuck")
+                    && failing.getResidentBytes() > failing.getBudgetBytes();
+            // Checking another tree out and in counts the same failed spill twice instead of throwing it
+            int alphaAgain = failing.apply("alpha", FamilyTree::size);
+            kept &= alphaAgain == 200 && failing.getSpillFailures() == 3;
+            Files.delete(blocker);
+            failing.close();
+            kept &= Files.exists(directory.resolve("stuck.ftsn"));
+            try (java.util.stream.Stream<Path> files = Files.list(directory)) {
+                files.forEach(file -> file.toFile().delete());
+            }
+            Files.delete(directory);
+
+            if (bounded && alphaSize == 200 && loads > 0 && married && listed && kept
+                    && !Files.exists(directory.resolve("gamma.ftsn"))) {
+                System.out.println("✅ testTreeWorkspace PASSED");
+                testsPassed++;
+            } else {
+                System.out.println("❌ testTreeWorkspace FAILED");
+                testsFailed++;
+            }
+        } catch (Exception e) {
+            System.out.println("❌ testTreeWorkspace FAILED with exception: " + e.getMessage());
+            testsFailed++;
+        }
+
+        // Test 24: Dictionary-Encoded Names
+        try {
+            FamilyTree named = new FamilyTree();
+            for (int i = 0; i < 1000; i++) {
+                named.addPerson((i % 2 == 0 ? "Anna " : "Jan ") + (i % 3 == 0 ? "Kowalska" : "Nowak"),
+                        Gender.OTHER, 1900, null);
+            }
+            Person unusual = named.addPerson(" José  de la Cruz ", Gender.MALE, 1950, null);
+            PersonStore names = named.getStore();
+
+            Path snapshot = Files.createTempFile("familytree-names", ".ftsn");
+            named.save(snapshot);
+            FamilyTree reloaded = FamilyTree.load(snapshot);
+            Files.deleteIfExists(snapshot);
+
+            if (names.nameDictionary().size() == 9
+                    && names.fullName(3).equals("Jan Kowalska")
+                    && unusual.getFullName().equals(" José  de la Cruz ")
+                    && unusual.toString().equals(unusual.getId() + " |  José  de la Cruz  | MALE | b.1950")
+                    && reloaded.getPerson(unusual.getId()).getFullName().equals(" José  de la Cruz ")
+                    && reloaded.getStore().fullName(998).equals("Anna Nowak")) {
+                System.out.println("✅ testDictionaryNames PASSED");
+                testsPassed++;
+            } else {
+                System.out.println("❌ testDictionaryNames FAILED");
+                testsFailed++;
+            }
+        } catch (Exception e) {
+            System.out.println("❌ testDictionaryNames FAILED with exception: " + e.getMessage());
+            testsFailed++;
+        }
+
+        // Test 25: Temporal Queries
+        try {
+            FamilyTree temporal = new FamilyTree();
+            Person grandfather = temporal.addPerson("Old Grandfather", Gender.MALE, 1840, 1910);
+            Person grandmother = temporal.addPerson("Old Grandmother", Gender.FEMALE, 1845, 1930);
+            Person father = temporal.addPerson("Old Father", Gender.MALE, 1870, 1950);
+            Person son = temporal.addPerson("Young Son", Gender.MALE, 1905, null);
+            Person grandson = temporal.addPerson("Young Grandson", Gender.MALE, 1935, null);
+            temporal.addParentChildRelationship(grandfather.getId(), father.getId());
+            temporal.addParentChildRelationship(grandmother.getId(), father.getId());
+            temporal.addParentChildRelationship(father.getId(), son.getId());
+            temporal.addParentChildRelationship(son.getId(), grandson.getId());
+            temporal.marry(grandfather.getId(), grandmother.getId(), 1865);
+            Person later = temporal.addPerson("Later Spouse", Gender.FEMALE, 1880, null);
+            temporal.getTemporalIndex();
+            temporal.marry(father.getId(), later.getId(), 1900);
+            temporal.divorce(father.getId(), 1920);
+
+            java.io.StringWriter output = new java.io.StringWriter();
+            new CLI(temporal, new java.util.concurrent.locks.ReentrantReadWriteLock(),
+                    new java.io.StringReader("ALIVE 1900\n"), output, CLI.Format.TSV).start();
+
+            if (temporal.getAliveIn(1900).equals(List.of(grandfather, grandmother, father, later))
+                    && temporal.getAliveBetween(1931, 1940).equals(List.of(father, son, grandson, later))
+                    && temporal.getMarriedIn(1905).equals(List.of(grandfather, grandmother, father, later))
+                    && temporal.getMarriedIn(1915).equals(List.of(father, later))
+                    && temporal.getAncestorsAsOf(son.getId(), 2, 1920).equals(List.of(father, grandmother))
+                    && temporal.getDescendantsAsOf(grandfather.getId(), 3, 1920).equals(List.of(father, son))
+                    && output.toString().endsWith("END\tAlive\t4\n")) {
+                System.out.println("✅ testTemporalQueries PASSED");
+                testsPassed++;
+            } else {
+                System.out.println("❌ testTemporalQueries FAILED");
+                testsFailed++;
+            }
+        } catch (Exception e) {
+            System.out.println("❌ testTemporalQueries FAILED with exception: " + e.getMessage());
+            testsFailed++;
+        }
+
+        // Test 26: Streaming Exporters
+        try {
+            FamilyTree exported = new FamilyTree();
+            Person grandfather = exported.addPerson("Karl \"Old\" Weber", Gender.MALE, 1850, 1920);
+            Person grandmother = exported.addPerson("Greta Weber", Gender.FEMALE, 1855, null);
+            Person father = exported.addPerson("Hans Weber", Gender.MALE, 1880, null);
+            Person son = exported.addPerson("Paul Weber", Gender.MALE, 1910, null);
+            Person stranger = exported.addPerson("Jürgen Other", Gender.OTHER, 1900, null);
+            exported.addParentChildRelationship(grandfather.getId(), father.getId());
+            exported.addParentChildRelationship(grandmother.getId(), father.getId());
+            exported.addParentChildRelationship(father.getId(), son.getId());
+            exported.marry(grandfather.getId(), grandmother.getId(), 1875);
+
+            java.io.ByteArrayOutputStream gedcom = new java.io.ByteArrayOutputStream();
+            long gedcomBytes = new TreeExporter(exported, TreeExporter.Format.GEDCOM)
+                    .writeTo(java.nio.channels.Channels.newChannel(gedcom));
+            FamilyTree reimported = new FamilyTree();
+            GedcomImporter.importFrom(reimported,
+                    new java.io.StringReader(gedcom.toString(java.nio.charset.StandardCharsets.UTF_8)));
+            Person reimportedSon = reimported.find(PersonQuery.all().nameStartsWith("Paul")).get(0);
+            boolean roundTrip = gedcomBytes == gedcom.size() && reimported.size() == 5
+                    && reimported.getAncestors(reimportedSon.getId(), 2).size() == 3
+                    && reimported.find(PersonQuery.all().nameStartsWith("Karl")).get(0).getSpouse() != null
+                    && reimported.find(PersonQuery.all().nameStartsWith("Jürgen")).size() == 1;
+
+            // Divorces survive the round trip, including a remarriage into an older family unit
+            FamilyTree remarried = new FamilyTree();
+            Person husband = remarried.addPerson("Otto Brandt", Gender.MALE, 1880, null);
+            Person first = remarried.addPerson("Ilse Brandt", Gender.FEMALE, 1882, null);
+            Person second = remarried.addPerson("Rosa Brandt", Gender.FEMALE, 1884, null);
+            Person child = remarried.addPerson("Emil Brandt", Gender.MALE, 1904, null);
+            Person separated = remarried.addPerson("Lena Vogt", Gender.FEMALE, 1890, null);
+            remarried.addParentChildRelationship(husband.getId(), child.getId());
+            remarried.addParentChildRelationship(second.getId(), child.getId());
+            remarried.marry(husband.getId(), first.getId(), 1905);
+            remarried.divorce(husband.getId(), 1910);
+            remarried.marry(husband.getId(), second.getId(), 1912);
+            remarried.marry(first.getId(), separated.getId(), 1915);
+            remarried.divorce(first.getId(), null);
+            java.io.ByteArrayOutputStream remarriedGedcom = new java.io.ByteArrayOutputStream();
+            new TreeExporter(remarried, TreeExporter.Format.GEDCOM)
+                    .writeTo(java.nio.channels.Channels.newChannel(remarriedGedcom));
+            FamilyTree restored = new FamilyTree();
+            BulkImport restoredResult = GedcomImporter.importFrom(restored,
+                    new java.io.StringReader(remarriedGedcom.toString(java.nio.charset.StandardCharsets.UTF_8)));
+            Person otto = restored.find(PersonQuery.all().nameStartsWith("Otto")).get(0);
+            List<Marriage> ottoHistory = restored.getMarriageHistory(otto.getId());
+            roundTrip &= restoredResult.getMarriagesAdded() == 3 && restoredResult.getDivorcesAdded() == 2
+                    && otto.getSpouse().getFullName().equals("Rosa Brandt")
+                    && ottoHistory.size() == 2 && ottoHistory.get(0).isDivorced()
+                    && restored.find(PersonQuery.all().nameStartsWith("Lena")).get(0).getSpouse() == null
+                    && restored.find(PersonQuery.all().nameStartsWith("Ilse")).get(0).getSpouse() == null;
+
+            java.io.ByteArrayOutputStream json = new java.io.ByteArrayOutputStream();
+            TreeExporter limited = new TreeExporter(exported,
+                    TreeExporter.Format.JSONL).limitToDescendants(grandfather.getId(), 1);
+            limited.writeTo(java.nio.channels.Channels.newChannel(json));
+            String[] lines = json.toString(java.nio.charset.StandardCharsets.UTF_8).split("\n");
+            boolean subgraph = limited.getPeopleWritten() == 2 && lines.length == 2
+                    && lines[0].contains("\"name\":\"Karl \\\"Old\\\" Weber\"")
+                    && lines[0].contains("\"spouse\":null")
+                    && lines[1].contains("\"parents\":[\"" + grandfather.getId() + "\"]");
+
+            Path saved = Files.createTempFile("familytree-export", ".ftsn");
+            Path dot = Files.createTempFile("familytree-export", ".dot");
+            exported.save(saved);
+            java.io.StringWriter output = new java.io.StringWriter();
+            new CLI(new java.io.StringReader("LOAD " + saved + "\nEXPORT DOT " + dot + " ANCESTORS " + son.getId() + " 2\n"),
+                    output, CLI.Format.TSV).start();
+            String graph = new String(Files.readAllBytes(dot), java.nio.charset.StandardCharsets.UTF_8);
+            Files.delete(saved);
+            Files.delete(dot);
+            boolean graphviz = output.toString().contains("\nOK\tExported 4 people")
+                    && graph.startsWith("digraph family {") && graph.endsWith("}\n")
+                    && graph.contains("\"" + father.getId() + "\" -> \"" + son.getId() + "\";")
+                    && graph.contains("\"" + grandfather.getId() + "\" -> \"" + grandmother.getId() + "\" [dir=none")
+                    && !graph.contains(stranger.getId());
+
+            if (roundTrip && subgraph && graphviz) {
+                System.out.println("✅ testStreamingExporters PASSED");
+                testsPassed++;
+            } else {
+                System.out.println("❌ testStreamingExporters FAILED");
+                testsFailed++;
+            }
+        } catch (Exception e) {
+            System.out.println("❌ testStreamingExporters FAILED with exception: " + e.getMessage());
+            testsFailed++;
+        }
+
+        // Test 27: Integrity Scanner
+        try {
+            FamilyTree checked = new FamilyTree();
+            for (int i = 0; i < 10_000; i++) {
+                checked.addPerson("Filler " + i, Gender.OTHER, 1900, null);
+            }
+            Person parent = checked.addPerson("Late Parent", Gender.MALE, 1950, 1960);
+            Person child = checked.addPerson("Early Child", Gender.FEMALE, 1940, null);
+            Person orphan = checked.addPerson("Posthumous Child", Gender.MALE, 1970, null);
+            Person bride = checked.addPerson("Young Bride", Gender.FEMALE, 1900, null);
+            checked.addParentChildRelationship(parent.getId(), child.getId());
+            checked.addParentChildRelationship(parent.getId(), orphan.getId());
+            checked.marry(bride.getId(), checked.getStore().id(0), 1908);
+
+            IntegrityScanner scanner = checked.getIntegrityScanner();
+            List<String> found = scanner.scan().stream()
+                    .map(v -> v.getPersonId() + " " + v.getRule()).collect(Collectors.toList());
+            boolean full = found.equals(List.of(
+                    checked.getStore().id(0) + " MARRIED_TOO_YOUNG",
+                    child.getId() + " CHILD_BEFORE_PARENT",
+                    orphan.getId() + " PARENT_DEAD_BEFORE_BIRTH",
+                    bride.getId() + " MARRIED_TOO_YOUNG"))
+                    && scanner.getCheckedCount() == 10_004 && scanner.getChangedCount() == 0;
+
+            Person late = checked.addPerson("Late Child", Gender.OTHER, 1965, null);
+            checked.addParentChildRelationship(child.getId(), late.getId());
+            checked.getPerson(child.getId()).setDeathYear(1950);
+            boolean incremental = scanner.getChangedCount() == 2
+                    && scanner.scanChanged(v -> { }) == 2 && scanner.getCheckedCount() == 2;
+
+            checked.getPerson(child.getId()).setDeathYear(1960);
+            java.io.StringWriter output = new java.io.StringWriter();
+            new CLI(checked, new java.util.concurrent.locks.ReentrantReadWriteLock(),
+                    new java.io.StringReader("VALIDATE CHANGED\n"), output, CLI.Format.TSV).start();
+            boolean cli = output.toString().equals(
+                    "VIOLATION\t" + child.getId() + "\tCHILD_BEFORE_PARENT\tborn 1940, not after parent "
+                    + parent.getId() + " born 1950\n"
+                    + "VIOLATION\t" + late.getId() + "\tPARENT_DEAD_BEFORE_BIRTH\tborn 1965, 5 years after parent "
+                    + child.getId() + " died in 1960\n"
+                    + "END\tViolations\t2\n");
+
+            if (full && incremental && cli) {
+                System.out.println("✅ testIntegrityScanner PASSED");
+                testsPassed++;
+            } else {
+                System.out.println("❌ testIntegrityScanner FAILED");
+                testsFailed++;
+            }
+        } catch (Exception e) {
+            System.out.println("❌ testIntegrityScanner FAILED with exception: " + e.getMessage());
+            testsFailed++;
+        }
+
+        // Test 28: CSV and GEDCOM Readers
+        try {
+            String csv = "# quoted names may hold commas and escaped quotes\n"
+                    + "PERSON,f,\"Smith, John\",MALE,1900\n"
+                    + "PERSON,m,\"Mary \"\"May\"\" Smith\",female,1905,1980\n"
+                    + "\n"
+                    + "PARENT_CHILD,f,c\n" // child record comes later
+                    + "PARENT_CHILD,m,c\n"
+                    + "PERSON,c,Child,OTHER,1930\n"
+                    + "MARRIAGE,f,m,1925\n";
+            String badRows = "BIRTH,f,1900\n"
+                    + "PARENT_CHILD,f\n"
+                    + "PERSON,x,Robot,ROBOT,1900\n"
+                    + "PARENT_CHILD,f,nobody\n";
+
+            FamilyTree csvTree = new FamilyTree();
+            int csvViolations = 0;
+            try {
+                CsvImporter.importFrom(csvTree, new java.io.StringReader(csv + badRows));
+            } catch (BulkImportException e) {
+                csvViolations = e.getViolations().size();
+            }
+            boolean csvRejected = csvViolations == 4 && csvTree.size() == 0;
+            BulkImport csvResult = CsvImporter.importFrom(csvTree, new java.io.StringReader(csv));
+            Person husband = csvTree.getStore().person(0);
+            Person wife = csvTree.getStore().person(1);
+            Person csvChild = csvTree.getStore().person(2);
+            boolean csvRead = csvResult.getPeopleAdded() == 3 && csvResult.getRelationshipsAdded() == 2
+                    && csvResult.getMarriagesAdded() == 1 && csvTree.size() == 3
+                    && husband.getFullName().equals("Smith, John")
+                    && wife.getFullName().equals("Mary \"May\" Smith") && wife.getGender() == Gender.FEMALE
+                    && wife.getDeathYear() == 1980 && husband.getSpouse() == wife
+                    && csvChild.getParents().size() == 2 && csvChild.getGender() == Gender.OTHER;
+
+            String gedcom = "0 HEAD\n"
+                    + "0 @I1@ INDI\n1 NAME John /Smith/\n1 SEX M\n1 BIRT\n2 DATE 12 JAN 1850\n"
+                    + "0 @I2@ INDI\n1 NAME Jane /Doe/\n1 SEX F\n1 BIRT\n2 DATE ABT 1852\n1 DEAT\n2 DATE 1920\n"
+                    + "0 @F1@ FAM\n1 HUSB @I1@\n1 WIFE @I2@\n1 CHIL @I3@\n1 MARR\n2 DATE 1875\n"
+                    + "0 @I3@ INDI\n1 NAME Child /Smith/\n1 BIRT\n2 DATE 1880\n"
+                    + "0 TRLR\n";
+            FamilyTree gedcomTree = new FamilyTree();
+            BulkImport gedcomResult = GedcomImporter.importFrom(gedcomTree, new java.io.StringReader(gedcom));
+            Person john = gedcomTree.getStore().person(0);
+            Person jane = gedcomTree.getStore().person(1);
+            Person gedcomChild = gedcomTree.getStore().person(2);
+            boolean gedcomRead = gedcomResult.getPeopleAdded() == 3 && gedcomResult.getRelationshipsAdded() == 2
+                    && gedcomResult.getMarriagesAdded() == 1
+                    && john.getFullName().equals("John Smith") && john.getGender() == Gender.MALE
+                    && john.getBirthYear() == 1850 && jane.getFullName().equals("Jane Doe")
+                    && jane.getBirthYear() == 1852 && jane.getDeathYear() == 1920
+                    && john.getSpouse() == jane && john.getMarriageYear() == 1875
+                    && gedcomChild.getParents().size() == 2 && gedcomChild.getGender() == Gender.OTHER;
+
+            int gedcomViolations = 0;
+            try {
+                GedcomImporter.importFrom(gedcomTree, new java.io.StringReader(
+                        "0 @I9@ INDI\n1 NAME No /Birth/\n0 @F2@ FAM\n1 HUSB @I1@\n1 CHIL @I8@\n"));
+            } catch (BulkImportException e) {
+                gedcomViolations = e.getViolations().size();
+            }
+            boolean gedcomRejected = gedcomViolations == 2 && gedcomTree.size() == 3;
+
+            Path badFile = Files.createTempFile("familytree", ".csv");
+            Files.writeString(badFile, csv + badRows);
+            java.io.StringWriter output = new java.io.StringWriter();
+            new CLI(new java.io.StringReader("IMPORT CSV " + badFile + "\nEXIT\n"), output, CLI.Format.TEXT).start();
+            Files.delete(badFile);
+            boolean cli = output.toString().startsWith("Import rejected with 4 violation(s); nothing was imported:\n"
+                    + "- line 9: Unknown record type: BIRTH\n");
+
+            if (csvRejected && csvRead && gedcomRead && gedcomRejected && cli) {
+                System.out.println("✅ testImportReaders PASSED");
+                testsPassed++;
+            } else {
+                System.out.println("❌ testImportReaders FAILED");
+                testsFailed++;
+            }
+        } catch (Exception e) {
+            System.out.println("❌ testImportReaders FAILED with exception: " + e.getMessage());
+            testsFailed++;
+        }
+
+        // Test 29: Parallel DFS Matches Sequential DFS
+        java.util.concurrent.ForkJoinPool workers = new java.util.concurrent.ForkJoinPool(4);
+        try {
+            FamilyTree branching = new FamilyTree();
+            Person founder = branching.addPerson("Branching Founder", Gender.MALE, 1700, null);
+            List<Person> generation = List.of(founder);
+            for (int depth = 1; depth <= 6; depth++) {
+                List<Person> next = new java.util.ArrayList<>();
+                for (Person parent : generation) {
+                    for (int k = 0; k < 3; k++) {
+                        Person child = branching.addPerson("Gen" + depth + "-" + next.size(), Gender.OTHER,
+                                1700 + 20 * depth, null);
+                        branching.addParentChildRelationship(parent.getId(), child.getId());
+                        next.add(child);
+                    }
+                }
+                generation = next;
+            }
+            // Reached along two paths, so listed twice by both
+            branching.addParentChildRelationship(founder.getStore().person(2).getId(), generation.get(0).getId());
+
+            boolean matches = branching.size() > 1000;
+            for (int maxDepth : new int[] {3, 6, 10}) {
+                List<Person> expected = new DFSTraversal().traverse(founder, maxDepth);
+                List<Person> ordered = new ParallelDFSTraversal(workers, 16, true).traverse(founder, maxDepth);
+                List<Person> unordered = new ParallelDFSTraversal(workers, 16, false).traverse(founder, maxDepth);
+                java.util.Map<Person, Long> expectedCounts = expected.stream()
+                        .collect(Collectors.groupingBy(p -> p, Collectors.counting()));
+                matches &= ordered.equals(expected)
+                        && unordered.stream().collect(Collectors.groupingBy(p -> p, Collectors.counting()))
+                                .equals(expectedCounts);
+            }
+
+            if (matches) {
+                System.out.println("✅ testParallelTraversal PASSED");
+                testsPassed++;
+            } else {
+                System.out.println("❌ testParallelTraversal FAILED");
+                testsFailed++;
+            }
+        } catch (Exception e) {
+            System.out.println("❌ testParallelTraversal FAILED with exception: " + e.getMessage());
+            testsFailed++;
+        } finally {
+            workers.shutdown();
+        }
+
         System.out.println("\n=== Test Results ===");
         System.out.println("Passed: " + testsPassed);
         System.out.println("Failed: " + testsFailed);